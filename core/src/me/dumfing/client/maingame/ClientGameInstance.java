@@ -11,11 +11,11 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.GridPoint2;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
 import me.dumfing.gdxtools.MenuTools;
 import me.dumfing.menus.MenuBox;
 import me.dumfing.multiplayerTools.*;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 
@@ -27,8 +27,17 @@ import static me.dumfing.multiplayerTools.ConcurrentGameWorld.SWORD;
  * Created by dumpl on 5/15/2017.
  */
 public class ClientGameInstance implements InputProcessor{
-    private MultiplayerTools.ClientControlObject[] keysDown = new MultiplayerTools.ClientControlObject[10];
-    private boolean keyUpdate = false;
+    private int buttonsDown = 0; // bit n is set if MultiplayerTools.Keys n is held
+    private float aimAngle = 0;
+    private int inputSequence = 0; // goes up by one for every input sent to the server
+    private MultiplayerTools.ClientKeysUpdate keysUpdate = new MultiplayerTools.ClientKeysUpdate(); // reused, it's serialized as soon as it's sent
+    private SentInputs sentInputs = new SentInputs(); // replayed on top of each world frame to predict the client's soldier
+    private InterpolationBuffer interpolation; // shows everyone else a little in the past
+    private static final float SNAPDISTANCE = 3; // corrections bigger than this aren't smoothed, the soldier just jumps there
+    private float sentViewWidth = -1, sentViewHeight = -1; // the view size the server was last told, it only sends what's in view
+    private int clientTick = 0;
+    private float tickAccumulator = 0; // time that hasn't been simulated yet
+    private static final int MAXTICKSPERFRAME = 5;
     private MultiplayerClient gameClient;
     private ConcurrentGameWorld playWorld;
     private OrthographicCamera camera;
@@ -40,11 +49,14 @@ public class ClientGameInstance implements InputProcessor{
     private boolean boxOut = false;
     private static float HEALTH_BAR_HEIGHT = 40;
     private Array<ParticleEffectPool.PooledEffect> effects = new Array<ParticleEffectPool.PooledEffect>();
-    private HashSet<String> startedEffects = new HashSet<String>();
-    public ClientGameInstance(MultiplayerClient gameClient, HashMap<Integer, PlayerSoldier> players, OrthographicCamera camera, AssetManager manager, Array<BitmapFontCache> fonts){
+    private HashSet<Integer> startedEffects = new HashSet<Integer>(); // ids of the projectiles that have already played their hit effects
+    private IntMap<SoldierView> soldierViews = new IntMap<SoldierView>(); // player id -> what draws them
+    public ClientGameInstance(MultiplayerClient gameClient, EntityRegistry<PlayerSoldier> players, OrthographicCamera camera, AssetManager manager, Array<BitmapFontCache> fonts){
         this.gameClient = gameClient;
         this.fonts = fonts;
         this.playWorld = new ConcurrentGameWorld(players);
+        this.playWorld.setTickRate(gameClient.getTickRate());
+        this.interpolation = new InterpolationBuffer(playWorld.getTickTime());
         this.camera=camera;
         this.manager = manager;
         this.arrowTexture = MenuTools.mGTR("projectiles/arrow.png",manager);
@@ -61,7 +73,7 @@ public class ClientGameInstance implements InputProcessor{
      * @param manager
      * @param fonts
      */
-    public ClientGameInstance(HashMap<Integer, PlayerSoldier> players, OrthographicCamera camera, AssetManager manager, Array<BitmapFontCache> fonts){
+    public ClientGameInstance(EntityRegistry<PlayerSoldier> players, OrthographicCamera camera, AssetManager manager, Array<BitmapFontCache> fonts){
         this.fonts = fonts;
         this.playWorld = new ConcurrentGameWorld(players);
         this.camera = camera;
@@ -81,40 +93,30 @@ public class ClientGameInstance implements InputProcessor{
         playWorld.clearHits();
         for(Projectile arrow : playWorld.getProjectiles()){
             if(!arrow.isParticlesStarted() && arrow.isHit()){
-                if(arrow.getAttackPair().y!=-1) {
-                    if(!startedEffects.contains(arrow.getServerHash())) {
-                        PlayerSoldier hitTarget = playWorld.getPlayers().get(arrow.getAttackPair().y);
-                        addBloodParticle(hitTarget.getX() + hitTarget.getWidth() / 2f, hitTarget.getY() + hitTarget.getHeight() / 2f);
+                if(arrow.getPhysicsParent()!=-1) {
+                    if(!startedEffects.contains(arrow.getId())) {
+                        PlayerSoldier hitTarget = playWorld.getPlayers().get(arrow.getPhysicsParent());
+                        if(hitTarget != null) { // they can be just out of view while the arrow isn't
+                            addBloodParticle(hitTarget.getX() + hitTarget.getWidth() / 2f, hitTarget.getY() + hitTarget.getHeight() / 2f);
+                        }
                         arrow.setParticlesStarted(true);
-                        startedEffects.add(arrow.getServerHash());
+                        startedEffects.add(arrow.getId());
                         MainGame.arrowHit.play();
                     }
                 }
             }
         }
-        startedEffects.retainAll(existingHashes());
+        startedEffects.retainAll(existingIds());
         //effectHandled.retainAll(playWorld.getProjectiles());
-        if(keyUpdate){
-            if(onlineMode) {
-                gameClient.quickSend(new MultiplayerTools.ClientKeysUpdate(keysDown));
-            }
-            keyUpdate = false;
-        }
         if(onlineMode) {
-            if (gameClient.isHasNewPlayerInfo()) {
-                playWorld.updatePlayers(gameClient.getPlayers());
-            }
-            if (gameClient.isHasNewProjectileInfo()) {
-                playWorld.updateProjectiles(gameClient.getProjectiles());
-            }
-            if(gameClient.isHasNewFlagInfo()){
-                playWorld.updateFlags(gameClient.getFlags());
-            }
-            if(gameClient.isHasNewRespawnInfo()){
-                playWorld.updateRespawnTimes(gameClient.getRespawnTimes());
+            sendViewSize();
+            WorldFrame newest = null;
+            for(WorldFrame frame = gameClient.pollFrame(); frame != null; frame = gameClient.pollFrame()){
+                interpolation.add(frame);
+                newest = frame;
             }
-            if(gameClient.isHasNewKillInfo()){
-                playWorld.updateKillInfo(gameClient.getKillLog());
+            if (newest != null) {
+                applyFrame(newest);
             }
         }
         for(Vector3 partInfo : playWorld.getParticles()){
@@ -134,9 +136,80 @@ public class ClientGameInstance implements InputProcessor{
                 MainGame.flagCap.play();
             }
         }
-        playWorld.updatePlayerKeys(onlineMode?gameClient.getConnectionID():0, keysDown);
+        playWorld.updatePlayerKeys(onlineMode?gameClient.getConnectionID():0, buttonsDown, aimAngle);
         pauseBox.update();
-        playWorld.update();
+        tickAccumulator = Math.min(tickAccumulator+Gdx.graphics.getDeltaTime(),playWorld.getTickTime()*MAXTICKSPERFRAME);
+        while(tickAccumulator >= playWorld.getTickTime()){ // run the world at the same fixed tick rate as the server no matter the frame rate
+            if(onlineMode){
+                // the server uses one input per tick so one is sent every tick, even if nothing changed
+                sentInputs.add(inputSequence,buttonsDown,aimAngle);
+                keysUpdate.setViewTick(interpolation.getRenderTick()); // lets the server check our hits against what we're seeing
+                keysUpdate.addInput(buttonsDown,aimAngle,inputSequence++,clientTick,gameClient.getLatestFrameSequence()); // also carries the last few inputs in case they were lost
+                gameClient.quickSend(keysUpdate);
+            }
+            clientTick++;
+            if(onlineMode){
+                playWorld.predictPlayerTick(gameClient.getConnectionID()); // everyone else comes from the server
+            }
+            else{
+                playWorld.update();
+            }
+            tickAccumulator -= playWorld.getTickTime();
+        }
+        if(onlineMode){
+            interpolation.update(Gdx.graphics.getDeltaTime());
+            interpolation.apply(playWorld,gameClient.getConnectionID());
+        }
+    }
+    /**
+     * Tells the server how much of the world the camera shows if it changed, zooming out to aim a bow shows more
+     */
+    private void sendViewSize(){
+        float width = camera.viewportWidth*camera.zoom;
+        float height = camera.viewportHeight*camera.zoom;
+        if(Math.abs(width-sentViewWidth) > 0.5f || Math.abs(height-sentViewHeight) > 0.5f){
+            gameClient.secureSend(new MultiplayerTools.ClientViewSize(width,height));
+            sentViewWidth = width;
+            sentViewHeight = height;
+        }
+    }
+
+    /**
+     * Takes the respawn timers and kill log from a frame from the server and keeps the client's own soldier ahead of it<br>
+     * The frame puts the soldier where the server had it after the last input it ran, the inputs sent since then are
+     * replayed on top so the soldier is back where the client predicted. If the server disagreed the soldier's view
+     * is moved back by the difference and slides to the corrected spot instead of jumping
+     * @param frame The newest frame from the server
+     */
+    private void applyFrame(WorldFrame frame){
+        int cID = gameClient.getConnectionID();
+        PlayerSoldier predicted = playWorld.getPlayers().get(cID);
+        boolean wasAlive = predicted != null && predicted.isAlive();
+        float oldX = wasAlive?predicted.getX():0;
+        float oldY = wasAlive?predicted.getY():0;
+        PlayerSoldier soldier = frame.applyOwn(playWorld,cID);
+        if(soldier == null){
+            return;
+        }
+        int acked = soldier.getInputSequence();
+        if(acked >= 0){ // the server hasn't started using our inputs before this, there's nothing to replay against
+            for(int seq = acked+1; seq<inputSequence; seq++){
+                if(sentInputs.has(seq)){
+                    playWorld.replayPlayerTick(cID,sentInputs.getButtons(seq),sentInputs.getMouseAngle(seq));
+                }
+            }
+        }
+        SoldierView view = soldierViews.get(cID);
+        if(view != null){
+            float errorX = oldX-soldier.getX();
+            float errorY = oldY-soldier.getY();
+            if(wasAlive && soldier.isAlive() && errorX*errorX+errorY*errorY < SNAPDISTANCE*SNAPDISTANCE){
+                view.addCorrection(errorX,errorY);
+            }
+            else{
+                view.clearCorrection(); // respawned, or too far off to pretend it was a small slip
+            }
+        }
     }
     public PlayerSoldier getPlayer(int connectionID){
         return playWorld.getPlayers().get(connectionID);
@@ -148,14 +221,29 @@ public class ClientGameInstance implements InputProcessor{
         playWorld.getWorldMap().drawBGMedium(batch,camera.position.x,camera.position.y);
         playWorld.getWorldMap().drawBGClose(batch);
         for(CaptureFlag flag : playWorld.getFlags()){
+            if(onlineMode){
+                flag.updateAnimation(deltaTime); // the world doesn't update the flags when they come from the server
+            }
             flag.draw(batch,playWorld.getPlayers());
         }
-        for(PlayerSoldier p : playWorld.getPlayers().values()){
+        for(IntMap.Keys it = soldierViews.keys(); it.hasNext;){
+            if(!playWorld.getPlayers().containsKey(it.next())){ // they left, or went out of view
+                it.remove();
+            }
+        }
+        for(int i = 0; i<playWorld.getPlayers().size(); i++){
+            PlayerSoldier p = playWorld.getPlayers().getAt(i);
+            SoldierView view = soldierViews.get(p.getId());
+            if(view == null){
+                view = new SoldierView();
+                soldierViews.put(p.getId(),view);
+            }
+            view.update(p,deltaTime);
             //DrawTools.rec(renderer,p.getRect());
             if(p.isAlive()) {
-                p.draw(batch);
+                view.draw(batch,p);
                 if (clientSoldier().equals(p)) {
-                    batch.draw(p.getTeam() == 0 ? redArrow : blueArrow, p.getX() + 0.3f, p.getY() + 2.1f, 0.4f, 0.4f);
+                    batch.draw(p.getTeam() == 0 ? redArrow : blueArrow, p.getX() + view.getOffsetX() + 0.3f, p.getY() + view.getOffsetY() + 2.1f, 0.4f, 0.4f);
                 }
             }
         }
@@ -185,8 +273,8 @@ public class ClientGameInstance implements InputProcessor{
         batch.end();
         shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
         if(onlineMode) {
-            for (PlayerSoldier playerSoldier : gameClient.getPlayers().values()) {
-                //DrawTools.rec(shapeRenderer,playerSoldier.getRect());
+            for (int i = 0; i < gameClient.getPlayers().size(); i++) {
+                //DrawTools.rec(shapeRenderer,gameClient.getPlayers().getAt(i).getRect());
             }
         }
         shapeRenderer.end();
@@ -214,6 +302,18 @@ public class ClientGameInstance implements InputProcessor{
         }
         uiBatch.end();
     }
+
+    /**
+     * Presses or releases one of MultiplayerTools.Keys
+     */
+    private void setButton(int key, boolean down){
+        if(down){
+            buttonsDown |= 1<<key;
+        }
+        else{
+            buttonsDown &= ~(1<<key);
+        }
+    }
     public void pickWorld(int worldID){
         playWorld.setWorld(MainGame.worldMaps[MainGame.DEBUGWORLD]);
     }
@@ -221,28 +321,27 @@ public class ClientGameInstance implements InputProcessor{
     public boolean keyUp(int keycode) {
         switch (keycode){
             case Input.Keys.W :
-                keysDown[MultiplayerTools.Keys.W] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.W,false);
                 break;
             case Input.Keys.A:
-                keysDown[MultiplayerTools.Keys.A] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.A,false);
                 break;
             case Input.Keys.S:
-                keysDown[MultiplayerTools.Keys.S] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.S,false);
                 break;
             case Input.Keys.D:
-                keysDown[MultiplayerTools.Keys.D] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.D,false);
                 break;
             case Input.Keys.SPACE:
-                keysDown[MultiplayerTools.Keys.SPACE] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.SPACE,false);
                 break;
             case Input.Keys.SHIFT_LEFT:
-                keysDown[MultiplayerTools.Keys.SHIFT] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.SHIFT,false);
                 break;
             case Input.Keys.CONTROL_LEFT:
-                keysDown[MultiplayerTools.Keys.CONTROL] = new MultiplayerTools.ClientControlObject(false);
+                setButton(MultiplayerTools.Keys.CONTROL,false);
                 break;
         }
-        keyUpdate = true;
         //infoClient.sendUDP(new MultiplayerTools.ClientKeysUp(keysDown));
         return false;
     }
@@ -251,25 +350,25 @@ public class ClientGameInstance implements InputProcessor{
         System.out.println("Key down");
         switch (keycode){
             case Input.Keys.W :
-                keysDown[MultiplayerTools.Keys.W] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.W,true);
                 break;
             case Input.Keys.A:
-                keysDown[MultiplayerTools.Keys.A] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.A,true);
                 break;
             case Input.Keys.S:
-                keysDown[MultiplayerTools.Keys.S] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.S,true);
                 break;
             case Input.Keys.D:
-                keysDown[MultiplayerTools.Keys.D] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.D,true);
                 break;
             case Input.Keys.SPACE:
-                keysDown[MultiplayerTools.Keys.SPACE] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.SPACE,true);
                 break;
             case Input.Keys.SHIFT_LEFT:
-                keysDown[MultiplayerTools.Keys.SHIFT] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.SHIFT,true);
                 break;
             case Input.Keys.CONTROL_LEFT:
-                keysDown[MultiplayerTools.Keys.CONTROL] = new MultiplayerTools.ClientControlObject(true);
+                setButton(MultiplayerTools.Keys.CONTROL,true);
                 break;
             case Input.Keys.ESCAPE:
                 if(boxOut){
@@ -283,7 +382,6 @@ public class ClientGameInstance implements InputProcessor{
                 }
                 break;
         }
-        keyUpdate = true;
         return false;
     }
 
@@ -298,14 +396,12 @@ public class ClientGameInstance implements InputProcessor{
         PlayerSoldier clientPlayer = getPlayer(onlineMode?gameClient.getConnectionID():0);
         screenY = Gdx.graphics.getHeight()-screenY;
         if(button == 0){
-            keysDown[MultiplayerTools.Keys.LMB] = new MultiplayerTools.ClientControlObject(true);
-            keyUpdate = true;
+            setButton(MultiplayerTools.Keys.LMB,true);
         }
         if(button == 1){
-            keysDown[MultiplayerTools.Keys.RMB] = new MultiplayerTools.ClientControlObject(true);
-            keyUpdate = true;
+            setButton(MultiplayerTools.Keys.RMB,true);
         }
-        keysDown[MultiplayerTools.Keys.ANGLE] = new MultiplayerTools.ClientControlObject(getPointerAngle(screenX,screenY));
+        aimAngle = getPointerAngle(screenX,screenY);
         pauseBox.checkButtonsPressed(screenX,screenY);
         return false;
     }
@@ -314,12 +410,10 @@ public class ClientGameInstance implements InputProcessor{
     @Override
     public boolean touchUp(int screenX, int screenY, int pointer, int button) {
         if(button == 0){
-            keysDown[MultiplayerTools.Keys.LMB] = new MultiplayerTools.ClientControlObject(false);
-            keyUpdate = true;
+            setButton(MultiplayerTools.Keys.LMB,false);
         }
         if(button == 1){
-            keysDown[MultiplayerTools.Keys.RMB] = new MultiplayerTools.ClientControlObject(false);
-            keyUpdate = true;
+            setButton(MultiplayerTools.Keys.RMB,false);
         }
         return false;
     }
@@ -328,8 +422,7 @@ public class ClientGameInstance implements InputProcessor{
     public boolean touchDragged(int screenX, int screenY, int pointer) {
         screenY=Gdx.graphics.getHeight()-screenY;
         float freeAng = (getPointerAngle(screenX,screenY)+360)%360;
-        keysDown[MultiplayerTools.Keys.ANGLE] = new MultiplayerTools.ClientControlObject(freeAng);
-        keyUpdate=true;
+        aimAngle = freeAng;
         return false;
     }
 
@@ -402,7 +495,7 @@ public class ClientGameInstance implements InputProcessor{
             }
         }
         String youDied = "YOU HAVE DIED";
-        String timeRemainingText = String.format("Respawn in %d...",((int)timeRemaining/60)+1);
+        String timeRemainingText = String.format("Respawn in %d...",((int)timeRemaining/playWorld.getTickRate())+1);
         fonts.get(DAGGER50).addText(youDied,Gdx.graphics.getWidth()/2-(MenuTools.textWidth(fonts.get(DAGGER50).getFont(),youDied)/2),Gdx.graphics.getHeight()/2-(MenuTools.textHeight(fonts.get(DAGGER50).getFont(),youDied)/2));
         fonts.get(DAGGER50).addText(timeRemainingText,Gdx.graphics.getWidth()/2-(MenuTools.textWidth(fonts.get(DAGGER50).getFont(),timeRemainingText)/2),Gdx.graphics.getHeight()/2-(MenuTools.textHeight(fonts.get(DAGGER50).getFont(),timeRemainingText)/2)-55);
     }
@@ -481,10 +574,10 @@ public class ClientGameInstance implements InputProcessor{
      * returns which arrows still exist on the server
      * @return
      */
-    private HashSet<String> existingHashes(){
-        HashSet<String> out = new HashSet<String>();
+    private HashSet<Integer> existingIds(){
+        HashSet<Integer> out = new HashSet<Integer>();
         for(Projectile proj : playWorld.getProjectiles()){
-            out.add(proj.getServerHash());
+            out.add(proj.getId());
         }
         return out;
     }
@@ -0,0 +1,122 @@
+package me.dumfing.client.maingame;
+
+import com.badlogic.gdx.math.MathUtils;
+import me.dumfing.multiplayerTools.ConcurrentGameWorld;
+import me.dumfing.multiplayerTools.WorldFrame;
+
+import java.util.LinkedList;
+
+/**
+ * Shows everyone but the client's own soldier as they were a short delay ago<br>
+ * World frames are kept in order of the server tick they were taken at. Each frame drawn, the world is set to a point
+ * between the two frames on either side of the time being shown. Because of the delay there's almost always a newer frame
+ * to blend towards, so other soldiers move smoothly even though frames only come SENDRATE times a second and don't
+ * arrive evenly. The clock runs a little fast or slow to stay the delay behind the newest frame, and jumps if it gets too
+ * far off
+ */
+public class InterpolationBuffer {
+    public static final float DEFAULT_DELAY = 0.1f; // seconds, 3 frames at the server's send rate
+    private static final float MAXDRIFT = 0.05f; // the clock runs at most this much faster or slower than real time
+    private static final float RESYNC = 0.5f; // seconds off before the clock just jumps
+    private static final float MAXBUFFERED = 1; // seconds of frames kept
+    private final float tickTime;
+    private float delay;
+    private LinkedList<WorldFrame> frames = new LinkedList<WorldFrame>(); // oldest first
+    private float renderTime = -1; // the server time being shown in seconds, -1 before the first frame
+    //stats
+    private int starved = 0; // frames drawn with nothing newer to blend towards
+
+    /**
+     * @param tickTime Seconds per server tick
+     */
+    public InterpolationBuffer(float tickTime){
+        this(tickTime,DEFAULT_DELAY);
+    }
+
+    /**
+     * @param tickTime Seconds per server tick
+     * @param delay How far behind the newest frame to show the world in seconds, more copes with worse connections
+     */
+    public InterpolationBuffer(float tickTime, float delay){
+        this.tickTime = tickTime;
+        this.delay = Math.max(0,delay);
+    }
+
+    /**
+     * Adds a frame that just arrived, ones older than the newest one are ignored
+     */
+    public void add(WorldFrame frame){
+        if(!frames.isEmpty() && frame.getTick() <= frames.getLast().getTick()){
+            return;
+        }
+        frames.add(frame);
+        while(frames.size() > 2 && timeOf(frames.getLast())-timeOf(frames.getFirst()) > MAXBUFFERED){
+            frames.removeFirst();
+        }
+    }
+
+    /**
+     * Moves the clock forward, should be called once a frame before apply
+     * @param deltaTime Seconds since the last frame
+     */
+    public void update(float deltaTime){
+        if(frames.isEmpty()){
+            return;
+        }
+        float target = timeOf(frames.getLast())-delay;
+        if(renderTime < 0 || Math.abs(target-renderTime) > RESYNC){ // just started, or the server or the client stalled
+            renderTime = target;
+        }
+        else{
+            float error = target-renderTime;
+            renderTime += deltaTime*(1+MathUtils.clamp(error/Math.max(delay,tickTime),-1,1)*MAXDRIFT);
+        }
+    }
+
+    /**
+     * Sets everyone but the client's own soldier to how they were at the time being shown
+     * @param world The client's world
+     * @param ownID The client's soldier, which it predicts itself
+     */
+    public void apply(ConcurrentGameWorld world, int ownID){
+        if(frames.isEmpty()){
+            return;
+        }
+        while(frames.size() > 2 && timeOf(frames.get(1)) <= renderTime){ // the second one is already in the past
+            frames.removeFirst();
+        }
+        WorldFrame from = frames.getFirst();
+        WorldFrame to = frames.size()>1?frames.get(1):null;
+        float alpha = 0;
+        if(to != null){
+            alpha = MathUtils.clamp((renderTime-timeOf(from))/(timeOf(to)-timeOf(from)),0,1);
+        }
+        if(to == null || renderTime > timeOf(to)){ // frames stopped coming in time, hold the newest one
+            starved++;
+        }
+        from.getSnapshot().interpolate(to==null?null:to.getSnapshot(),alpha,world,ownID);
+    }
+
+    /**
+     * @return The server tick everyone else is being shown at, -1 before the first frame
+     */
+    public int getRenderTick(){
+        return renderTime<0?-1:Math.round(renderTime/tickTime);
+    }
+
+    private float timeOf(WorldFrame frame){
+        return frame.getTick()*tickTime;
+    }
+
+    public float getDelay() {
+        return delay;
+    }
+
+    public void setDelay(float delay) {
+        this.delay = Math.max(0,delay);
+    }
+
+    public int getStarved() {
+        return starved;
+    }
+}
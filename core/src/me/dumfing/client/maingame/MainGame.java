@@ -14,7 +14,6 @@ import me.dumfing.gdxtools.MenuTools;
 import me.dumfing.menus.*;
 import me.dumfing.multiplayerTools.*;
 
-import java.util.HashMap;
 
 public class MainGame extends ApplicationAdapter implements InputProcessor{
 	public static final String versionNumber = "1.0";
@@ -97,12 +96,12 @@ public class MainGame extends ApplicationAdapter implements InputProcessor{
 			bmfc.clear(); // clear bitmap font cache because it doesn't clear itself upon drawing (grumble grumble)
 		}
 		if(state == GameState.State.PLAYINGGAME || state == GameState.State.OFFLINEDEBUG) { // if the mode requires the camera to be moved
-            if (gameInstance == null || gameInstance.clientSoldier().getKeysHeld()[MultiplayerTools.Keys.RMB] == null) { // what to do if nothing else is ready for the camera
+            if (gameInstance == null || gameInstance.clientSoldier() == null) { // what to do if nothing else is ready for the camera
                 zoomCamera(DEFAULT_CAMERA_ZOOM);
-            } else if (gameInstance.clientSoldier() != null && gameInstance.clientSoldier().getCurrentClass() == PlayerSoldier.ARCHER && gameInstance.clientSoldier().getKeysHeld()[MultiplayerTools.Keys.RMB].getIsDown()) { // if the player exists and the right mouse button is pressed
+            } else if (gameInstance.clientSoldier() != null && gameInstance.clientSoldier().getCurrentClass() == PlayerSoldier.ARCHER && gameInstance.clientSoldier().isButtonDown(MultiplayerTools.Keys.RMB)) { // if the player exists and the right mouse button is pressed
                 camera.translate(gameInstance.clientSoldier().getFacingDirection() == 0 ? -7 : 7, 0); // translate the camera left or right based on the player's facing direction
                 zoomCamera(DEFAULT_CAMERA_ZOOM*2); // zoom camera out (currently 2x)
-            } else if (gameInstance.clientSoldier() != null && !gameInstance.clientSoldier().getKeysHeld()[MultiplayerTools.Keys.RMB].getIsDown()) { // if the mouse isn't down
+            } else if (gameInstance.clientSoldier() != null && !gameInstance.clientSoldier().isButtonDown(MultiplayerTools.Keys.RMB)) { // if the mouse isn't down
                 zoomCamera(DEFAULT_CAMERA_ZOOM); // zoom in to regular area
             }
         }
@@ -184,7 +183,7 @@ public class MainGame extends ApplicationAdapter implements InputProcessor{
 			case OFFLINEDEBUG: // offline mode, doesn't listen to the playerClient
 				if(Gdx.input.getInputProcessor() != gameInstance){
 				    if(!gameStarted) {
-                        HashMap<Integer, PlayerSoldier> temp = new HashMap<Integer, PlayerSoldier>();
+                        EntityRegistry<PlayerSoldier> temp = new EntityRegistry<PlayerSoldier>();
                         temp.put(0, clientSoldier);
                         gameInstance = new ClientGameInstance(temp, camera, assetManager, fontCaches);
                         gameInstance.pickWorld(DEBUGWORLD);
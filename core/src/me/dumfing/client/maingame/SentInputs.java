@@ -0,0 +1,49 @@
+package me.dumfing.client.maingame;
+
+import me.dumfing.multiplayerTools.MultiplayerTools;
+
+/**
+ * The inputs the client has sent to the server, kept by sequence number until the server says it has run them<br>
+ * When a world frame arrives the client's soldier is put back where the server had it after the frame's input sequence,
+ * then every newer input in here is run again so the soldier ends up where the client predicted it would be
+ */
+public class SentInputs {
+    private static final int CAPACITY = 128; // must be a power of 2, a couple seconds of ticks
+    private final int[] slotButtons = new int[CAPACITY];
+    private final short[] slotAims = new short[CAPACITY];
+    private final int[] slotSeqs = new int[CAPACITY];
+
+    public SentInputs(){
+        for(int i = 0; i<CAPACITY; i++){
+            slotSeqs[i] = -1;
+        }
+    }
+
+    /**
+     * Remembers an input that was just sent
+     * @param sequence Its sequence number
+     * @param buttons The buttons held
+     * @param aimAngle Where the player was aiming in degrees, stored the same way it's sent so the replay matches the server
+     */
+    public void add(int sequence, int buttons, float aimAngle){
+        int slot = sequence&(CAPACITY-1);
+        slotButtons[slot] = buttons;
+        slotAims[slot] = MultiplayerTools.quantizeAim(aimAngle);
+        slotSeqs[slot] = sequence;
+    }
+
+    /**
+     * @return Whether the input with that sequence number is still here
+     */
+    public boolean has(int sequence){
+        return sequence >= 0 && slotSeqs[sequence&(CAPACITY-1)] == sequence;
+    }
+
+    public int getButtons(int sequence){
+        return slotButtons[sequence&(CAPACITY-1)];
+    }
+
+    public float getMouseAngle(int sequence){
+        return MultiplayerTools.unquantizeAim(slotAims[sequence&(CAPACITY-1)]);
+    }
+}
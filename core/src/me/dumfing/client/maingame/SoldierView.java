@@ -0,0 +1,105 @@
+package me.dumfing.client.maingame;
+
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import me.dumfing.multiplayerTools.AnimationManager;
+import me.dumfing.multiplayerTools.PlayerSoldier;
+
+/**
+ * Draws one PlayerSoldier<br>
+ * The soldier only holds what the game needs to simulate it, the view keeps its own animation clock so the sprites play
+ * smoothly at the frame rate no matter how often the soldier is updated by the world or by world frames from the server<br>
+ * It can also be drawn a little away from the soldier, this is used to hide small corrections to the client's own soldier
+ * by sliding it to the right spot instead of making it jump
+ */
+public class SoldierView {
+    private float animationTime = 0;
+    private int lastAnimationID = -1; // the animation being played, the clock restarts when it changes
+    private static final float CORRECTIONHALFLIFE = 0.1f; // seconds for half of a correction to be slid away
+    private float offsetX = 0, offsetY = 0; // where the soldier is drawn relative to where it really is
+
+    /**
+     * Moves the animation forward
+     * @param soldier The soldier this view draws
+     * @param deltaTime Seconds since the last frame
+     */
+    public void update(PlayerSoldier soldier, float deltaTime){
+        if(soldier.getAnimationID() != lastAnimationID){
+            lastAnimationID = soldier.getAnimationID();
+            animationTime = 0;
+        }
+        else{
+            animationTime += deltaTime;
+        }
+        float decay = (float)Math.pow(0.5,deltaTime/CORRECTIONHALFLIFE);
+        offsetX *= decay;
+        offsetY *= decay;
+    }
+
+    /**
+     * Keeps drawing the soldier where it was before it was moved, the offset then shrinks back to 0 over a few frames
+     * @param dX How far the soldier was moved back on x, old position minus new position
+     * @param dY How far the soldier was moved back on y
+     */
+    public void addCorrection(float dX, float dY){
+        offsetX += dX;
+        offsetY += dY;
+    }
+
+    /**
+     * Draws the soldier exactly where it is again
+     */
+    public void clearCorrection(){
+        offsetX = 0;
+        offsetY = 0;
+    }
+
+    public float getOffsetX() {
+        return offsetX;
+    }
+
+    public float getOffsetY() {
+        return offsetY;
+    }
+
+    /**
+     * Draws the PlayerSoldier
+     * @param batch
+     * @param soldier The soldier this view draws
+     */
+    public void draw(SpriteBatch batch, PlayerSoldier soldier){
+        TextureRegion drawFrame = (TextureRegion) soldier.getAnimation().getKeyFrame(this.animationTime);
+        float trW = drawFrame.getRegionWidth();
+        float trH = drawFrame.getRegionHeight();
+        float ratio = trW/trH;
+        float x = soldier.getX()+offsetX;
+        float y = soldier.getY()+offsetY;
+        if (soldier.getFacingDirection() == 0) {
+            batch.draw(drawFrame, x - 0.84f, y, soldier.getHeight() * ratio + 0.14f, soldier.getHeight() + 0.13f);
+        }
+        else {
+            batch.draw(drawFrame, x - 0.22f, y, soldier.getHeight() * ratio + 0.14f, soldier.getHeight() + 0.13f); // add 0.1 because the attacking sprites are 4 FCKING PIXELS TALLER THAN THE STANDING SPRITES
+        }
+        if(soldier.isDrawingBow()){ // bow drawing animation
+            float limAng = soldier.getMouseAngle(); // this angle will be clamped based on which direction the player is facing
+            if(soldier.getFacingDirection()==0){
+                limAng = MathUtils.clamp(limAng,160,200); // negative x part of circle
+            }
+            else{
+                if(limAng > 0 && limAng<90){ // 0 is straight right, meaning the top half of the right is 0-90 and the bottom half is 270-360, separate cases are needed for each
+                    limAng = MathUtils.clamp(limAng,0,20); //positive x, positive y part of circle
+                }
+                else if(limAng>=270){
+                    limAng = MathUtils.clamp(limAng,340,360); //positive x, negative y part of circle
+                }
+            }
+            if(soldier.getFacingDirection() == 0) {//draw the frames facing the correct direction based on the direction the player is facing
+                batch.draw((TextureRegion) AnimationManager.archerDrawLeft[soldier.getTeam()].getKeyFrame((float)soldier.getBowDrawTime()/30f), x - 0.85f, y+0.1f, 1.1f, 0.6f, 2, 2, 1, 1, 180+limAng);
+            }
+            else {
+                batch.draw((TextureRegion) AnimationManager.archerDrawRight[soldier.getTeam()].getKeyFrame((float)soldier.getBowDrawTime()/30f), x - 0.22f, y+0.1f, 0.7f, 0.6f, 2, 2, 1, 1, limAng);// add 0.1 because the attacking sprites are 4 FCKING PIXELS TALLER THAN THE STANDING SPRITES
+            }
+        }
+    }
+}
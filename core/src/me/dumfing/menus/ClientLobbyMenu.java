@@ -9,7 +9,6 @@ import me.dumfing.client.maingame.MainGame;
 import me.dumfing.gdxtools.MenuTools;
 import me.dumfing.multiplayerTools.MultiplayerClient;
 import me.dumfing.multiplayerTools.MultiplayerTools;
-import me.dumfing.multiplayerTools.PlayerSoldier;
 
 import static me.dumfing.client.maingame.MainGame.DAGGER30;
 import static me.dumfing.client.maingame.MainGame.DAGGER50;
@@ -70,9 +69,9 @@ public class ClientLobbyMenu extends Menu{
             textLevel++;
         }
         textLevel = 0;
-        for(PlayerSoldier player : client.getPlayers().values()){
+        for(int i = 0; i<client.getPlayers().size(); i++){
             MenuTools.QueueText tempName = new MenuTools.QueueText(5,75+(textLevel*42),0,0);
-            tempName.setText(player.getName(),getFonts());
+            tempName.setText(client.getPlayers().getAt(i).getName(),getFonts());
             connectedPlayers.addQueueText(tempName);
             textLevel++;
         }
@@ -51,6 +51,7 @@ public class ServerBrowser extends Menu{
         directConnect.setEnterAction(new MenuTools.OnEnter() {
             @Override
             public void action(String sIn) {
+                MainGame.client.setRoomID(0); // typing in an ip joins the server's first room
                 MainGame.client.connectServerPlay(sIn);
                 MainGame.state = GameState.State.CONNECTINGTOSERVER;
             }
@@ -118,7 +119,7 @@ public class ServerBrowser extends Menu{
             super.clearText();
             for(final String k : serverList.keySet()){
                 float btPosY = bNum*btHeight;
-                MultiplayerTools.ServerSummary svInfo = serverList.get(k);
+                final MultiplayerTools.ServerSummary svInfo = serverList.get(k);
                 String tOut = String.format("%s%d|%d [%s]%5d",(svInfo.num>=svInfo.max?"[RED]":""),svInfo.num,svInfo.max,ratePing(svInfo.ping),svInfo.ping);
                 MenuTools.Button bt= new MenuTools.Button(0,super.getRect().getHeight()-btPosY-btHeight,super.getRect().getWidth(),btHeight);
                 MenuTools.QueueText sName = new MenuTools.QueueText(5,super.getRect().getHeight()-btPosY-btHeight/2+7,0,0);
@@ -126,7 +127,7 @@ public class ServerBrowser extends Menu{
                 peopleLimit.setFont(DAGGER30);
                 sName.setFont(DAGGER30);
                 peopleLimit.setText(tOut,super.getFontCaches());
-                sName.setText(serverList.get(k).serverName,super.getFontCaches());
+                sName.setText(svInfo.mapName==null||svInfo.mapName.length()==0?svInfo.serverName:svInfo.serverName+" [LIGHT_GRAY]"+svInfo.mapName,super.getFontCaches());
                 bt.setPressedTexture(MainGame.bigButtonPress);//new TextureRegion((Texture)assets.get("4914003-galaxy-wallpaper-png.png")));
                 bt.setUnpressedTexture(MainGame.bigButtonUn);//new TextureRegion((Texture)assets.get("Desktop.jpg")));
                 bt.setCallback(new MenuTools.OnClick() {
@@ -134,8 +135,9 @@ public class ServerBrowser extends Menu{
                     public void action() {
                             System.out.println(k);
                             String svIP = k;
-                            svIP = svIP.replace("/", "").substring(0, svIP.indexOf(":") - 1); // the received ip is in the form "/ip:port", we only need the ip part so we remove the / and the :port
+                            svIP = svIP.replace("/", "").substring(0, svIP.indexOf(":") - 1); // the key is in the form "/ip:port#room", we only need the ip part so we remove the / and everything from the :port on
                             System.out.println(svIP);
+                            MainGame.client.setRoomID(svInfo.roomID);
                             MainGame.client.connectServerPlay(svIP);
                             MainGame.state = GameState.State.CONNECTINGTOSERVER;
 
@@ -4,9 +4,11 @@ package me.dumfing.multiplayerTools;
 //EXPLAIN
 
 import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
 
 public class AnimationManager {
     private static final float WALKINGFRAMETIME = 0.07f;
@@ -22,12 +24,59 @@ public class AnimationManager {
     public static Animation[] bluFlag;
     public static Animation[] archerDrawLeft;
     public static Animation[] archerDrawRight;
+
+    /**
+     * Anything that can hand out the frames of an animation by name
+     */
+    private interface FrameSource{
+        Array<? extends TextureRegion> findRegions(String name);
+    }
     public static void init(AssetManager manager){
+        TextureAtlas knightAtlas = manager.get("SpriteSheets/KnightSprites.atlas");
+        TextureAtlas archerAtlas = manager.get("SpriteSheets/ArcherSprites.atlas");
+        TextureAtlas flagAtlas = manager.get("SpriteSheets/FlagSprites.atlas");
+        init(atlasFrames(knightAtlas),atlasFrames(archerAtlas),atlasFrames(flagAtlas));
+    }
 
-        // Atlas
-        TextureAtlas knightSprites = manager.get("SpriteSheets/KnightSprites.atlas");
-        TextureAtlas archerSprites = manager.get("SpriteSheets/ArcherSprites.atlas");
-        TextureAtlas flagSprites = manager.get("SpriteSheets/FlagSprites.atlas");
+    /**
+     * Sets up the animations without loading any textures, only the frame counts and timings are kept.<br>
+     * Used by the headless server which has no GL context but still needs to know when attacks land
+     * @param spriteSheetDir The folder containing the .atlas files
+     */
+    public static void initHeadless(FileHandle spriteSheetDir){
+        init(headlessFrames(spriteSheetDir.child("KnightSprites.atlas")),
+                headlessFrames(spriteSheetDir.child("ArcherSprites.atlas")),
+                headlessFrames(spriteSheetDir.child("FlagSprites.atlas")));
+    }
+    private static FrameSource atlasFrames(final TextureAtlas atlas){
+        return new FrameSource() {
+            @Override
+            public Array<? extends TextureRegion> findRegions(String name) {
+                return atlas.findRegions(name);
+            }
+        };
+    }
+
+    /**
+     * Reads the atlas file without creating its textures, each frame is an empty TextureRegion
+     * @param atlasFile The .atlas file to read
+     */
+    private static FrameSource headlessFrames(FileHandle atlasFile){
+        final TextureAtlas.TextureAtlasData data = new TextureAtlas.TextureAtlasData(atlasFile,atlasFile.parent(),false);
+        return new FrameSource() {
+            @Override
+            public Array<? extends TextureRegion> findRegions(String name) {
+                Array<TextureRegion> frames = new Array<TextureRegion>();
+                for(TextureAtlas.TextureAtlasData.Region region : data.getRegions()){
+                    if(region.name.equals(name)){
+                        frames.add(new TextureRegion());
+                    }
+                }
+                return frames;
+            }
+        };
+    }
+    private static void init(FrameSource knightSprites, FrameSource archerSprites, FrameSource flagSprites){
 
         // Knight Walking
         Animation<TextureRegion> redPlayerWalkRightKnight = new Animation<TextureRegion>(WALKINGFRAMETIME, knightSprites.findRegions("wrrpk"), Animation.PlayMode.LOOP);
@@ -173,7 +222,7 @@ public class AnimationManager {
      * @param frameTime
      * @return
      */
-    private static Animation<TextureRegion> qMakeA(TextureAtlas atlas, String names, float frameTime){
+    private static Animation<TextureRegion> qMakeA(FrameSource atlas, String names, float frameTime){
         return new Animation<TextureRegion>(frameTime,atlas.findRegions(names), Animation.PlayMode.LOOP);
     }
     //file names are in format adctl
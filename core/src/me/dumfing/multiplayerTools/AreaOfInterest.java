@@ -0,0 +1,101 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.IntSet;
+
+/**
+ * The soldiers and projectiles one client can see, the only ones it's sent<br>
+ * A snapshot is indexed into a SpatialGrid once, then gather picks out everything around each client's soldier: its view
+ * plus a margin for the camera trailing the soldier and leading it while aiming. Something the client already has is
+ * kept until it's a bit further out than that, so anything right on the edge doesn't keep being removed and sent again.
+ * The client's own soldier is always in. Flags aren't filtered, they're always sent
+ */
+public class AreaOfInterest {
+    public static final float DEFAULT_VIEWWIDTH = 48, DEFAULT_VIEWHEIGHT = 27; // units, a 1920x1080 screen at the default zoom
+    private static final float MARGIN = 10; // units past the view, enough for the camera's lag and the bow lead
+    private static final float KEEPMARGIN = 6; // units past the margin something the client has can go before it's dropped
+    private final SpatialGrid soldierGrid, projectileGrid;
+    private WorldSnapshot indexed; // the snapshot the grids were filled from
+    private final IntArray found = new IntArray();
+    final IntSet soldiers = new IntSet();
+    final IntArray soldierIds = new IntArray(); // the same ids as soldiers, in an order to write them in
+    final IntSet projectiles = new IntSet();
+    final IntArray projectileIds = new IntArray();
+
+    public AreaOfInterest(WorldMap map){
+        soldierGrid = SpatialGrid.forMap(map);
+        projectileGrid = SpatialGrid.forMap(map);
+    }
+
+    /**
+     * Fills the grids with where everything in a snapshot is, should be called once for each snapshot before gather
+     */
+    public void index(WorldSnapshot snap){
+        indexed = snap;
+        soldierGrid.clear();
+        for(IntMap.Entry<WorldSnapshot.SoldierState> e : snap.getSoldiers().entries()){
+            soldierGrid.insert(e.key,e.value.getX(),e.value.getY());
+        }
+        projectileGrid.clear();
+        for(IntMap.Entry<WorldSnapshot.ProjectileState> e : snap.getProjectiles().entries()){
+            projectileGrid.insert(e.key,e.value.getX(),e.value.getY());
+        }
+    }
+
+    /**
+     * Works out what one client should be sent from the indexed snapshot
+     * @param ownID The client's soldier
+     * @param x Where the client's soldier is
+     * @param y
+     * @param viewWidth How much of the world the client's screen shows in units
+     * @param viewHeight
+     * @param known What the client already has, null if it has nothing
+     */
+    public void gather(int ownID, float x, float y, float viewWidth, float viewHeight, WorldSnapshot known){
+        float halfWidth = viewWidth/2+MARGIN;
+        float halfHeight = viewHeight/2+MARGIN;
+        soldiers.clear();
+        soldierIds.clear();
+        found.clear();
+        soldierGrid.query(x-halfWidth-KEEPMARGIN,y-halfHeight-KEEPMARGIN,x+halfWidth+KEEPMARGIN,y+halfHeight+KEEPMARGIN,found);
+        for(int i = 0; i<found.size; i++){
+            int id = found.get(i);
+            WorldSnapshot.SoldierState state = indexed.getSoldiers().get(id);
+            if(id == ownID || inside(state.getX(),state.getY(),x,y,halfWidth,halfHeight,known!=null&&known.getSoldiers().containsKey(id))){
+                soldiers.add(id);
+                soldierIds.add(id);
+            }
+        }
+        if(indexed.getSoldiers().containsKey(ownID) && soldiers.add(ownID)){ // somewhere the grid didn't look
+            soldierIds.add(ownID);
+        }
+        projectiles.clear();
+        projectileIds.clear();
+        found.clear();
+        projectileGrid.query(x-halfWidth-KEEPMARGIN,y-halfHeight-KEEPMARGIN,x+halfWidth+KEEPMARGIN,y+halfHeight+KEEPMARGIN,found);
+        for(int i = 0; i<found.size; i++){
+            int id = found.get(i);
+            WorldSnapshot.ProjectileState state = indexed.getProjectiles().get(id);
+            if(inside(state.getX(),state.getY(),x,y,halfWidth,halfHeight,known!=null&&known.getProjectiles().containsKey(id))){
+                projectiles.add(id);
+                projectileIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the client is being sent everything in the indexed snapshot
+     */
+    public boolean coversAll(){
+        return soldierIds.size == indexed.getSoldiers().size && projectileIds.size == indexed.getProjectiles().size;
+    }
+
+    /**
+     * @param kept Whether the client already has it, it's then allowed a little further out
+     */
+    private static boolean inside(float x, float y, float centreX, float centreY, float halfWidth, float halfHeight, boolean kept){
+        float extra = kept?KEEPMARGIN:0;
+        return Math.abs(x-centreX) <= halfWidth+extra && Math.abs(y-centreY) <= halfHeight+extra;
+    }
+}
@@ -0,0 +1,68 @@
+package me.dumfing.multiplayerTools;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Reads values written by a BitWriter
+ */
+public class BitReader {
+    private byte[] buffer;
+    private int bitPos = 0;
+
+    public BitReader(byte[] buffer){
+        this.buffer = buffer;
+    }
+
+    /**
+     * @param numBits How many bits the value was written with, 0 to 32
+     * @return The value
+     * @throws IllegalStateException if there aren't that many bits left
+     */
+    public int readBits(int numBits){
+        if(bitPos+numBits > buffer.length*8){
+            throw new IllegalStateException("Tried to read past the end of the buffer");
+        }
+        int value = 0;
+        for(int i = 0; i<numBits; i++){
+            value = (value<<1)|((buffer[bitPos>>>3]>>>(7-(bitPos&7)))&1);
+            bitPos++;
+        }
+        return value;
+    }
+    public boolean readBoolean(){
+        return readBits(1) != 0;
+    }
+    public int readVarInt(){
+        int value = 0;
+        int shift = 0;
+        boolean more;
+        do{
+            value |= readBits(7)<<shift;
+            shift += 7;
+            more = readBoolean();
+        } while(more && shift < 35);
+        return value;
+    }
+    public int readSignedVarInt(){
+        int raw = readVarInt();
+        return (raw>>>1)^-(raw&1);
+    }
+    public String readString(){
+        int length = readVarInt();
+        if(length < 0 || length*8L > buffer.length*8L-bitPos){
+            throw new IllegalStateException("String is longer than the rest of the buffer");
+        }
+        byte[] bytes = new byte[length];
+        for(int i = 0; i<bytes.length; i++){
+            bytes[i] = (byte)readBits(8);
+        }
+        try {
+            return new String(bytes,"UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    public int getBitPosition(){
+        return bitPos;
+    }
+}
@@ -0,0 +1,111 @@
+package me.dumfing.multiplayerTools;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Writes values using exactly as many bits as they need instead of whole bytes<br>
+ * Read back with a BitReader in the same order
+ */
+public class BitWriter {
+    private byte[] buffer;
+    private int bitPos = 0;
+
+    public BitWriter(){
+        this(256);
+    }
+    public BitWriter(int capacity){
+        buffer = new byte[Math.max(1,capacity)];
+    }
+
+    /**
+     * Writes the lowest bits of a value
+     * @param value The value to write
+     * @param numBits How many bits to use, 0 to 32
+     */
+    public void writeBits(int value, int numBits){
+        ensureCapacity(numBits);
+        for(int i = numBits-1; i>=0; i--){ // most significant bit first
+            if(((value>>>i)&1) != 0){
+                buffer[bitPos>>>3] |= 0x80>>>(bitPos&7);
+            }
+            bitPos++;
+        }
+    }
+    public void writeBoolean(boolean value){
+        writeBits(value?1:0,1);
+    }
+
+    /**
+     * Writes a value in groups of 7 bits followed by a bit saying whether there's another group, small values take 8 bits
+     * @param value The value to write, treated as unsigned
+     */
+    public void writeVarInt(int value){
+        do{
+            int group = value&0x7F;
+            value >>>= 7;
+            writeBits(group,7);
+            writeBoolean(value != 0);
+        } while(value != 0);
+    }
+
+    /**
+     * Writes a value that might be negative so that small negative values are also short
+     */
+    public void writeSignedVarInt(int value){
+        writeVarInt((value<<1)^(value>>31));
+    }
+    public void writeString(String value){
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); // every jvm has UTF-8
+        }
+        writeVarInt(bytes.length);
+        for(byte b : bytes){
+            writeBits(b,8);
+        }
+    }
+
+    /**
+     * Forgets everything written so the writer can be used again
+     */
+    public void clear(){
+        int used = (bitPos+7)>>>3;
+        for(int i = 0; i<used; i++){
+            buffer[i] = 0;
+        }
+        bitPos = 0;
+    }
+
+    /**
+     * Throws away everything written after a point
+     * @param bitLength The length to go back to, from an earlier call to getBitLength
+     */
+    public void rewind(int bitLength){
+        for(int i = bitLength; i<bitPos; i++){
+            buffer[i>>>3] &= ~(0x80>>>(i&7));
+        }
+        bitPos = Math.min(bitPos,bitLength);
+    }
+    public int getBitLength(){
+        return bitPos;
+    }
+
+    /**
+     * @return A copy of everything written, padded with 0's to a whole byte
+     */
+    public byte[] toBytes(){
+        byte[] out = new byte[(bitPos+7)>>>3];
+        System.arraycopy(buffer,0,out,0,out.length);
+        return out;
+    }
+    private void ensureCapacity(int numBits){
+        int needed = (bitPos+numBits+7)>>>3;
+        if(needed > buffer.length){
+            byte[] bigger = new byte[Math.max(needed,buffer.length*2)];
+            System.arraycopy(buffer,0,bigger,0,buffer.length);
+            buffer = bigger;
+        }
+    }
+}
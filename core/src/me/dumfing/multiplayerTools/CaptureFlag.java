@@ -7,8 +7,7 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.GridPoint2;
 import com.badlogic.gdx.math.Rectangle;
-
-import java.util.HashMap;
+import com.badlogic.gdx.utils.IntArray;
 
 public class CaptureFlag {
     private Rectangle hitBox;
@@ -16,7 +15,7 @@ public class CaptureFlag {
     private int physicsParent = -1;
     private int teamID = -1; //whichever team the flag is on
     private int facingDirection = 0;
-    private boolean scored = false;
+    private int captures = 0; // how many times this flag has been taken to the other team's base
     public CaptureFlag(){}
     public CaptureFlag(float x, float y, int teamID){
         this.hitBox = new Rectangle(x,y,1,2);
@@ -31,9 +30,15 @@ public class CaptureFlag {
         this.physicsParent = physicsParent;
     }
 
-    public void update(float deltaTime, HashMap<Integer, PlayerSoldier> players, WorldMap world, int[] score){
-        if(players.containsKey(this.physicsParent)){
-            PlayerSoldier parent = players.get(this.physicsParent);
+    /**
+     * Moves the flag with whoever is carrying it, or gives it to someone on the other team touching it
+     * @param players The players that can carry it, dead ones are skipped
+     * @param soldiers Where the players are, by their place in players. Only the ones near the flag are checked
+     * @param nearby Somewhere to put the players found near the flag, cleared first
+     */
+    public void update(float deltaTime, EntityRegistry<PlayerSoldier> players, SpatialGrid soldiers, IntArray nearby, WorldMap world, int[] score){
+        PlayerSoldier parent = players.get(this.physicsParent);
+        if(parent != null && parent.isAlive()){
             hitBox.setPosition(parent.getX(),parent.getY());
             this.facingDirection = parent.getFacingDirection();
         }
@@ -41,24 +46,32 @@ public class CaptureFlag {
             this.physicsParent = -1;
             resetPos(world);
         }
-        for(Integer playerKey : players.keySet()){
-            PlayerSoldier player = players.get(playerKey);
-            if(player.getTeam() != this.teamID) {
+        nearby.clear();
+        soldiers.query(hitBox.x,hitBox.y,hitBox.x+hitBox.width,hitBox.y+hitBox.height,nearby);
+        nearby.sort(); // back into the order of players, so when two are touching it the same one gets it
+        for(int i = 0; i<nearby.size; i++){
+            PlayerSoldier player = players.getAt(nearby.get(i));
+            if(player.isAlive() && player.getTeam() != this.teamID) {
                 if (player.getRect().overlaps(this.hitBox)) {
-                    this.physicsParent = playerKey;
+                    this.physicsParent = player.getId();
                     break;
                 }
             }
         }
-        this.animationTime+=deltaTime;
-
+        updateAnimation(deltaTime);
+    }
 
+    /**
+     * Moves the flag's waving forward, clients call this every frame since they don't run update
+     */
+    public void updateAnimation(float deltaTime){
+        this.animationTime+=deltaTime;
     }
-    public void draw(SpriteBatch batch, HashMap<Integer, PlayerSoldier> players){
+    public void draw(SpriteBatch batch, EntityRegistry<PlayerSoldier> players){
         if(teamID!=-1){
-            if(players.containsKey(this.physicsParent)){
-                PlayerSoldier parent = players.get(this.physicsParent);
-                batch.draw((TextureRegion) (this.teamID==0?AnimationManager.redFlag:AnimationManager.bluFlag)[1-parent.getFacingDirection()].getKeyFrame(this.animationTime),this.getxPos()+(parent.getFacingDirection()==0?0.75f:-0.8f),this.getyPos()+1f,1,2);
+            PlayerSoldier parent = players.get(this.physicsParent);
+            if(parent != null){ // drawn on whoever is carrying it, they might be drawn ahead of where the flag was sent
+                batch.draw((TextureRegion) (this.teamID==0?AnimationManager.redFlag:AnimationManager.bluFlag)[1-parent.getFacingDirection()].getKeyFrame(this.animationTime),parent.getX()+(parent.getFacingDirection()==0?0.75f:-0.8f),parent.getY()+1f,1,2);
             }
             else{
                 batch.draw((TextureRegion) (this.teamID==0?AnimationManager.redFlag:AnimationManager.bluFlag)[this.facingDirection].getKeyFrame(this.animationTime),this.getxPos(),this.getyPos(),1,2);
@@ -86,11 +99,25 @@ public class CaptureFlag {
         this.hitBox.setPosition(flagPos.x,flagPos.y);
     }
 
-    public boolean isScored() {
-        return scored;
+    public int getFacingDirection() {
+        return facingDirection;
+    }
+
+    /**
+     * Sets everything the server sends about the flag, used by clients to copy the server's version
+     */
+    void setState(float x, float y, int physicsParent, int facingDirection, int captures){
+        this.hitBox.setPosition(x,y);
+        this.physicsParent = physicsParent;
+        this.facingDirection = facingDirection;
+        this.captures = captures;
+    }
+
+    public int getCaptures() {
+        return captures;
     }
 
-    public void setScored(boolean scored) {
-        this.scored = scored;
+    public void addCapture() {
+        this.captures++;
     }
 }
@@ -1,12 +1,9 @@
 package me.dumfing.multiplayerTools;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.*;
 import com.badlogic.gdx.utils.Array;
-import me.dumfing.gdxtools.MathTools;
+import com.badlogic.gdx.utils.IntArray;
 
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedList;
 
 import static me.dumfing.multiplayerTools.MultiplayerTools.*;
@@ -20,15 +17,35 @@ import static me.dumfing.multiplayerTools.PlayerSoldier.KNIGHT;
 public class ConcurrentGameWorld {
     public static final int SWORD = 0;
     public static final int BOW = 1;
-    private HashMap<Integer, PlayerSoldier> players;
+    public static final int BASE_TICKRATE = 60; // the tick rate all of the per tick constants (GRAVITY, WALKSPEED, etc.) were tuned for
+    public static final int RESPAWNTIME = 180; // in ticks at BASE_TICKRATE
+    public static final float MAXREWINDTIME = 0.2f; // seconds, hits from players further behind than this are checked as if they were only this far behind
+    private int tickRate = BASE_TICKRATE;
+    private float tickTime = 1f/BASE_TICKRATE; // seconds per tick
+    private float tickScale = 1; // how much of a BASE_TICKRATE tick a single tick is
+    private EntityRegistry<PlayerSoldier> players;
     private WorldMap worldMap;
-    private LinkedList<Projectile> projectiles = new LinkedList<Projectile>();
+    private Array<Projectile> projectiles = new Array<Projectile>();
     private CaptureFlag[] flags = new CaptureFlag[2];
     private int[] score = new int[2];
-    private LinkedList<GridPoint2> respawnTimers = new LinkedList<GridPoint2>(); // a linkedlist of GridPoint2's with the x's as id's and y's as time. 0 means they should respawn
+    private Array<GridPoint2> respawnTimers = new Array<GridPoint2>(); // an array of GridPoint2's with the x's as id's and y's as time. 0 means they should respawn
     private LinkedList<GridPoint2> hits= new LinkedList<GridPoint2>();  // LinkedList of GridPoint2's with the x as the attacker's id and the y as the defender's
     private Array<Vector3> particleList = new Array<Vector3>(); // places where particles should be played, and what colour
+    private Array<Vector3> particlesOut = new Array<Vector3>(); // what the last getParticles returned, swapped with particleList
     private LinkedList<KillInfo> killLog = new LinkedList<KillInfo>();
+    private int killCount = 0; // how many kills have ever been logged, the log itself only keeps the last 10
+    private int nextProjectileID = 0;
+    private boolean predicting = false; // true while a client is moving only its own soldier, attacks and arrows are left to the server
+    private int tick = 0; // how many times update has been called
+    private HitboxHistory hitboxHistory = null; // only kept when lag compensation is on
+    private boolean recordingHits = true; // off on the server, nothing there reads them
+    private final Rectangle attackRect = new Rectangle(); // reused for every swing so update doesn't make garbage
+    private final SoldierBodies bodies = new SoldierBodies(); // where the soldiers are moved, see movePlayers
+    private SpatialGrid soldierGrid, rewoundGrid; // where the living soldiers are now and where a rewind put them, made in setWorld
+    private boolean soldiersIndexed = false; // whether soldierGrid has everyone where they are now
+    private final IntArray nearby = new IntArray(); // the soldiers found by the last grid query, by their place in players
+    private static final String LEFTNAME = "(left)"; // shown in the kill log for a killer that isn't in the world anymore
+    private final IntArray rewoundArrows = new IntArray(); // arrows waiting to be checked against a rewind, by their place in projectiles
     public static class KillInfo{
         private String killer, victim;
         private int weapon;
@@ -56,23 +73,23 @@ public class ConcurrentGameWorld {
             return String.format("%-12s     %s",getKiller(),getVictim());
         }
     }
-    public ConcurrentGameWorld(HashMap<Integer, PlayerSoldier> initialPlayers){
+    public ConcurrentGameWorld(EntityRegistry<PlayerSoldier> initialPlayers){
         this.players = initialPlayers;
     }
 
     /**
      * Gets the respawn timeers from the world
-     * @return A LinkedList of Vector2 respawn timers
+     * @return An Array of GridPoint2 respawn timers
      */
-    public LinkedList<GridPoint2> getRespawnTimers() {
+    public Array<GridPoint2> getRespawnTimers() {
         return respawnTimers;
     }
 
     /**
      * Used to update the respawn timers from the MultiplayerClient
-     * @param respawnTimers The most up to date LinkedList of respawn timers from the MultiplayerClient
+     * @param respawnTimers The most up to date Array of respawn timers from the MultiplayerClient
      */
-    public void setRespawnTimers(LinkedList<GridPoint2> respawnTimers) {
+    public void setRespawnTimers(Array<GridPoint2> respawnTimers) {
         this.respawnTimers = respawnTimers;
     }
 
@@ -84,6 +101,9 @@ public class ConcurrentGameWorld {
         this.worldMap = wmIn;
         flags[0] = new CaptureFlag(this.worldMap.getRedFlag(),0);
         flags[1] = new CaptureFlag(this.worldMap.getBluFlag(),1);
+        soldierGrid = SpatialGrid.forMap(wmIn);
+        rewoundGrid = SpatialGrid.forMap(wmIn);
+        soldiersIndexed = false;
     }
 
     /**
@@ -95,140 +115,319 @@ public class ConcurrentGameWorld {
     }
 
     /**
-     * Updates everything in the ConcurrentGameWorld, players, projectiles, flags, respawn timers.
+     * Sets how many times per second update is called, everything in the world is scaled so that it moves at the same speed
+     * no matter what the tick rate is
+     * @param tickRate Ticks per second
+     */
+    public void setTickRate(int tickRate){
+        this.tickRate = tickRate;
+        this.tickTime = 1f/tickRate;
+        this.tickScale = (float)BASE_TICKRATE/tickRate;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * Turns on lag compensation, the server uses it so hits are checked against where the attacker saw everyone<br>
+     * Each player's view tick has to be kept up to date for it to do anything, see PlayerSoldier.setViewTick
+     * @param on Whether to keep a history of hitboxes and rewind to it when checking hits
+     */
+    public void setLagCompensation(boolean on){
+        hitboxHistory = on?new HitboxHistory():null;
+    }
+
+    /**
+     * Sets whether swings are added to the hits for getHits, the client plays effects for them and clears them every
+     * frame, the server turns this off since nothing would ever clear them there
+     * @param on Whether to record swing hits
+     */
+    public void setRecordingHits(boolean on){
+        recordingHits = on;
+    }
+
+    /**
+     * @return How many times update has been called
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    public float getTickTime() {
+        return tickTime;
+    }
+
+    /**
+     * Converts an amount of ticks at BASE_TICKRATE to the same amount of time at the world's tick rate
+     * @param baseTicks Ticks at BASE_TICKRATE
+     * @return Ticks at the world's tick rate
+     */
+    public int toTicks(int baseTicks){
+        return Math.max(1,Math.round(baseTicks/tickScale));
+    }
+
+    /**
+     * Updates everything in the ConcurrentGameWorld, players, projectiles, flags, respawn timers.<br>
+     * Every call advances the world by exactly one tick, see setTickRate
      */
     public void update(){
-        float deltaTime = Gdx.graphics.getDeltaTime();
+        float deltaTime = tickTime;
         checkDeaths(); // check to see if anyone should be killed so you don't have to deal with dead people
-        for(PlayerSoldier p : getLivingPlayers().values()){ // iterate through all the players in the list of living players
-            p.setAnimationID(handleKeyInput(p)); // figure out their animation from the keys they are pressing, this also sets their velocities
-            p.update(deltaTime); // update the player for any time based actions they'll need to do
-            detectCollisions(p); // see if the player is hitting anywhere in the world
-            handleCollisions(p); // stop the player from moving if they're hitting anything in the world
-            p.move(); // move the player by their vX and vY
-            if(p.getMouseAngle()> 90 && p.getMouseAngle()<270){ // if the mouse relative to the player is on the left side relative to the player
-                p.setFacingDirection(0); // make the player face left
+        soldiersIndexed = false; // everyone could have been moved since the last tick
+        for(int i = 0; i<players.size(); i++){ // iterate through all the living players
+            PlayerSoldier p = players.getAt(i);
+            if(p.isAlive()){
+                handlePlayerInput(p);
             }
-            else { // if the mouse is on the right side
-                p.setFacingDirection(1); // make player face right
+        }
+        for(int i = 0; i<players.size(); i++){ // after all the input so knockback from a swing isn't lost
+            if(players.getAt(i).isAlive()){
+                bodies.add(players.getAt(i));
             }
         }
-        for(Projectile proj : projectiles){ // iterate through the list of projectiles
-            proj.checkCollisions(getLivingPlayers(), worldMap); // check if the projectile is colliding with anything
-            if(proj.killedPlayer && !proj.isKillLogged()){
-                GridPoint2 killPair = proj.getAttackPair();
-                logKill(killPair.x,killPair.y,BOW);
-                System.out.println(players.get(killPair.x).getName()+" killed "+players.get(killPair.y).getName()+" with an arrow");
-                proj.setKillLogged(true);
+        movePlayers(); // everyone's attacks are checked before anyone moves
+        rewoundArrows.clear();
+        for(int i = 0; i<projectiles.size; i++){ // iterate through the list of projectiles
+            Projectile proj = projectiles.get(i);
+            if(hitboxHistory != null && !proj.isHit() && proj.getRewindTicks() > 0 && hitboxHistory.has(tick-proj.getRewindTicks())){
+                rewoundArrows.add(i); // checked against everyone where its caster saw them, along with the others that saw the same tick
+                continue;
             }
+            proj.checkCollisions(players, indexedSoldiers(), nearby, worldMap, tickScale); // check if the projectile is colliding with anything
+            logArrowKill(proj);
         }
-        for(int i = projectiles.size()-1;i>-1;i--){ // loop in reverse to prepare to remove projectiles from the list
-            if(projectiles.get(i).getTimeAlive() >= Projectile.MAXLIFETIME){ // if the projectile has existed for longer than the designated max lifetime
-                projectiles.remove(i); // remove the projectile from the array if it's lasted too long
+        checkRewoundArrows();
+        for(int i = projectiles.size-1;i>-1;i--){ // loop in reverse to prepare to remove projectiles from the list
+            if(projectiles.get(i).isExpired()){ // if the projectile has existed for longer than the designated max lifetime
+                projectiles.removeIndex(i); // remove the projectile from the array if it's lasted too long
             }
         }
         for(CaptureFlag flag : flags){ // iterate through all the flags
-            flag.update(deltaTime,getLivingPlayers(), worldMap,score); // update the flag, checking if it's supposed to move with a player or hit the ground
+            flag.update(deltaTime,players,indexedSoldiers(),nearby,worldMap,score); // update the flag, checking if it's supposed to move with a player or hit the ground
             if(worldMap.getPosId(Math.round(flag.getxPos()), Math.round(flag.getyPos()+1))==(flag.getTeamID()==0?0x0003FFFF:0xFF0300FF)){ // if the flag is on the red team, this checks that it's in the blue area and vice versa
                 flag.setPhysicsParent(-1); // reset physics parent to nothing
                 score[1-flag.getTeamID()]+=1; // increase team that is opposite of flag's score
-                flag.setScored(true);
+                flag.addCapture();
                 particleList.add(new Vector3(flag.getxPos(),flag.getyPos(),1-flag.getTeamID()));
                 flag.resetPos(worldMap);
             }
         }
-        for(GridPoint2 timePair : respawnTimers){
+        for(int i = respawnTimers.size-1; i>-1; i--){ // in reverse so removing one doesn't skip the next
+            GridPoint2 timePair = respawnTimers.get(i);
             if(timePair.y<=0){ // if the respawn time is over
                 if(players.get(timePair.x)!=null) {
                     players.get(timePair.x).setAlive(true); // set the respective player alive
                 }
-                respawnTimers.remove(timePair); // remove the time pair
+                respawnTimers.removeIndex(i); // remove the time pair
             }
             else{
-                timePair.add(0,-1); // subtract 1/60th of a second from the time
+                timePair.add(0,-1); // subtract one tick from the time
             }
         }
+        tick++;
+        if(hitboxHistory != null){
+            hitboxHistory.record(tick,players);
+        }
     }
 
-    public HashMap<Integer, PlayerSoldier> getPlayers() {
-        return players;
+    /**
+     * @return How many ticks back to check a player's hits, the difference between now and what they were looking at
+     */
+    private int rewindTicks(PlayerSoldier attacker){
+        if(hitboxHistory == null || attacker.getViewTick() < 0){
+            return 0;
+        }
+        return MathUtils.clamp(tick-attacker.getViewTick(),0,Math.round(MAXREWINDTIME*tickRate));
     }
 
-    public LinkedList<Projectile> getProjectiles() {
-        return projectiles;
+    /**
+     * Moves a single player forward one tick from the keys they're holding, used by a client to predict its own soldier<br>
+     * Nothing else in the world moves, the client shows everyone else as the server sent them. The player's attacks and
+     * arrows aren't made here either, they show up once the server has made them
+     * @param cID The player's id
+     */
+    public void predictPlayerTick(int cID){
+        PlayerSoldier p = players.get(cID);
+        if(p == null || !p.isAlive()){
+            return;
+        }
+        predicting = true;
+        updatePlayer(p);
+        predicting = false;
     }
 
-    public WorldMap getWorldMap() {
-        return worldMap;
+    /**
+     * Runs one tick of a single player again with an input the server hasn't answered yet, used by the client to move its
+     * own soldier ahead of the server after a world frame puts it back where the server had it
+     * @param cID The player's id
+     * @param buttons The buttons they held that tick
+     * @param mouseAngle Where they were aiming that tick
+     */
+    public void replayPlayerTick(int cID, int buttons, float mouseAngle){
+        PlayerSoldier p = players.get(cID);
+        if(p != null){
+            p.setInput(buttons,mouseAngle);
+            predictPlayerTick(cID);
+        }
     }
 
-    private void detectCollisions(PlayerSoldier playerSoldier){
-        Arrays.fill(playerSoldier.collisions,false);
-        playerSoldier.setvY(playerSoldier.getvY()+GRAVITY);  // Making the player fall down
-        // Colliding Top [0]
-        if ((worldMap.getPosId(Math.round(playerSoldier.getX()), (int)(playerSoldier.getY() + 2))>>8 == 1)||(worldMap.getPosId(Math.round(playerSoldier.getX()), (int)(playerSoldier.getY() + 2)) == (playerSoldier.getTeam()==1?0xFFFF00FF:0x00FFFFFF))){
-            playerSoldier.setY(Math.round(playerSoldier.getY()));
-            playerSoldier.collisions[0] = true;
-        }
+    /**
+     * Moves one player forward a tick from the keys they're holding
+     */
+    private void updatePlayer(PlayerSoldier p){
+        handlePlayerInput(p);
+        bodies.add(p);
+        movePlayers();
+    }
 
-        // Colliding Bottom [1]
-        if ((worldMap.getPosId(Math.round(playerSoldier.getX()), Math.round(playerSoldier.getY()))>>8 == 1)||(worldMap.getPosId(Math.round(playerSoldier.getX()), Math.round(playerSoldier.getY()))==(playerSoldier.getTeam()==1?0xFFFF00FF:0x00FFFFFF))){
-            playerSoldier.setY(Math.round(playerSoldier.getY()));
-            playerSoldier.collisions[1] = true;
+    /**
+     * Everything about a player's tick except moving them, their velocities are set from the keys they're holding
+     */
+    private void handlePlayerInput(PlayerSoldier p){
+        p.setAnimationID(handleKeyInput(p)); // figure out their animation from the keys they are pressing, this also sets their velocities
+        p.update(tickTime); // update the player for any time based actions they'll need to do
+        if(p.getMouseAngle()> 90 && p.getMouseAngle()<270){ // if the mouse relative to the player is on the left side relative to the player
+            p.setFacingDirection(0); // make the player face left
         }
-        // Colliding Left [3]
-        if ((worldMap.getPosId((int)(playerSoldier.getX()), (int)(playerSoldier.getY() + 1))>>8 == 1)||(worldMap.getPosId((int)(playerSoldier.getX()), (int)(playerSoldier.getY() + 1))==(playerSoldier.getTeam()==1?0xFFFF00FF:0x00FFFFFF))){
-            playerSoldier.setX((int)playerSoldier.getX()+1);
-            playerSoldier.collisions[3] = true;
+        else { // if the mouse is on the right side
+            p.setFacingDirection(1); // make player face right
         }
+    }
 
-        // Colliding Right [2]
-        if ((worldMap.getPosId((int)(playerSoldier.getX()+1), (int)(playerSoldier.getY() + 1))>>8 == 1)||(worldMap.getPosId((int)(playerSoldier.getX()+1), (int)(playerSoldier.getY() + 1))==(playerSoldier.getTeam()==1?0xFFFF00FF:0x00FFFFFF))){
-            playerSoldier.setX((int)playerSoldier.getX());
-            playerSoldier.collisions[2] = true;
-        }
+    /**
+     * Applies gravity, stops everyone added to bodies at whatever they hit in the world and moves them by their velocity
+     */
+    private void movePlayers(){
+        bodies.step(worldMap,tickScale);
+        bodies.store();
+        soldiersIndexed = false;
+    }
 
+    /**
+     * @return The grid of where the living players are now, filled first if anyone has moved since it last was
+     */
+    private SpatialGrid indexedSoldiers(){
+        if(!soldiersIndexed){
+            indexSoldiers(soldierGrid);
+            soldiersIndexed = true;
+        }
+        return soldierGrid;
+    }
 
+    /**
+     * @return The grid of where the living players are while hitboxHistory has them rewound, filled every time since
+     * each rewind can be to a different tick. The rewind already moves everyone so this doesn't cost much more
+     */
+    private SpatialGrid indexRewound(){
+        indexSoldiers(rewoundGrid);
+        return rewoundGrid;
     }
-    private void handleCollisions(PlayerSoldier playerSoldier){
 
-        if(playerSoldier.collisions[0]){ //top
-            playerSoldier.setvY(Math.min(0,playerSoldier.getvY()));
+    /**
+     * Empties a grid and puts every living player in the cells their hitbox touches<br>
+     * They're put in by their place in players, not their id, so whatever a query finds can be sorted back into the
+     * order players are walked in and anything that hits the first player it finds hits the same one it always has
+     */
+    private void indexSoldiers(SpatialGrid grid){
+        grid.clear();
+        grid.reserve(players.size());
+        nearby.clear(); // nothing is being walked yet, whoever asked for the grid is about to query it
+        nearby.ensureCapacity(players.size());
+        for(int i = 0; i<players.size(); i++){
+            PlayerSoldier p = players.getAt(i);
+            if(p.isAlive()){
+                grid.insert(i,p.getRect());
+            }
         }
+    }
 
-        if(playerSoldier.collisions[1]){ //bottom
-            playerSoldier.setvY(Math.max(0,playerSoldier.getvY()));
-            playerSoldier.setvX(MathTools.towardsZero(playerSoldier.getvX(), 0.1f));
-        }
+    public EntityRegistry<PlayerSoldier> getPlayers() {
+        return players;
+    }
 
-        if(playerSoldier.collisions[2]){ //right
-            playerSoldier.setvX(Math.min(0,playerSoldier.getvX()));
-        }
+    public Array<Projectile> getProjectiles() {
+        return projectiles;
+    }
 
-        if(playerSoldier.collisions[3]){ //left
-            playerSoldier.setvX(Math.min(0,playerSoldier.getvX()));
+    public WorldMap getWorldMap() {
+        return worldMap;
+    }
+
+    /**
+     * Checks the arrows update put aside against everyone where their casters saw them<br>
+     * Arrows whose casters were looking at the same tick are checked together, so each tick is only rewound and put in
+     * a grid once no matter how many arrows need it
+     */
+    private void checkRewoundArrows(){
+        while(rewoundArrows.size > 0){
+            int viewed = tick-projectiles.get(rewoundArrows.first()).getRewindTicks();
+            boolean rewound = hitboxHistory.rewind(viewed,players,-1);
+            SpatialGrid soldiers = rewound?indexRewound():indexedSoldiers();
+            int left = 0;
+            for(int k = 0; k<rewoundArrows.size; k++){
+                Projectile proj = projectiles.get(rewoundArrows.get(k));
+                if(tick-proj.getRewindTicks() != viewed){ // saw another tick, kept for a later pass
+                    rewoundArrows.set(left++,rewoundArrows.get(k));
+                    continue;
+                }
+                proj.checkCollisions(players, soldiers, nearby, worldMap, tickScale);
+                PlayerSoldier victim = rewound?players.get(proj.getPhysicsParent()):null;
+                if(victim != null){ // it hit where they were, stick it into where they are now
+                    proj.shift(hitboxHistory.getRewindOffsetX(victim),hitboxHistory.getRewindOffsetY(victim));
+                }
+                logArrowKill(proj);
+            }
+            rewoundArrows.truncate(left);
+            hitboxHistory.restore();
         }
+    }
 
+    private void logArrowKill(Projectile proj){
+        if(proj.killedPlayer && !proj.isKillLogged()){
+            proj.setKillLogged(true); // first, so a kill that can't be logged isn't tried again every tick
+            logKill(proj.getCaster(),proj.getPhysicsParent(),BOW);
+            PlayerSoldier caster = players.get(proj.getCaster());
+            System.out.println((caster==null?LEFTNAME:caster.getName())+" killed "+players.get(proj.getPhysicsParent()).getName()+" with an arrow");
+        }
     }
+
     private void handleAttacks(PlayerSoldier attacker){
+        if(attacker.getFrameIndex() != AnimationManager.ATTACKFRAME){ // the swing can only hit anyone on this frame
+            return;
+        }
         // Checking if player collides with any other player
-        Rectangle attackRect = new Rectangle(attacker.getX()+(attacker.getFacingDirection()==0?-0.8f:1),attacker.getY(),0.9f,2f); // TODO: tweak this to line up with the animations better
-        for (Integer k: players.keySet()){
-            PlayerSoldier target = players.get(k);
-            if (target != attacker){
-                if (attacker.getFrameIndex() == AnimationManager.ATTACKFRAME && attackRect.overlaps(target.getRect()) && target.getHitCooldown()==0){  // Maybe its  2 frame where the damage may be done?
+        attackRect.set(attacker.getX()+(attacker.getFacingDirection()==0?-0.8f:1),attacker.getY(),0.9f,2f); // TODO: tweak this to line up with the animations better
+        int rewind = rewindTicks(attacker);
+        boolean rewound = rewind > 0 && hitboxHistory.rewind(tick-rewind,players,-1); // the swing is where the attacker is now, the targets are where they saw them
+        try{
+            checkSwing(attacker,attackRect,rewound?indexRewound():indexedSoldiers());
+        }
+        finally{
+            if(hitboxHistory != null){
+                hitboxHistory.restore();
+            }
+        }
+    }
+    /**
+     * Hits the first player the swing reaches, only the ones in the grid cells it touches are checked
+     * @param soldiers The grid of where the players are
+     */
+    private void checkSwing(PlayerSoldier attacker, Rectangle attackRect, SpatialGrid soldiers){
+        nearby.clear();
+        soldiers.query(attackRect.x,attackRect.y,attackRect.x+attackRect.width,attackRect.y+attackRect.height,nearby);
+        nearby.sort(); // back into the order of players
+        for (int i = 0; i<nearby.size; i++){
+            PlayerSoldier target = players.getAt(nearby.get(i));
+            if (target != attacker && target.isAlive()){
+                if (attackRect.overlaps(target.getRect()) && target.getHitCooldown()==0){  // Maybe its  2 frame where the damage may be done?
                     System.out.println(attacker.getName()+" attacked "+target.getName());
-                    int attackerID = 0;
-                    int victimID = k;
                     attacker.attack(target); // always will attack because the attack rectangle is left or right of the player already
-                    for(Integer v : players.keySet()){
-                        if(players.get(v) == attacker){
-                            hits.add(new GridPoint2(v,k));
-                            attackerID = v;
-                        }
+                    if(recordingHits){
+                        hits.add(new GridPoint2(attacker.getId(),target.getId()));
                     }
                     if(target.getHealth() <= 0){
-                        logKill(attackerID,victimID,SWORD);
+                        logKill(attacker.getId(),target.getId(),SWORD);
                         System.out.println(attacker.getName()+" killed "+target.getName()+" with a sword");
                     }
                     return;
@@ -238,22 +437,22 @@ public class ConcurrentGameWorld {
 
     }
 
-    public void updatePlayerKeys(Integer cID, MultiplayerTools.ClientControlObject[] keys){
-        players.get(cID).setKeysHeld(keys);
+    public void updatePlayerKeys(int cID, int buttons, float mouseAngle){
+        players.get(cID).setInput(buttons,mouseAngle);
     }
-    public void updateRespawnTimes(LinkedList<GridPoint2> times){
+    public void updateRespawnTimes(Array<GridPoint2> times){
         this.respawnTimers = times;
     }
-    public void updatePlayers(HashMap<Integer, PlayerSoldier> newInfo){
+    public void updatePlayers(EntityRegistry<PlayerSoldier> newInfo){
         this.players = newInfo;
     }
 
-    public void updateProjectiles(LinkedList<Projectile> projectiles) {
+    public void updateProjectiles(Array<Projectile> projectiles) {
         this.projectiles = projectiles;
     }
 
     public int handleKeyInput(PlayerSoldier pIn){
-        MultiplayerTools.ClientControlObject[] keys = pIn.getKeysHeld();
+        int keys = pIn.getButtons();
 
         int animation = 0;
 
@@ -262,7 +461,9 @@ public class ConcurrentGameWorld {
         if (pIn.swinging){
 
             animation += AnimationManager.ATTACK;
-            handleAttacks(pIn);
+            if(!predicting) {
+                handleAttacks(pIn);
+            }
             // if (pIn.getAnimationSet()[pIn.getAnimationID() & AnimationManager.DIRECTION][0][pIn.getCurrentClass()].isAnimationFinished(pIn.getAnimationTime())){
             //     pIn.swinging = false;
             // }
@@ -404,22 +605,19 @@ public class ConcurrentGameWorld {
                     break;
 
                 case ARCHER:
-                    if(projectiles.size()<20) {
-                        pIn.setBowDrawTime(pIn.getBowDrawTime()+1);
-                        pIn.setDrawingBow(true);
-                        animation+=AnimationManager.ATTACK;
-                    }
+                    pIn.setBowDrawTime(pIn.getBowDrawTime()+1);
+                    pIn.setDrawingBow(true);
+                    animation+=AnimationManager.ATTACK;
                     break;
             }
         }
         if(!keyDown(keys, Keys.LMB)) {
-            if (pIn.isDrawingBow() && pIn.getBowDrawTime() > 20) {
-                for(Integer v : players.keySet()){
-                    if(players.get(v) == pIn){
-                        projectiles.add(new Projectile(pIn.getX() + pIn.getWidth() / 2f, pIn.getY() + pIn.getHeight() / 2f, Math.min(2, (float) pIn.getBowDrawTime() / 45f), pIn.getMouseAngle(), 0, pIn.getTeam(),v));
-                        break;
-                    }
-                }
+            if (pIn.isDrawingBow() && pIn.getBowDrawTime() > toTicks(20) && !predicting) {
+                Projectile arrow = new Projectile(pIn.getX() + pIn.getWidth() / 2f, pIn.getY() + pIn.getHeight() / 2f, Math.min(2, pIn.getBowDrawTime() * tickScale / 45f), pIn.getMouseAngle(), 0, pIn.getTeam(),pIn.getId());
+                arrow.setLifetime(toTicks(Projectile.MAXLIFETIME));
+                arrow.setId(nextProjectileID++);
+                arrow.setRewindTicks(rewindTicks(pIn));
+                projectiles.add(arrow);
             }
             pIn.setDrawingBow(false);
             pIn.setBowDrawTime(0);
@@ -435,8 +633,8 @@ public class ConcurrentGameWorld {
     public void setPlayerPos(int playerID, float posX, float posY){
         players.get(playerID).setPos(posX,posY);
     }
-    private boolean keyDown(MultiplayerTools.ClientControlObject[] keys, int key){
-        return keys[key]!=null && keys[key].type == 1 && keys[key].isDown;
+    private boolean keyDown(int keys, int key){
+        return (keys&(1<<key)) != 0;
     }
     public void updateFlags(CaptureFlag[] flags){
         this.flags = flags;
@@ -448,31 +646,23 @@ public class ConcurrentGameWorld {
         return score[BLUTEAM];
     }
     private void checkDeaths(){// checks if any player should be killed and does something about it
-        for(Integer k : players.keySet()){
-            if(players.get(k).getY()<-30){
+        for(int i = 0; i<players.size(); i++){
+            PlayerSoldier p = players.getAt(i);
+            if(p.getY()<-30){
                 //kill them
-                killPlayer(k);
+                killPlayer(p);
             }
-            else if(players.get(k).getHealth() <=0){
-                killPlayer(k);
+            else if(p.getHealth() <=0){
+                killPlayer(p);
             }
         }
     }
-    private HashMap<Integer,PlayerSoldier> getLivingPlayers(){
-        HashMap<Integer,PlayerSoldier> playersOut= new HashMap<Integer, PlayerSoldier>();
-        for(Integer k : players.keySet()){
-            if(players.get(k).isAlive()){
-                playersOut.put(k,players.get(k));
-            }
-        }
-        return playersOut;
-    }
-    private void killPlayer(Integer k){
-        GridPoint2 spawnPos = players.get(k).getTeam() == 0? worldMap.getRedSpawn(): worldMap.getBluSpawn();
-        players.get(k).setPos(spawnPos);
-        players.get(k).setAlive(false);
-        players.get(k).reset();
-        respawnTimers.add(new GridPoint2(k,180));
+    private void killPlayer(PlayerSoldier p){
+        GridPoint2 spawnPos = p.getTeam() == 0? worldMap.getRedSpawn(): worldMap.getBluSpawn();
+        p.setPos(spawnPos);
+        p.setAlive(false);
+        p.reset();
+        respawnTimers.add(new GridPoint2(p.getId(),toTicks(RESPAWNTIME)));
     }
 
     public LinkedList<GridPoint2> getHits() {
@@ -481,24 +671,57 @@ public class ConcurrentGameWorld {
     public void clearHits(){
         hits.clear();
     }
+
+    /**
+     * Records that someone was hit so the client can play the effects for it
+     * @param attackerID The attacker's id, -1 if it isn't known
+     * @param victimID The id of who was hit
+     */
+    public void addHit(int attackerID, int victimID){
+        hits.add(new GridPoint2(attackerID,victimID));
+    }
+
+    /**
+     * Records a flag capture so the client can play the effects for it
+     * @param x Where the flag was captured
+     * @param y
+     * @param team The team that captured it
+     */
+    public void addCaptureParticle(float x, float y, int team){
+        particleList.add(new Vector3(x,y,team));
+    }
+
+    /**
+     * Takes the particles added since the last call
+     * @return The particles, the array is reused so it's only good until the next call
+     */
     public Array<Vector3> getParticles(){
-        Array<Vector3> aOut = new Array<Vector3>(this.particleList);
+        Array<Vector3> aOut = this.particleList;
+        this.particleList = this.particlesOut;
         this.particleList.clear();
+        this.particlesOut = aOut;
         return aOut;
     }
 
     /**
-     * Adds a kill to the kill log
+     * Adds a kill to the kill log<br>
+     * The killer can have left by the time their arrow lands, then nobody gets the kill and the log shows LEFTNAME
      * @param killer the connection id of the person who killed
-     * @param victim the connection id of the person who was killed
+     * @param victim the connection id of the person who was killed, nothing is logged if they aren't in the world
      * @param weapon the weapon that was used
      */
     public void logKill(int killer, int victim, int weapon){
         PlayerSoldier k = players.get(killer);
         PlayerSoldier v = players.get(victim);
-        k.addKill();
+        if(v == null){
+            return;
+        }
+        if(k != null){
+            k.addKill();
+        }
         v.addDeath();
-        killLog.add(new KillInfo(k.getName(),v.getName(),weapon));
+        killLog.add(new KillInfo(k==null?LEFTNAME:k.getName(),v.getName(),weapon));
+        killCount++;
         if(killLog.size()>10){
             killLog.remove();
         }
@@ -511,6 +734,13 @@ public class ConcurrentGameWorld {
     public LinkedList<KillInfo> getKillLog() {
         return killLog;
     }
+
+    /**
+     * @return How many kills have been logged since the world was made, changes whenever the kill log does
+     */
+    public int getKillCount() {
+        return killCount;
+    }
     public void updateKillInfo(LinkedList<KillInfo> killInfoIn){
         this.killLog = killInfoIn;
     }
@@ -0,0 +1,89 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntIntMap;
+
+/**
+ * Entities keyed by their int id, kept packed together in an array so the whole lot can be walked with an index
+ * instead of an iterator, and looked up by id without boxing it<br>
+ * Removing one moves the last entity into its place, so the order they're walked in isn't the order they were added.
+ * Every entity is told its id when it's put in, so code holding one never has to search for it
+ * @param <T> What's kept, usually PlayerSoldier
+ */
+public class EntityRegistry<T extends EntityRegistry.Entity> {
+    /**
+     * Something that knows its own id
+     */
+    public interface Entity {
+        int getId();
+        void setId(int id);
+    }
+
+    private final Array<T> entities = new Array<T>(false,16); // unordered, removeIndex moves the last one into the gap
+    private final IntIntMap indices = new IntIntMap(); // id -> index in entities
+
+    /**
+     * Adds an entity, replacing whatever had the id before
+     * @param id The id to keep it under, the entity's id is set to it
+     * @param entity The entity
+     */
+    public void put(int id, T entity){
+        entity.setId(id);
+        int index = indices.get(id,-1);
+        if(index == -1){
+            indices.put(id,entities.size);
+            entities.add(entity);
+        }
+        else{
+            entities.set(index,entity);
+        }
+    }
+
+    /**
+     * @return The entity with an id, null if there isn't one
+     */
+    public T get(int id){
+        int index = indices.get(id,-1);
+        return index==-1?null:entities.get(index);
+    }
+
+    public boolean containsKey(int id){
+        return indices.containsKey(id);
+    }
+
+    /**
+     * Takes out the entity with an id
+     * @return The entity that was taken out, null if there wasn't one
+     */
+    public T remove(int id){
+        int index = indices.remove(id,-1);
+        if(index == -1){
+            return null;
+        }
+        T removed = entities.removeIndex(index);
+        if(index < entities.size){
+            indices.put(entities.get(index).getId(),index);
+        }
+        return removed;
+    }
+
+    /**
+     * @return How many entities there are
+     */
+    public int size(){
+        return entities.size;
+    }
+
+    /**
+     * @param index From 0 to size()-1
+     * @return The entity at that place in the array, for walking through all of them
+     */
+    public T getAt(int index){
+        return entities.get(index);
+    }
+
+    public void clear(){
+        entities.clear();
+        indices.clear();
+    }
+}
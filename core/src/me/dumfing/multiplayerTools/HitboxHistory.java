@@ -0,0 +1,141 @@
+package me.dumfing.multiplayerTools;
+
+/**
+ * Where every living soldier was at the end of each of the last CAPACITY ticks, so the server can check a hit against
+ * where the attacker saw its target instead of where the target is now<br>
+ * A client sees everyone else a little in the past, so by the time its swing or arrow reaches the server the target has
+ * moved on. The server moves everyone back to the tick the attacker was looking at with rewind, checks the hit, and puts
+ * them back with restore. The arrays are reused every tick and only grow when there are more soldiers than ever before
+ */
+public class HitboxHistory {
+    public static final int CAPACITY = 64; // must be a power of 2, over a second at the base tick rate
+    private final int[] slotTicks = new int[CAPACITY];
+    private final int[] slotCounts = new int[CAPACITY];
+    private int[][] slotIds = new int[CAPACITY][];
+    private float[][] slotXs = new float[CAPACITY][];
+    private float[][] slotYs = new float[CAPACITY][];
+    // the soldiers moved by the last rewind and where they really are
+    private PlayerSoldier[] moved = new PlayerSoldier[8];
+    private float[] savedXs = new float[8];
+    private float[] savedYs = new float[8];
+    private int movedCount = 0;
+
+    public HitboxHistory(){
+        for(int i = 0; i<CAPACITY; i++){
+            slotTicks[i] = -1;
+            slotIds[i] = new int[8];
+            slotXs[i] = new float[8];
+            slotYs[i] = new float[8];
+        }
+    }
+
+    /**
+     * Remembers where every living soldier is, should be called once at the end of every tick
+     * @param tick The tick that just finished
+     * @param players Everyone in the world
+     */
+    public void record(int tick, EntityRegistry<PlayerSoldier> players){
+        int slot = tick&(CAPACITY-1);
+        if(slotIds[slot].length < players.size()){
+            slotIds[slot] = new int[players.size()*2];
+            slotXs[slot] = new float[players.size()*2];
+            slotYs[slot] = new float[players.size()*2];
+        }
+        int count = 0;
+        for(int i = 0; i<players.size(); i++){
+            PlayerSoldier p = players.getAt(i);
+            if(p.isAlive()){
+                slotIds[slot][count] = p.getId();
+                slotXs[slot][count] = p.getX();
+                slotYs[slot][count] = p.getY();
+                count++;
+            }
+        }
+        slotTicks[slot] = tick;
+        slotCounts[slot] = count;
+    }
+
+    /**
+     * @return Whether the positions from that tick are still kept
+     */
+    public boolean has(int tick){
+        return tick >= 0 && slotTicks[tick&(CAPACITY-1)] == tick;
+    }
+
+    /**
+     * Moves every soldier that was alive at a tick back to where they were, until restore is called
+     * @param tick The tick to go back to
+     * @param players Everyone in the world
+     * @param skipID A soldier to leave where they are, usually the attacker. -1 to move everyone
+     * @return Whether anyone was moved, false if the tick isn't kept anymore
+     */
+    public boolean rewind(int tick, EntityRegistry<PlayerSoldier> players, int skipID){
+        restore(); // never stack two rewinds
+        if(!has(tick)){
+            return false;
+        }
+        int slot = tick&(CAPACITY-1);
+        for(int i = 0; i<slotCounts[slot]; i++){
+            int id = slotIds[slot][i];
+            PlayerSoldier p = id==skipID?null:players.get(id);
+            if(p != null && p.isAlive()){
+                if(movedCount == moved.length){
+                    grow();
+                }
+                moved[movedCount] = p;
+                savedXs[movedCount] = p.getX();
+                savedYs[movedCount] = p.getY();
+                movedCount++;
+                p.setPos(slotXs[slot][i],slotYs[slot][i]);
+            }
+        }
+        return movedCount != 0;
+    }
+
+    /**
+     * Puts everyone moved by the last rewind back where they really are
+     */
+    public void restore(){
+        for(int i = 0; i<movedCount; i++){
+            moved[i].setPos(savedXs[i],savedYs[i]);
+            moved[i] = null;
+        }
+        movedCount = 0;
+    }
+
+    /**
+     * @return How far a soldier really is from where the current rewind put them on x, 0 if they weren't moved
+     */
+    public float getRewindOffsetX(PlayerSoldier p){
+        for(int i = 0; i<movedCount; i++){
+            if(moved[i] == p){
+                return savedXs[i]-p.getX();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return How far a soldier really is from where the current rewind put them on y, 0 if they weren't moved
+     */
+    public float getRewindOffsetY(PlayerSoldier p){
+        for(int i = 0; i<movedCount; i++){
+            if(moved[i] == p){
+                return savedYs[i]-p.getY();
+            }
+        }
+        return 0;
+    }
+
+    private void grow(){
+        PlayerSoldier[] biggerMoved = new PlayerSoldier[moved.length*2];
+        float[] biggerXs = new float[moved.length*2];
+        float[] biggerYs = new float[moved.length*2];
+        System.arraycopy(moved,0,biggerMoved,0,movedCount);
+        System.arraycopy(savedXs,0,biggerXs,0,movedCount);
+        System.arraycopy(savedYs,0,biggerYs,0,movedCount);
+        moved = biggerMoved;
+        savedXs = biggerXs;
+        savedYs = biggerYs;
+    }
+}
@@ -1,6 +1,6 @@
 package me.dumfing.multiplayerTools;
 
-import com.badlogic.gdx.math.GridPoint2;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.Vector2;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
@@ -9,47 +9,84 @@ import me.dumfing.client.maingame.GameState;
 import me.dumfing.client.maingame.MainGame;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Created by dumpl on 4/19/2017.
  */
 public class MultiplayerClient {
+    private static final int PROBETHREADS = 8; // how many servers are asked for their summary at the same time
+    private static final int PROBETIMEOUT = 500; // milliseconds each server gets to accept the connection, and then to answer
+    private static final int DISCOVERYTIMEOUT = 1000; // milliseconds to wait for servers to answer the broadcast
     private Runnable findServers = new Runnable() {
         @Override
         public void run() {
             findingServers = true;
-            serverSummaries = new HashMap<String, MultiplayerTools.ServerSummary>(); // set the client's server list to empty
-            for(InetAddress addr : findServers()){ // iterates through the list of servers that the client found running on the designated ports
-                if(!addr.getHostAddress().equals("127.0.0.1")) { //Disallow connecting to localhost to prevent duplicate results if you're hosting on the same computer you're playing on
-                    pingServer(addr.getHostAddress()); // connect to the server and ask for information about it in return
-                    try {
-                        Thread.sleep(500); // give the server 500 milliseconds to respond before disconnecting to move on to the next server
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    disconnect();
+            synchronized (serverSummaries) {
+                serverSummaries.clear(); // set the client's server list to empty
+            }
+            ExecutorService probes = Executors.newFixedThreadPool(PROBETHREADS);
+            // servers that don't answer with a summary are still found by kryonet's discovery, it runs alongside
+            Future<List<InetAddress>> discovered = probes.submit(new Callable<List<InetAddress>>() {
+                @Override
+                public List<InetAddress> call() {
+                    return findServers();
+                }
+            });
+            HashSet<String> answered = querySummaries();
+            List<InetAddress> hosts;
+            try {
+                hosts = discovered.get();
+            } catch (Exception e) {
+                hosts = new LinkedList<InetAddress>();
+            }
+            for(final InetAddress addr : hosts){ // iterates through the list of servers that the client found running on the designated ports
+                if(!addr.getHostAddress().equals("127.0.0.1") && !answered.contains(addr.getHostAddress())) { //Disallow connecting to localhost to prevent duplicate results if you're hosting on the same computer you're playing on
+                    probes.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            probeServer(addr.getHostAddress()); // connect to the server and ask for information about it in return
+                        }
+                    });
                 }
             }
+            probes.shutdown();
+            try {
+                probes.awaitTermination(1, TimeUnit.MINUTES); // each probe gives up on its own long before this
+            } catch (InterruptedException e) {
+                probes.shutdownNow();
+            }
             findingServers = false;
-            // since I have no easy of checking whether or not this is done checking for new servers,
-            // I'm forced to make serverBrowser static and populate it's list from in here.
-            MainGame.serverBrowser.populateServerList(serverSummaries);
+            showServers();
         }
     };
     private LinkedList<String> messages = new LinkedList<String>();
-    LinkedList<Projectile> projectiles = new LinkedList<Projectile>();
-    private HashMap<Integer, PlayerSoldier> players = new HashMap<Integer, PlayerSoldier>();
-    CaptureFlag[] flags = new CaptureFlag[2];
-    LinkedList<GridPoint2> respawnTimes = new LinkedList<GridPoint2>();
-    LinkedList<ConcurrentGameWorld.KillInfo> killLog = new LinkedList<ConcurrentGameWorld.KillInfo>();
-    private boolean findingServers = false;
+    private EntityRegistry<PlayerSoldier> players = new EntityRegistry<PlayerSoldier>();
+    private WorldFrame[] frames = new WorldFrame[WorldSnapshot.HISTORY]; // recent world frames, the server writes new ones against these
+    private volatile WorldFrame latestFrame = null;
+    private ConcurrentLinkedQueue<WorldFrame> arrivedFrames = new ConcurrentLinkedQueue<WorldFrame>(); // read but not yet taken by the game
+    private volatile boolean findingServers = false;
     private Client playerClient;
-    private HashMap<String, MultiplayerTools.ServerSummary> serverSummaries;
+    private final HashMap<String, MultiplayerTools.ServerSummary> serverSummaries = new HashMap<String, MultiplayerTools.ServerSummary>(); // filled by the probe threads, lock it to use it
     private int redTeam = 0;
     private int blueTeam = 0;
     private int rLimit = 0;
@@ -57,14 +94,10 @@ public class MultiplayerClient {
     private int gameStarted = -1;
     private int connectionID = 0; // the id of the connection between the client and the server
     private int worldNum = -1;
-    private boolean hasNewPlayerInfo = false;
-    private boolean hasNewProjectileInfo = false;
-    private boolean hasNewFlagInfo = false;
-    private boolean hasNewRespawnInfo = false;
-    private boolean hasNewKillInfo = false;
+    private int roomID = 0; // which match on the server to join
+    private int tickRate = ConcurrentGameWorld.BASE_TICKRATE;
     public MultiplayerClient(){
         playerClient = new Client();
-        serverSummaries = new HashMap<String, MultiplayerTools.ServerSummary>();
         MultiplayerTools.register(playerClient);
         playerClient.addListener(new Listener.ThreadedListener(new Listener(){
             @Override
@@ -83,10 +116,10 @@ public class MultiplayerClient {
                     MainGame.state = GameState.State.SERVERBROWSER; // go back to the server browser
                 }
                 messages.clear();
-                projectiles.clear();
                 players.clear();
-                flags = new CaptureFlag[2];
-                respawnTimes.clear();
+                frames = new WorldFrame[WorldSnapshot.HISTORY];
+                latestFrame = null;
+                arrivedFrames.clear();
                 MainGame.gameStarted = false;
                 super.disconnected(connection);
             }
@@ -95,7 +128,9 @@ public class MultiplayerClient {
             public void received(Connection connection, Object o) {
                 if(o instanceof MultiplayerTools.ServerSummary){
                     MultiplayerTools.ServerSummary temp = (MultiplayerTools.ServerSummary) o;
-                    serverSummaries.put(connection.getRemoteAddressUDP().toString(),temp);
+                    synchronized (serverSummaries) {
+                        serverSummaries.put(temp.browserKey(connection.getRemoteAddressUDP().toString()), temp);
+                    }
                     connection.close();
                 }
                 else if(o instanceof  MultiplayerTools.ServerResponse){
@@ -112,6 +147,10 @@ public class MultiplayerClient {
                             playerClient.close();
                             System.out.println("Server was full");
                             break;
+                        case NOSUCHROOM:
+                            playerClient.close();
+                            System.out.println("Server has no room "+roomID);
+                            break;
                     }
                 }
                 else if(o instanceof MultiplayerTools.ServerGameCountdown){
@@ -125,7 +164,11 @@ public class MultiplayerClient {
                     blueTeam = temp.bTeam;
                     rLimit = temp.rMax;
                     bLimit = temp.bMax;
-                    players = temp.people;
+                    EntityRegistry<PlayerSoldier> people = new EntityRegistry<PlayerSoldier>();
+                    for(Integer k : temp.people.keySet()){
+                        people.put(k,temp.people.get(k).toSoldier());
+                    }
+                    players = people;
                     System.out.println(String.format("R: %d/%d B: %d/%d",temp.rTeam,temp.rMax,temp.bTeam,temp.bMax));
                 }
                 else if(o instanceof MultiplayerTools.ServerSentChatMessage){
@@ -135,32 +178,16 @@ public class MultiplayerClient {
                     System.out.println(String.format("Message: '%s'",((MultiplayerTools.ServerSentChatMessage) o).message));
                     messages.offerFirst(((MultiplayerTools.ServerSentChatMessage) o).message);
                 }
-                else if(o instanceof MultiplayerTools.ServerPlayerPositions){
-                    players = ((MultiplayerTools.ServerPlayerPositions) o).getPlayers();
-                    hasNewPlayerInfo = true;
+                else if(o instanceof MultiplayerTools.ServerWorldFrame){
+                    readFrame((MultiplayerTools.ServerWorldFrame) o);
                 }
                 else if(o instanceof MultiplayerTools.ServerGameStarted){
                     MainGame.state = GameState.State.PICKINGINFO;
                 }
                 else if(o instanceof MultiplayerTools.ServerNotifyGame){
+                    tickRate = ((MultiplayerTools.ServerNotifyGame) o).getTickRate();
                     MainGame.state = GameState.State.PLAYINGGAME;
                 }
-                else if(o instanceof  MultiplayerTools.ServerProjectilePositions){
-                    projectiles = ((MultiplayerTools.ServerProjectilePositions) o).getProjectiles();
-                    hasNewProjectileInfo = true;
-                }
-                else if(o instanceof MultiplayerTools.ServerFlagPositions){
-                    flags = ((MultiplayerTools.ServerFlagPositions) o).getFlags();
-                    hasNewFlagInfo = true;
-                }
-                else if(o instanceof  MultiplayerTools.ServerRespawnTimes){
-                    respawnTimes = ((MultiplayerTools.ServerRespawnTimes) o).getTimes();
-                    hasNewRespawnInfo = true;
-                }
-                else if(o instanceof MultiplayerTools.ServerKillLog){
-                    killLog = ((MultiplayerTools.ServerKillLog) o).getKills();
-                    hasNewKillInfo = true;
-                }
                 super.received(connection, o);
             }
 
@@ -170,6 +197,34 @@ public class MultiplayerClient {
             }
         }));
     }
+    /**
+     * Rebuilds a world frame from the difference the server sent, frames that are older than the newest one are ignored<br>
+     * The whole frame is read before it's made the latest one, so the game never sees part of one
+     */
+    private void readFrame(MultiplayerTools.ServerWorldFrame msg){
+        WorldFrame latest = latestFrame;
+        if(latest != null && msg.getSequence() <= latest.getSequence()){ // arrived out of order
+            return;
+        }
+        WorldFrame baseline = null;
+        if(msg.getBaseSequence() != -1){
+            baseline = frames[msg.getBaseSequence()%WorldSnapshot.HISTORY];
+            if(baseline == null || baseline.getSequence() != msg.getBaseSequence()){ // we don't have it anymore, wait for the server to send a full one
+                return;
+            }
+        }
+        WorldFrame frame;
+        try{
+            frame = WorldFrame.read(new BitReader(msg.getData()),msg.getSequence(),msg.getTick(),baseline);
+        }
+        catch (IllegalStateException e){ // cut off or corrupted, the next one will be based on an older frame
+            System.err.println("Bad world frame "+msg.getSequence()+": "+e.getMessage());
+            return;
+        }
+        frames[frame.getSequence()%WorldSnapshot.HISTORY] = frame;
+        latestFrame = frame;
+        arrivedFrames.add(frame);
+    }
     public void startClient(){
         playerClient.start();
     }
@@ -202,7 +257,9 @@ public class MultiplayerClient {
     /**
      * Will repopulate the client's Server summaries list<br>
      * Pings all servers the client can find, populating the serverSummaries array
-     * with their ip and ServerSummary
+     * with their ip and ServerSummary. Servers answer a broadcast with their summary,
+     * the few that don't are asked over TCP, PROBETHREADS at a time. The server
+     * browser shows each one as soon as it answers
      */
     public void pingServers(){
         new Thread(findServers).start();
@@ -215,6 +272,132 @@ public class MultiplayerClient {
     public InetAddress findServer(){
         return playerClient.discoverHost(MultiplayerTools.UDPPORT, 1000);
     }
+
+    /**
+     * Broadcasts a query to DISCOVERYPORT and shows every summary that comes back within DISCOVERYTIMEOUT, without
+     * connecting to any of the servers. The ping is how long each one took to answer
+     * @return The ips of the servers that answered with every one of their rooms, the rest are still asked over TCP
+     */
+    private HashSet<String> querySummaries(){
+        HashSet<String> answered = new HashSet<String>();
+        HashSet<String> heard = new HashSet<String>(); // the rooms already listed, a server can answer on more than one interface
+        DatagramSocket socket = null;
+        try {
+            socket = new DatagramSocket();
+            socket.setBroadcast(true);
+            byte[] query = MultiplayerTools.ServerSummary.writeDiscoveryQuery();
+            long sent = System.nanoTime();
+            socket.send(new DatagramPacket(query,query.length,InetAddress.getByName("255.255.255.255"),MultiplayerTools.DISCOVERYPORT));
+            for(NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces())){ // some networks drop the global broadcast
+                for(InterfaceAddress address : iface.getInterfaceAddresses()){
+                    if(address.getBroadcast() != null){
+                        try {
+                            socket.send(new DatagramPacket(query,query.length,address.getBroadcast(),MultiplayerTools.DISCOVERYPORT));
+                        } catch (IOException e) {
+                            // that interface can't broadcast, the others still can
+                        }
+                    }
+                }
+            }
+            byte[] buffer = new byte[MultiplayerTools.ServerSummary.DISCOVERYSIZE];
+            DatagramPacket reply = new DatagramPacket(buffer,buffer.length);
+            long end = sent+DISCOVERYTIMEOUT*1000000L;
+            for(long left = end-System.nanoTime(); left > 0; left = end-System.nanoTime()){
+                socket.setSoTimeout((int)Math.max(1,left/1000000L));
+                reply.setLength(buffer.length);
+                try {
+                    socket.receive(reply);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+                ArrayList<MultiplayerTools.ServerSummary> summaries = MultiplayerTools.ServerSummary.readDiscoveryReply(reply.getData(),reply.getLength());
+                String ip = reply.getAddress().getHostAddress();
+                if(summaries == null || ip.equals("127.0.0.1")){
+                    continue;
+                }
+                int ping = (int)((System.nanoTime()-sent)/1000000L);
+                for(MultiplayerTools.ServerSummary summary : summaries){
+                    String key = summary.browserKey("/"+ip+":"+MultiplayerTools.UDPPORT); // the same address a connection would give
+                    if(!heard.add(key)){ // a room already heard from on another interface
+                        continue;
+                    }
+                    if(summaries.size() == summary.rooms){ // the rooms that didn't fit in the reply are found by probing it
+                        answered.add(ip);
+                    }
+                    summary.ping = ping;
+                    synchronized (serverSummaries) {
+                        serverSummaries.put(key, summary);
+                    }
+                }
+                showServers();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not query servers: "+e.getMessage());
+        } finally {
+            if(socket != null){
+                socket.close();
+            }
+        }
+        return answered;
+    }
+
+    /**
+     * Asks one server for its summaries on a connection of its own, so several servers can be asked at once without
+     * touching the connection used to play. The server browser is updated as soon as every room has answered
+     * @param serverIP The server's ip
+     */
+    private void probeServer(String serverIP){
+        Client probe = new Client();
+        MultiplayerTools.register(probe);
+        final CountDownLatch answered = new CountDownLatch(1);
+        probe.addListener(new Listener(){
+            private HashSet<Integer> rooms = new HashSet<Integer>(); // only touched by the probe's own update thread
+
+            @Override
+            public void received(Connection connection, Object o) {
+                if(o instanceof MultiplayerTools.ServerSummary){
+                    MultiplayerTools.ServerSummary summary = (MultiplayerTools.ServerSummary) o;
+                    synchronized (serverSummaries) {
+                        serverSummaries.put(summary.browserKey(connection.getRemoteAddressUDP().toString()), summary);
+                    }
+                    rooms.add(summary.roomID);
+                    if(rooms.size() >= summary.rooms){
+                        answered.countDown();
+                    }
+                }
+            }
+        });
+        probe.start();
+        try {
+            probe.connect(PROBETIMEOUT,serverIP,MultiplayerTools.TCPPORT, MultiplayerTools.UDPPORT);
+            probe.sendTCP(new MultiplayerTools.ClientInfoRequest());
+            if(answered.await(PROBETIMEOUT, TimeUnit.MILLISECONDS)){
+                showServers();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not connect to "+serverIP);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            probe.stop();
+        }
+    }
+
+    /**
+     * Gives the server browser a copy of every server found so far, on the render thread since it changes the menu
+     */
+    private void showServers(){
+        final HashMap<String, MultiplayerTools.ServerSummary> found;
+        synchronized (serverSummaries) {
+            found = new HashMap<String, MultiplayerTools.ServerSummary>(serverSummaries);
+        }
+        Gdx.app.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                MainGame.serverBrowser.populateServerList(found);
+            }
+        });
+    }
     public void pingServer(String serverIP){
         try {
             playerClient.connect(100,serverIP,MultiplayerTools.TCPPORT, MultiplayerTools.UDPPORT);
@@ -227,12 +410,26 @@ public class MultiplayerClient {
         playerClient.close();
     }
 
+    /**
+     * Sets which match to join the next time connectServerPlay is called, servers with only one match use room 0
+     * @param roomID The id of the room
+     */
+    public void setRoomID(int roomID) {
+        this.roomID = roomID;
+    }
+
+    public int getRoomID() {
+        return roomID;
+    }
+
     public boolean isFindingServers() {
         return findingServers;
     }
 
     public HashMap<String, MultiplayerTools.ServerSummary> getServers() {
-        return serverSummaries;
+        synchronized (serverSummaries) {
+            return new HashMap<String, MultiplayerTools.ServerSummary>(serverSummaries);
+        }
     }
 
     /**
@@ -241,7 +438,7 @@ public class MultiplayerClient {
      */
     public void connectServerPlay(String serverIP){
         connectToServer(serverIP);
-        MultiplayerTools.ClientConnectionRequest clientConnectionRequest = new MultiplayerTools.ClientConnectionRequest(MainGame.clientSoldier.getName());
+        MultiplayerTools.ClientConnectionRequest clientConnectionRequest = new MultiplayerTools.ClientConnectionRequest(MainGame.clientSoldier.getName(),roomID);
         secureSend(clientConnectionRequest);
     }
     /**
@@ -304,56 +501,24 @@ public class MultiplayerClient {
      * Gets the simple info about the players connected to the server
      * @return
      */
-    public HashMap<Integer, PlayerSoldier> getPlayers() {
+    public EntityRegistry<PlayerSoldier> getPlayers() {
         return players;
     }
 
     /**
-     * gets whether or not info about the players has been read
-     * @return
+     * Takes the oldest world frame that arrived since this was last called, frames come out in the order they were sent
+     * @return The frame, or null if no new ones have arrived
      */
-    public boolean isHasNewPlayerInfo() {
-        boolean ogOut = hasNewPlayerInfo;
-        hasNewPlayerInfo = false;
-        return ogOut;
-    }
-
-    public boolean isHasNewProjectileInfo() {
-        boolean ogOut = hasNewProjectileInfo;
-        hasNewProjectileInfo = false;
-        return ogOut;
-    }
-    public boolean isHasNewFlagInfo(){
-        boolean ogOut = hasNewFlagInfo;
-        hasNewFlagInfo = false;
-        return ogOut;
-    }
-    public boolean isHasNewRespawnInfo() {
-        boolean ogOut = hasNewRespawnInfo;
-        hasNewRespawnInfo = false;
-        return ogOut;
-    }
-
-    public boolean isHasNewKillInfo() {
-        boolean ogOut = hasNewKillInfo;
-        hasNewKillInfo = false;
-        return ogOut;
-    }
-
-    public LinkedList<ConcurrentGameWorld.KillInfo> getKillLog() {
-        return killLog;
-    }
-
-    public CaptureFlag[] getFlags() {
-        return flags;
+    public WorldFrame pollFrame() {
+        return arrivedFrames.poll();
     }
 
-    public LinkedList<Projectile> getProjectiles() {
-        return projectiles;
-    }
-
-    public LinkedList<GridPoint2> getRespawnTimes() {
-        return respawnTimes;
+    /**
+     * @return The sequence number of the newest world frame received, -1 if there isn't one yet
+     */
+    public int getLatestFrameSequence() {
+        WorldFrame latest = latestFrame;
+        return latest==null?-1:latest.getSequence();
     }
     /**
      * Returns how many seconds until the game starts
@@ -366,4 +531,11 @@ public class MultiplayerClient {
     public int getConnectionID() {
         return connectionID;
     }
+
+    /**
+     * @return How many ticks per second the server's world runs at
+     */
+    public int getTickRate() {
+        return tickRate;
+    }
 }
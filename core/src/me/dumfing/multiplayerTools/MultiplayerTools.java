@@ -7,8 +7,11 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.EndPoint;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Objects that will be sent between the client and server as well as useful variables like ports<br>
@@ -17,6 +20,7 @@ import java.util.LinkedList;
 public class MultiplayerTools {
     public static final int UDPPORT = 19815;
     public static final int TCPPORT = 19816;
+    public static final int DISCOVERYPORT = 19817; // answers server browser queries with every room's ServerSummary, see ServerSummary.writeDiscoveryReply
 
     public static final float GRAVITY = -0.05f;
     public static final float WALKSPEED = 0.22f;
@@ -34,7 +38,7 @@ public class MultiplayerTools {
         public static final int SPACE = 6;
         public static final int SHIFT = 7;
         public static final int CONTROL = 8;
-        public static final int ANGLE = 9;
+        public static final int NUMBUTTONS = 9; // each key above is one bit of a button mask
     }
     public static void register(EndPoint endpoint){
         Kryo serializer = endpoint.getKryo();
@@ -43,118 +47,142 @@ public class MultiplayerTools {
         serializer.register(GridPoint2.class);
         serializer.register(HashMap.class);
         serializer.register(LinkedList.class);
-        serializer.register(Rectangle.class);
-        serializer.register(ConcurrentGameWorld.KillInfo.class);
-        serializer.register(PlayerSoldier.class);
-        serializer.register(Projectile.class);
-        serializer.register(ServerProjectilePositions.class);
-        serializer.register(CaptureFlag.class);
-        serializer.register(CaptureFlag[].class);
-        serializer.register(ServerFlagPositions.class);
-        serializer.register(ClientControlObject[].class);
-        serializer.register(ClientControlObject.class);
+        serializer.register(PlayerInfo.class);
+        serializer.register(ServerWorldFrame.class);
+        serializer.register(byte[].class);
+        serializer.register(int[].class);
         serializer.register(ClientKeysUpdate.class);
         serializer.register(ClientPickedLoadout.class);
         serializer.register(ClientInfoRequest.class);
         serializer.register(ClientConnectionRequest.class);
         serializer.register(ClientPickedTeam.class);
         serializer.register(ClientSentChatMessage.class);
-        serializer.register(ClientKeysUpdate.class);
-        serializer.register(ServerKillLog.class);
         serializer.register(ServerSummary.class);
         serializer.register(ServerResponse.class);
         serializer.register(ServerResponse.ResponseCode.class);
         serializer.register(ServerDetailedSummary.class);
         serializer.register(ServerGameCountdown.class);
         serializer.register(ServerSentChatMessage.class);
-        serializer.register(ServerPlayerPositions.class);
         serializer.register(ServerGameStarted.class);
         serializer.register(ServerNotifyGame.class);
-        serializer.register(ServerRespawnTimes.class);
         serializer.register(boolean[].class);
+        serializer.register(ClientViewSize.class);
     }
-    public static class ServerFlagPositions{
-        CaptureFlag[] flags;
-        public ServerFlagPositions(){}
-
-        public ServerFlagPositions(CaptureFlag[] flags) {
-            this.flags = flags;
-        }
-
-        public CaptureFlag[] getFlags() {
-            return flags;
-        }
-    }
-    public static class ServerRespawnTimes{
-        LinkedList<GridPoint2> times;
-
-        public ServerRespawnTimes() {
-        }
+    /**
+     * The soldiers, projectiles, flags, respawn timers and kill log in one datagram, written by WorldFrame as the difference
+     * from a frame the client has already said it received
+     */
+    public static class ServerWorldFrame{
+        int sequence;
+        int baseSequence; // the frame this one was written against, -1 if it has everything
+        int tick; // the server tick the frame was taken at
+        byte[] data;
+        public ServerWorldFrame(){}
 
-        public ServerRespawnTimes(LinkedList<GridPoint2> times) {
-            this.times = times;
+        public ServerWorldFrame(int sequence, int baseSequence, int tick, byte[] data) {
+            this.sequence = sequence;
+            this.baseSequence = baseSequence;
+            this.tick = tick;
+            this.data = data;
         }
 
-        public LinkedList<GridPoint2> getTimes() {
-            return times;
+        public int getSequence() {
+            return sequence;
         }
-    }
-    public static class ServerKillLog{
-        LinkedList<ConcurrentGameWorld.KillInfo> kills;
 
-        public ServerKillLog() {
+        public int getBaseSequence() {
+            return baseSequence;
         }
 
-        public ServerKillLog(LinkedList<ConcurrentGameWorld.KillInfo> kills) {
-            this.kills = kills;
+        public int getTick() {
+            return tick;
         }
 
-        public LinkedList<ConcurrentGameWorld.KillInfo> getKills() {
-            return kills;
+        public byte[] getData() {
+            return data;
         }
     }
     /**
-     * An object that can either hold a boolean or float for a key's state or the mouse's angle
+     * Turns an aim angle into 16 bits
+     * @param degrees The angle in degrees
+     * @return The angle in 1/65536ths of a turn
      */
-    public static class ClientControlObject{
-        //object types
-        //0 - not assigned
-        //1 - boolean
-        //2 - float
-        float angle = 0;
-        boolean isDown = false;
-        int type = 0;
-        public ClientControlObject(){}
-        public ClientControlObject(float angle){
-            this.angle = angle;
-            this.type = 2;
-        }
-        public ClientControlObject(boolean isDown){
-            this.isDown = isDown;
-            this.type = 1;
-        }
-        public float getAngle(){
-            return angle;
-        }
-        public boolean getIsDown(){
-            return isDown;
-        }
-        public int getType(){
-            return type;
-        }
+    public static short quantizeAim(float degrees){
+        return (short)Math.round(((degrees%360+360)%360)*65536f/360f);
+    }
+    public static float unquantizeAim(short aim){
+        return (aim&0xFFFF)*360f/65536f;
     }
+
     /**
-     *
+     * The keys a client is holding for the newest tick and the few ticks before it, sent once every tick<br>
+     * Every update repeats the last few inputs so losing a packet doesn't lose an input, the server ignores the ones it
+     * already has. The sequence number goes up by one with each input so the server can put them back in order. The client
+     * can keep reusing one ClientKeysUpdate with addInput since it's serialized as soon as it's sent
      */
     public static class ClientKeysUpdate{
-        ClientControlObject[] keys;
+        public static final int INPUTHISTORY = 4; // inputs in each update, the newest one and the ones before it
+        int[] inputs = new int[INPUTHISTORY]; // newest first, each is the button mask in the top bits and the aim in the bottom 16
+        int count; // how many of inputs are filled in
+        int sequence; // the sequence number of the newest input, the ones after it are sequence-1, sequence-2...
+        int tick; // the client's tick when the newest keys were read
+        int ackedFrame; // the newest world frame the client has, the server writes its next frames against it
+        int viewTick = -1; // the server tick the client was showing everyone else at with the newest input, used for lag compensation
         public ClientKeysUpdate(){}
-        public ClientKeysUpdate(ClientControlObject[] keys){
-            this.keys = keys;
+        public ClientKeysUpdate(int buttons, float aimAngle, int sequence, int tick, int ackedFrame){
+            addInput(buttons,aimAngle,sequence,tick,ackedFrame);
+        }
+
+        /**
+         * Makes this the newest input, the oldest one is dropped once there are INPUTHISTORY of them
+         * @param buttons Bit n is set if Keys n is held
+         * @param aimAngle The aim in degrees
+         * @param sequence Should be one more than the last input's
+         * @param tick The client's tick
+         * @param ackedFrame The newest world frame the client has
+         */
+        public void addInput(int buttons, float aimAngle, int sequence, int tick, int ackedFrame){
+            System.arraycopy(inputs,0,inputs,1,inputs.length-1);
+            inputs[0] = (buttons<<16)|(quantizeAim(aimAngle)&0xFFFF);
+            count = Math.min(count+1,inputs.length);
+            this.sequence = sequence;
+            this.tick = tick;
+            this.ackedFrame = ackedFrame;
+        }
+
+        /**
+         * @return How many inputs this update holds, they're numbered from 0 (the newest) to getCount()-1
+         */
+        public int getCount() {
+            return Math.min(count,inputs==null?0:inputs.length);
+        }
+
+        public int getButtons(int i) {
+            return inputs[i]>>>16;
+        }
+
+        public short getAim(int i) {
+            return (short)inputs[i];
+        }
+
+        public int getSequence() {
+            return sequence;
+        }
+
+        public int getTick() {
+            return tick;
+        }
+
+        public int getAckedFrame() {
+            return ackedFrame;
+        }
+
+        public int getViewTick() {
+            return viewTick;
         }
 
-        public ClientControlObject[] getKeys() {
-            return keys;
+        public void setViewTick(int viewTick) {
+            this.viewTick = viewTick;
         }
     }
     /**
@@ -162,15 +190,24 @@ public class MultiplayerTools {
      */
     public static class ServerNotifyGame{
         private int worldNum;
+        private int tickRate;
         public ServerNotifyGame(){
 
         }
-        public ServerNotifyGame(int worldNum){
+        public ServerNotifyGame(int worldNum, int tickRate){
             this.worldNum = worldNum;
+            this.tickRate = tickRate;
         }
         public int getWorldNum() {
             return worldNum;
         }
+
+        /**
+         * @return How many ticks per second the server's world runs at
+         */
+        public int getTickRate() {
+            return tickRate;
+        }
     }
     public static class ClientPickedLoadout{
         int loadout;
@@ -192,32 +229,6 @@ public class MultiplayerTools {
     public static class ServerGameStarted{
         public ServerGameStarted(){}
     }
-    public static class ServerPlayerPositions{
-        HashMap<Integer, PlayerSoldier> players;
-        public ServerPlayerPositions(){
-        }
-        public ServerPlayerPositions(HashMap<Integer, PlayerSoldier> players){
-            this.players = players;
-        }
-
-        public HashMap<Integer, PlayerSoldier> getPlayers() {
-            return players;
-        }
-    }
-    public static class ServerProjectilePositions{
-        private LinkedList<Projectile> projectiles;
-
-        public ServerProjectilePositions() {
-        }
-
-        public ServerProjectilePositions(LinkedList<Projectile> projectiles) {
-            this.projectiles = projectiles;
-        }
-
-        public LinkedList<Projectile> getProjectiles() {
-            return projectiles;
-        }
-    }
     /**
      * Sent by the server to tell all clients that it's received a message
      */
@@ -233,7 +244,7 @@ public class MultiplayerTools {
          * @param sender The connection of the person who sent it
          * @param players All the connections and their respective playersoldiers
          */
-        public ServerSentChatMessage(String message, Connection sender, HashMap<Integer, PlayerSoldier> players) {
+        public ServerSentChatMessage(String message, Connection sender, EntityRegistry<PlayerSoldier> players) {
             this.message = String.format("[WHITE]%s[GRAY]:  [BLACK]%s",players.get(sender.getID()),message);
         }
 
@@ -241,9 +252,9 @@ public class MultiplayerTools {
          * Similar to ServerSentChatMessage but with an Object so you don't have to convert it yourself
          * @param messageIn Supposed to be a ClientSentChatMessage object, will throw an error otherwise
          * @param sender The connection for the person who's sending the message
-         * @param players The hashmap of all players connected
+         * @param players All the players connected
          */
-        public ServerSentChatMessage(Object messageIn, Connection sender, HashMap<Integer, PlayerSoldier> players){
+        public ServerSentChatMessage(Object messageIn, Connection sender, EntityRegistry<PlayerSoldier> players){
             if(messageIn instanceof  ClientSentChatMessage){
                 this.message = String.format("[WHITE]%s[GRAY]:  [BLACK]%s",players.get(sender.getID()).getName(),((ClientSentChatMessage) messageIn).getMessage());
             }
@@ -282,6 +293,27 @@ public class MultiplayerTools {
             return picked;
         }
     }
+    /**
+     * Sent by the client whenever how much of the world its screen shows changes, the server only sends it what's in view
+     */
+    public static class ClientViewSize{
+        float width, height; // units
+        public ClientViewSize(){
+
+        }
+        public ClientViewSize(float width, float height){
+            this.width = width;
+            this.height = height;
+        }
+
+        public float getWidth() {
+            return width;
+        }
+
+        public float getHeight() {
+            return height;
+        }
+    }
     /**
      * used in the lobby when the server is counting down to the actual game
      */
@@ -303,16 +335,56 @@ public class MultiplayerTools {
      */
     public static class ServerDetailedSummary {
         int rTeam, bTeam, rMax,bMax;
-        HashMap<Integer, PlayerSoldier> people;
+        HashMap<Integer, PlayerInfo> people;
         public ServerDetailedSummary(){
 
         }
-        public ServerDetailedSummary(int redTeam, int blueTeam,HashMap<Integer, PlayerSoldier> people){
+        public ServerDetailedSummary(int redTeam, int blueTeam,EntityRegistry<PlayerSoldier> people){
             this.rTeam = redTeam;
             this.bTeam = blueTeam;
             this.bMax = people.size()/2;
             this.rMax = people.size() - bMax;
-            this.people = people;
+            this.people = new HashMap<Integer, PlayerInfo>();
+            for(int i = 0; i<people.size(); i++){
+                this.people.put(people.getAt(i).getId(),new PlayerInfo(people.getAt(i)));
+            }
+        }
+    }
+
+    /**
+     * The parts of a PlayerSoldier that other players need to know before the game starts, everything else about a soldier
+     * is sent in world frames
+     */
+    public static class PlayerInfo{
+        String name;
+        int team;
+        int pickedClass;
+        public PlayerInfo(){}
+        public PlayerInfo(PlayerSoldier soldier){
+            this.name = soldier.getName();
+            this.team = soldier.getTeam();
+            this.pickedClass = soldier.getCurrentClass();
+        }
+
+        /**
+         * @return A new PlayerSoldier with this player's name, team and class
+         */
+        public PlayerSoldier toSoldier(){
+            PlayerSoldier soldier = new PlayerSoldier(new Rectangle(0,0,PlayerSoldier.width,PlayerSoldier.height),team,name);
+            soldier.setCurrentClass(pickedClass);
+            return soldier;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getTeam() {
+            return team;
+        }
+
+        public int getPickedClass() {
+            return pickedClass;
         }
     }
     /**
@@ -321,7 +393,8 @@ public class MultiplayerTools {
     public static class ServerResponse{
         public enum ResponseCode{
             CLIENTCONNECTED,
-            SERVERFULL
+            SERVERFULL,
+            NOSUCHROOM
         }
         ResponseCode response;
         public ServerResponse(){}
@@ -342,8 +415,16 @@ public class MultiplayerTools {
      * Contains the ping, amount of people on, max people on, and server's name
      */
     public static class ServerSummary{
+        // a query starts with these 4 bytes, a reply starts with the other 4 so anything else on the port is ignored
+        private static final byte[] DISCOVERYQUERY = {'C','O','F','Q'};
+        private static final byte[] DISCOVERYREPLY = {'C','O','F','S'};
+        // queries are padded to this and replies are never bigger, so a spoofed query can't make the server send more than it got
+        public static final int DISCOVERYSIZE = 512;
         public int num, max, ping;
         public String serverName;
+        public String mapName; // null if the server didn't say
+        public int roomID; // which match on the server this is, what a ClientConnectionRequest asks for to join it
+        public int rooms = 1; // how many matches the server has, each one is sent as a summary of its own
         public ServerSummary(){
 
         }
@@ -353,6 +434,103 @@ public class MultiplayerTools {
             this.ping = ping;
             this.serverName = serverName;
         }
+
+        /**
+         * @param address Where the summary came from, in the "/ip:port" form a connection's address gives
+         * @return What the server browser lists it under, one entry for each room on a server
+         */
+        public String browserKey(String address){
+            return address+"#"+roomID;
+        }
+
+        /**
+         * @return Whether two summaries would be written the same in a discovery reply
+         */
+        public boolean sameAs(ServerSummary other){
+            return num == other.num && max == other.max && roomID == other.roomID && rooms == other.rooms &&
+                    serverName.equals(other.serverName) && (mapName==null?other.mapName==null:mapName.equals(other.mapName));
+        }
+
+        /**
+         * @return The datagram a client broadcasts to find servers, DISCOVERYQUERY padded with 0's to DISCOVERYSIZE
+         */
+        public static byte[] writeDiscoveryQuery(){
+            return Arrays.copyOf(DISCOVERYQUERY,DISCOVERYSIZE);
+        }
+
+        /**
+         * The datagram a server sends back to a query, every room's summary but the ping which the client times itself<br>
+         * Rooms that would take it past DISCOVERYSIZE are left out, the reply says how many there are in all so the
+         * client knows to ask over TCP for the rest
+         * @param summaries One for each room on the server
+         */
+        public static byte[] writeDiscoveryReply(List<ServerSummary> summaries){
+            BitWriter out = new BitWriter(DISCOVERYSIZE);
+            for(byte b : DISCOVERYREPLY){
+                out.writeBits(b&0xFF,8);
+            }
+            out.writeVarInt(summaries.size());
+            for(ServerSummary summary : summaries){
+                int before = out.getBitLength();
+                out.writeVarInt(summary.num);
+                out.writeVarInt(summary.max);
+                out.writeString(summary.serverName);
+                out.writeString(summary.mapName==null?"":summary.mapName);
+                out.writeVarInt(summary.roomID);
+                if(out.getBitLength() > DISCOVERYSIZE*8){
+                    out.rewind(before);
+                    break;
+                }
+            }
+            return out.toBytes();
+        }
+
+        /**
+         * @param data A datagram that arrived on the discovery socket
+         * @param length How many bytes of data it was
+         * @return The summaries in it, each with how many rooms the server has in all, or null if it isn't a discovery reply
+         */
+        public static ArrayList<ServerSummary> readDiscoveryReply(byte[] data, int length){
+            if(length < DISCOVERYREPLY.length){
+                return null;
+            }
+            for(int i = 0; i<DISCOVERYREPLY.length; i++){
+                if(data[i] != DISCOVERYREPLY[i]){
+                    return null;
+                }
+            }
+            int bits = (length-DISCOVERYREPLY.length)*8;
+            BitReader in = new BitReader(Arrays.copyOfRange(data,DISCOVERYREPLY.length,length));
+            ArrayList<ServerSummary> summaries = new ArrayList<ServerSummary>();
+            try {
+                int rooms = in.readVarInt();
+                while(summaries.size() < rooms && bits-in.getBitPosition() >= 8){ // whatever's left over is padding to a whole byte
+                    ServerSummary summary = new ServerSummary(in.readVarInt(),in.readVarInt(),0,in.readString());
+                    summary.mapName = in.readString();
+                    summary.roomID = in.readVarInt();
+                    summary.rooms = rooms;
+                    summaries.add(summary);
+                }
+                return summaries;
+            } catch (IllegalStateException e) { // cut off
+                return null;
+            }
+        }
+
+        /**
+         * @return Whether a datagram is a query written by writeDiscoveryQuery
+         */
+        public static boolean isDiscoveryQuery(byte[] data, int length){
+            if(length != DISCOVERYSIZE){
+                return false;
+            }
+            for(int i = 0; i<DISCOVERYQUERY.length; i++){
+                if(data[i] != DISCOVERYQUERY[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
         public String toString(){
             return String.format("%20s %d/%d %d",serverName.substring(0,Math.min(20,serverName.length())),num,max,ping);
         }
@@ -363,10 +541,15 @@ public class MultiplayerTools {
      */
     public static class ClientConnectionRequest {
         public String playerName;
+        public int roomID; // which match on the server to join
         public ClientConnectionRequest(){
         }
         public ClientConnectionRequest(String playerName){
+            this(playerName,0);
+        }
+        public ClientConnectionRequest(String playerName, int roomID){
             this.playerName = playerName;
+            this.roomID = roomID;
         }
     }
     public static class RequestWorld{
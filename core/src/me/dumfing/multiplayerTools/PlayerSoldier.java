@@ -1,19 +1,24 @@
 package me.dumfing.multiplayerTools;
 
 import com.badlogic.gdx.graphics.g2d.Animation;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.GridPoint2;
-import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Rectangle;
 import me.dumfing.gdxtools.MathTools;
 
-public class PlayerSoldier {
+/**
+ * The simulated state of one soldier, drawn on the client by a SoldierView<br>
+ * animationTime, bowDrawTime and collisions stay here because attacks, arrows and movement depend on them
+ */
+public class PlayerSoldier implements EntityRegistry.Entity {
     //Arrow drawing will work by having a counter that increases as the mouse is down. If drawingBow is true and the mouse is up the arrow will be fired, and the counter will be set to 0
     private int health, maxHealth, animationID, team, pickedClass,facingDirection, bowDrawTime, kills, deaths; // animationID is an int describing the direction the player is facing and what animation they're doing
     private boolean canJump, drawingBow;
 
-    private MultiplayerTools.ClientControlObject[] keysHeld = new MultiplayerTools.ClientControlObject[10];
+    private int buttons; // bit n is set if MultiplayerTools.Keys n is held
+    private float mouseAngle;
+    private int inputSequence = -1; // the sequence number of the last input the server gave this soldier, -1 before the first
+    private int viewTick = -1; // the server tick this soldier's client was showing when it sent its last input, -1 if it isn't known
+    private int id = -1; // the connection id of the client playing this soldier, set when it's put in an EntityRegistry
 
     private Rectangle playerArea;
 
@@ -46,7 +51,6 @@ public class PlayerSoldier {
 
 
     public PlayerSoldier(){
-        fillKeys();
     }
 
     public PlayerSoldier(Rectangle playerRect, int team){
@@ -57,7 +61,6 @@ public class PlayerSoldier {
         vY = 0;
         this.health = 100;
         this.maxHealth = 100;
-        fillKeys();
         collisions = new boolean[4];
     }
 
@@ -69,16 +72,9 @@ public class PlayerSoldier {
         this.vY = 0;
         this.health = 100;
         this.maxHealth = 100;
-        fillKeys();
         collisions = new boolean[4];
     }
 
-    private void fillKeys(){
-        for(int i = 0; i<keysHeld.length;i++){
-            keysHeld[i] = new MultiplayerTools.ClientControlObject();
-        }
-    }
-
     public void update(float deltaTime){
         this.animationTime+=deltaTime;
         if(this.hitCooldown>0) {
@@ -106,6 +102,14 @@ public class PlayerSoldier {
         return shieldUp;
     }
 
+    public boolean isStabbing() {
+        return stabbing;
+    }
+
+    public void setStabbing(boolean stabbing) {
+        this.stabbing = stabbing;
+    }
+
     public void setShielding(boolean shielding) {
         this.shielding = shielding;
     }
@@ -124,8 +128,24 @@ public class PlayerSoldier {
 
     public String getName(){return this.name;}
 
-    public void setKeysHeld(MultiplayerTools.ClientControlObject[] keysHeld) {
-        this.keysHeld = keysHeld;
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Sets what the player is pressing
+     * @param buttons The button mask, bit n is set if MultiplayerTools.Keys n is held
+     * @param mouseAngle Where they're aiming in degrees
+     */
+    public void setInput(int buttons, float mouseAngle) {
+        this.buttons = buttons;
+        this.mouseAngle = mouseAngle;
     }
 
     public void setAnimationID(int animationID) {
@@ -136,17 +156,6 @@ public class PlayerSoldier {
         return animationID|this.facingDirection;
     }
 
-    public Animation [] [] [] getAnimationSet(){
-
-        if (this.getTeam() == 0){
-            return AnimationManager.redPlayer;
-        }
-        else {
-            return AnimationManager.bluPlayer;
-        }
-
-    }
-
     public boolean isAnimationDone(){
         // Returns whether the current animation is done or not
 
@@ -167,8 +176,36 @@ public class PlayerSoldier {
         this.team = team;
     }
 
-    public MultiplayerTools.ClientControlObject[] getKeysHeld() {
-        return keysHeld;
+    public int getButtons() {
+        return buttons;
+    }
+
+    public void setButtons(int buttons) {
+        this.buttons = buttons;
+    }
+
+    public int getInputSequence() {
+        return inputSequence;
+    }
+
+    public void setInputSequence(int inputSequence) {
+        this.inputSequence = inputSequence;
+    }
+
+    public int getViewTick() {
+        return viewTick;
+    }
+
+    public void setViewTick(int viewTick) {
+        this.viewTick = viewTick;
+    }
+
+    /**
+     * @param key One of MultiplayerTools.Keys
+     * @return Whether the player is holding it
+     */
+    public boolean isButtonDown(int key) {
+        return (buttons&(1<<key)) != 0;
     }
 
     public void setCanJump(boolean canJump) {
@@ -191,30 +228,34 @@ public class PlayerSoldier {
         return hitCooldown;
     }
 
+    public void setHitCooldown(float hitCooldown) {
+        this.hitCooldown = hitCooldown;
+    }
+
     public void setFacingDirection(int facingDirection) {
         this.facingDirection = facingDirection;
     }
     public float getMouseAngle(){
-        if(keysHeld[MultiplayerTools.Keys.ANGLE]==null){
-            return 0;
-        }
-        return this.keysHeld[MultiplayerTools.Keys.ANGLE].angle;
+        return this.mouseAngle;
     }
     public void setMouseAngle(float ang){
-            if(keysHeld[MultiplayerTools.Keys.ANGLE]==null){
-                this.keysHeld[MultiplayerTools.Keys.ANGLE] = new MultiplayerTools.ClientControlObject(ang);
-            }
-            else {
-                this.keysHeld[MultiplayerTools.Keys.ANGLE].angle = ang;
-            }
+        this.mouseAngle = ang;
     }
     public int getMaxHealth(){
         return this.maxHealth;
     }
 
     public void move(){
-        playerArea.x+=this.vX;
-        playerArea.y+=this.vY;
+        move(1);
+    }
+
+    /**
+     * Moves the player by a fraction of their velocity
+     * @param scale How much of a BASE_TICKRATE tick to move for
+     */
+    public void move(float scale){
+        playerArea.x+=this.vX*scale;
+        playerArea.y+=this.vY*scale;
     }
 
     public boolean isSwinging() {
@@ -225,43 +266,6 @@ public class PlayerSoldier {
         this.swinging = swinging;
     }
 
-    /**
-     * Draws the PlayerSoldier
-     * @param batch
-     */
-    public void draw(SpriteBatch batch){
-        TextureRegion drawFrame = (TextureRegion) getAnimation().getKeyFrame(this.animationTime);
-        float trW = drawFrame.getRegionWidth();
-        float trH = drawFrame.getRegionHeight();
-        float ratio = trW/trH;
-        if (this.getFacingDirection() == 0) {
-            batch.draw(drawFrame, this.getX() - 0.84f, this.getY(), this.getHeight() * ratio + 0.14f, this.getHeight() + 0.13f);
-        }
-        else {
-            batch.draw(drawFrame, this.getX() - 0.22f, this.getY(), this.getHeight() * ratio + 0.14f, this.getHeight() + 0.13f); // add 0.1 because the attacking sprites are 4 FCKING PIXELS TALLER THAN THE STANDING SPRITES
-        }
-        if(this.isDrawingBow()){ // bow drawing animation
-                    float limAng = getMouseAngle(); // this angle will be clamped based on which direction the player is facing
-                       if(this.getFacingDirection()==0){
-
-                           limAng = MathUtils.clamp(limAng,160,200); // negative x part of circle
-                       }
-                       else{
-                           if(limAng > 0 && limAng<90){ // 0 is straight right, meaning the top half of the right is 0-90 and the bottom half is 270-360, separate cases are needed for each
-                               limAng = MathUtils.clamp(limAng,0,20); //positive x, positive y part of circle
-                           }
-                           else if(limAng>=270){
-                               limAng = MathUtils.clamp(limAng,340,360); //positive x, negative y part of circle
-                           }
-                       }
-                    if(this.getFacingDirection() == 0) {//draw the frames facing the correct direction based on the direction the player is facing
-                        batch.draw((TextureRegion) AnimationManager.archerDrawLeft[this.getTeam()].getKeyFrame((float)bowDrawTime/30f), this.getX() - 0.85f, this.getY()+0.1f, 1.1f, 0.6f, 2, 2, 1, 1, 180+limAng);
-                    }
-                    else {
-                        batch.draw((TextureRegion) AnimationManager.archerDrawRight[this.getTeam()].getKeyFrame((float)bowDrawTime/30f), this.getX() - 0.22f, this.getY()+0.1f, 0.7f, 0.6f, 2, 2, 1, 1, limAng);// add 0.1 because the attacking sprites are 4 FCKING PIXELS TALLER THAN THE STANDING SPRITES
-                    }
-                }
-        }
     public Animation getAnimation(){ // gets the animation that should be drawn for the player in their current state
         Animation[][][] animationSet;
         if (this.getTeam() == 0) { // red
@@ -0,0 +1,121 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.utils.IntFloatMap;
+
+/**
+ * How badly one client needs to hear about each soldier and projectile, for when more changed than fits in its frame<br>
+ * Every frame, each one that's different from what the client has gains priority, more the closer it is to the client's
+ * soldier and the more it changed. The frame is filled highest priority first and whatever gets in goes back to 0, so
+ * something far away that's left out keeps gaining until it gets in too. The client's own soldier always goes first
+ * since the client checks its prediction against it
+ */
+public class PriorityAccumulator {
+    private static final float SOLDIERWEIGHT = 1;
+    private static final float PROJECTILEWEIGHT = 0.5f; // there are lots of them and they're easy to guess between frames
+    private static final float NEARBY = 20; // units, about half a screen. Something this far away gains half as fast
+    private static final float MAXMOVE = 4; // units, moving further than this doesn't make something more important
+    private static final int SOLDIEREVENTS = WorldSnapshot.SoldierState.HEALTH|WorldSnapshot.SoldierState.INFO|
+            WorldSnapshot.SoldierState.STATE|WorldSnapshot.SoldierState.SCORE; // changes that count as much as a big move
+    private static final int PROJECTILEEVENTS = WorldSnapshot.ProjectileState.INFO|WorldSnapshot.ProjectileState.HIT;
+    // the maps are swapped every frame, anything not added again (sent, unchanged or gone) is forgotten
+    private IntFloatMap soldiers = new IntFloatMap(), nextSoldiers = new IntFloatMap();
+    private IntFloatMap projectiles = new IntFloatMap(), nextProjectiles = new IntFloatMap();
+    private int viewerID = -1;
+    private float viewerX, viewerY;
+
+    /**
+     * Sets who the frames are for, should be called before each frame is written
+     * @param id The client's soldier, -1 if it doesn't have one yet
+     * @param x Where the client's soldier is
+     * @param y
+     */
+    public void setViewer(int id, float x, float y){
+        viewerID = id;
+        viewerX = x;
+        viewerY = y;
+    }
+
+    /**
+     * Forgets everything, for when the client was sent every change
+     */
+    public void clear(){
+        soldiers.clear();
+        projectiles.clear();
+    }
+
+    /**
+     * Adds this frame's priority to a soldier that changed
+     * @param mask The groups of fields that changed
+     * @param base The soldier's state in the baseline, null if the client doesn't have them
+     * @return Its priority
+     */
+    float addSoldier(int id, int mask, WorldSnapshot.SoldierState state, WorldSnapshot.SoldierState base){
+        if(id == viewerID){
+            return Float.POSITIVE_INFINITY;
+        }
+        float change = 1+(base==null?MAXMOVE:moved(state.x,state.y,base.x,base.y))+((mask&SOLDIEREVENTS) != 0?MAXMOVE:0);
+        float priority = soldiers.get(id,0)+SOLDIERWEIGHT*change*closeness(state.getX(),state.getY());
+        nextSoldiers.put(id,priority);
+        return priority;
+    }
+
+    /**
+     * Adds this frame's priority to a projectile that changed
+     * @param mask The groups of fields that changed
+     * @param base The projectile's state in the baseline, null if the client doesn't have it
+     * @return Its priority
+     */
+    float addProjectile(int id, int mask, WorldSnapshot.ProjectileState state, WorldSnapshot.ProjectileState base){
+        float change = 1+(base==null?MAXMOVE:moved(state.x,state.y,base.x,base.y))+((mask&PROJECTILEEVENTS) != 0?MAXMOVE:0);
+        float priority = projectiles.get(id,0)+PROJECTILEWEIGHT*change*closeness(state.getX(),state.getY());
+        nextProjectiles.put(id,priority);
+        return priority;
+    }
+
+    /**
+     * Resets a soldier that made it into the frame
+     */
+    void sentSoldier(int id){
+        nextSoldiers.remove(id,0);
+    }
+
+    /**
+     * Resets a projectile that made it into the frame
+     */
+    void sentProjectile(int id){
+        nextProjectiles.remove(id,0);
+    }
+
+    /**
+     * Keeps the priorities of everything that was left out of the frame for the next one
+     */
+    void finish(){
+        IntFloatMap swap = soldiers;
+        soldiers = nextSoldiers;
+        nextSoldiers = swap;
+        nextSoldiers.clear();
+        swap = projectiles;
+        projectiles = nextProjectiles;
+        nextProjectiles = swap;
+        nextProjectiles.clear();
+    }
+
+    /**
+     * @return 1 right next to the client's soldier, going down with distance
+     */
+    private float closeness(float x, float y){
+        if(viewerID == -1){
+            return 1;
+        }
+        float dist = (float)Math.hypot(x-viewerX,y-viewerY);
+        return 1/(1+dist/NEARBY);
+    }
+
+    /**
+     * @return How far something moved since the baseline in units, up to MAXMOVE
+     */
+    private static float moved(int x, int y, int baseX, int baseY){
+        float dist = (float)Math.hypot(x-baseX,y-baseY)/WorldSnapshot.POSRES;
+        return Math.min(MAXMOVE,dist);
+    }
+}
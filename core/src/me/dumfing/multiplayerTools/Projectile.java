@@ -2,10 +2,8 @@ package me.dumfing.multiplayerTools;
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.math.GridPoint2;
-
-import java.util.HashMap;
-import java.util.LinkedList;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
 
 import static me.dumfing.multiplayerTools.MultiplayerTools.GRAVITY;
 import static me.dumfing.multiplayerTools.MultiplayerTools.REDTEAM;
@@ -14,13 +12,13 @@ import static me.dumfing.multiplayerTools.MultiplayerTools.REDTEAM;
  * Created by aaronli on 2017-06-02.
  */
 public class Projectile {
-    private static final float CHECKRES = 0.001f;
     public static final int MAXLIFETIME = 240;
     private float x,y;
     private float vX = 0;
     private float vY = 0;
     private boolean isHit = false;
     int timeAlive = 0;
+    private int lifetime = MAXLIFETIME; // how many ticks the projectile lasts for at the world's tick rate
     private float angle = 0;
     private int projectileType = 0;
     private int attackerTeam = REDTEAM;
@@ -29,7 +27,8 @@ public class Projectile {
     boolean particlesStarted = false;
     boolean killedPlayer = false;
     private boolean killLogged = false;
-    private String serverHash; // hashcodes between the client and server are different, this will be used for the client to keep track of arrows
+    private int id = -1; // given by the server's world, the same projectile has the same id on the server and every client
+    private int rewindTicks = 0; // how far behind its caster saw everyone, the server checks it against players that many ticks ago
     //0 for arrow
     public Projectile(){}
 
@@ -41,37 +40,58 @@ public class Projectile {
         this.projectileType = type;
         this.attackerTeam = attackerTeam;
         this.caster = caster;
-        this.serverHash = ""+caster+System.currentTimeMillis(); // the same person shouldn't be able to fire 2 arrows in the same time
-        System.out.println("new arrow: "+this.serverHash);
     }
 
-    public void checkCollisions(HashMap<Integer,PlayerSoldier> players, WorldMap world) {
+    /**
+     * Moves the projectile forward one tick, stopping it at the first player or wall it hits<br>
+     * The path it takes this tick is checked all at once: the map cells along it are walked in order until one it can't
+     * go through, and the hitbox of each player near it is checked for where the path enters it. Whichever comes first
+     * is hit, a player if they're at the same place
+     * @param players The players that can be hit, dead ones are skipped
+     * @param soldiers Where the players are, by their place in players
+     * @param nearby Somewhere to put the players found near the path, cleared first
+     * @param world The world to check collisions against
+     * @param tickScale How much of a BASE_TICKRATE tick this tick is
+     */
+    public void checkCollisions(EntityRegistry<PlayerSoldier> players, SpatialGrid soldiers, IntArray nearby, WorldMap world, float tickScale) {
         timeAlive++;
         if (physicsParent == -1) {
-            float hyp = (float) Math.hypot(this.vX, this.vY);
-            float xAmt = this.vX / hyp;
-            float yAmt = this.vY / hyp;
-            for (float i = 0; i < hyp; i += CHECKRES) {
-                float checkX = xAmt * i;
-                float checkY = yAmt * i;
-                for (Integer k : players.keySet()) {
-                    PlayerSoldier player = players.get(k);
-                    if (player.getTeam() != this.attackerTeam && player.getRect().contains(x + checkX, y + checkY)) {
-                        this.x += checkX;
-                        this.y += checkY;
-                        player.damage((int) Math.round(Math.hypot(this.vX,this.vY)*20));
-                        killedPlayer = player.getHealth()<=0;
-                        this.vX = 0;
-                        this.vY = 0;
-                        isHit = true;
-                        physicsParent = k;
-                        return;
+            float speed = (float) Math.hypot(this.vX, this.vY);
+            float hyp = speed*tickScale; // distance travelled this tick
+            if (speed > 0) {
+                float xAmt = this.vX / speed;
+                float yAmt = this.vY / speed;
+                float wallDist = wallDistance(world, xAmt, yAmt, hyp);
+                float hitDist = Math.min(wallDist, hyp);
+                PlayerSoldier hitPlayer = null;
+                nearby.clear();
+                soldiers.queryRay(this.x, this.y, xAmt, yAmt, hitDist, nearby);
+                nearby.sort(); // back into the order of players, so a tie goes to the same one it always has
+                for (int k = 0; k < nearby.size; k++) {
+                    PlayerSoldier player = players.getAt(nearby.get(k));
+                    if (player.isAlive() && player.getTeam() != this.attackerTeam) {
+                        float dist = entryDistance(player.getRect(), xAmt, yAmt, hitDist);
+                        if (dist != -1 && (hitPlayer == null || dist < hitDist)) {
+                            hitDist = dist;
+                            hitPlayer = player;
+                        }
                     }
                 }
-                if (!isHit && ((world.getPosId(Math.round(x + checkX), (int) (y + checkY + 1)) == 0x000001FF)||(world.getPosId(Math.round(x + checkX), (int) (y + checkY + 1)) ==(this.attackerTeam==0?0x00FFFFFF:0xFFFF00FF)))) {
+                if (hitPlayer != null) {
+                    this.x += xAmt * hitDist;
+                    this.y += yAmt * hitDist;
+                    hitPlayer.damage((int) Math.round(Math.hypot(this.vX,this.vY)*20));
+                    killedPlayer = hitPlayer.getHealth()<=0;
+                    this.vX = 0;
+                    this.vY = 0;
+                    isHit = true;
+                    physicsParent = hitPlayer.getId();
+                    return;
+                }
+                if (wallDist <= hyp) {
                     //TODO: action when collided
-                    this.x += checkX;
-                    this.y += checkY;
+                    this.x += xAmt * wallDist;
+                    this.y += yAmt * wallDist;
                     this.vX = 0;
                     this.vY = 0;
                     isHit = true;
@@ -80,27 +100,133 @@ public class Projectile {
             }
         }
         else {//TODO: figure out why arrows are being destroyed when they hit players
-            if(players.get(physicsParent) == null||!players.get(physicsParent).isAlive()){
-                this.timeAlive = MAXLIFETIME;
+            PlayerSoldier parent = players.get(physicsParent);
+            if(parent == null||!parent.isAlive()){
+                this.timeAlive = lifetime;
             }
             else {
-                this.vX = players.get(physicsParent).getvX();
-                this.vY = players.get(physicsParent).getvY();
+                this.vX = parent.getvX();
+                this.vY = parent.getvY();
             }
         }
-        this.move(); // if it hit nothing then move it to the intended destination
+        this.move(tickScale); // if it hit nothing then move it to the intended destination
         if(!isHit) {
-            this.vY += GRAVITY;
+            this.vY += GRAVITY*tickScale;
             angle = (float) Math.toDegrees(Math.atan2(this.vY,this.vX));
         }
     }
+    /**
+     * Walks the map cells along the projectile's path in order, the cell checked is the one the point half a unit right
+     * and a unit above the projectile is in
+     * @param dirX The direction it's going, a unit vector
+     * @param dirY
+     * @param maxDist How far along the path to look
+     * @return How far along the path it reaches a wall or the other team's door, more than maxDist if it doesn't
+     */
+    private float wallDistance(WorldMap world, float dirX, float dirY, float maxDist){
+        int door = this.attackerTeam==0?0x00FFFFFF:0xFFFF00FF;
+        float startX = this.x+0.5f;
+        float startY = this.y+1;
+        int cellX = (int)Math.floor(startX);
+        int cellY = (int)Math.floor(startY);
+        int stepX = dirX>0?1:-1;
+        int stepY = dirY>0?1:-1;
+        float deltaX = dirX==0?Float.POSITIVE_INFINITY:Math.abs(1/dirX); // distance along the path between vertical cell edges
+        float deltaY = dirY==0?Float.POSITIVE_INFINITY:Math.abs(1/dirY);
+        float nextX = dirX==0?Float.POSITIVE_INFINITY:(dirX>0?cellX+1-startX:startX-cellX)*deltaX; // distance to the next one
+        float nextY = dirY==0?Float.POSITIVE_INFINITY:(dirY>0?cellY+1-startY:startY-cellY)*deltaY;
+        float dist = 0;
+        while(dist <= maxDist){
+            int id = world.getPosId(cellX,cellY);
+            if(id == 0x000001FF || id == door){
+                return dist;
+            }
+            if(nextX < nextY){
+                dist = nextX;
+                nextX += deltaX;
+                cellX += stepX;
+            }
+            else{
+                dist = nextY;
+                nextY += deltaY;
+                cellY += stepY;
+            }
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param dirX The direction the projectile is going, a unit vector
+     * @param dirY
+     * @param maxDist How far along the path to look
+     * @return How far along the path the projectile first touches a rectangle, 0 if it's already in it. -1 if it doesn't
+     * within maxDist
+     */
+    private float entryDistance(Rectangle rect, float dirX, float dirY, float maxDist){
+        float enter = 0;
+        float exit = maxDist;
+        if(dirX == 0){
+            if(this.x < rect.x || this.x > rect.x+rect.width){
+                return -1;
+            }
+        }
+        else{
+            float a = (rect.x-this.x)/dirX;
+            float b = (rect.x+rect.width-this.x)/dirX;
+            enter = Math.max(enter,Math.min(a,b));
+            exit = Math.min(exit,Math.max(a,b));
+        }
+        if(dirY == 0){
+            if(this.y < rect.y || this.y > rect.y+rect.height){
+                return -1;
+            }
+        }
+        else{
+            float a = (rect.y-this.y)/dirY;
+            float b = (rect.y+rect.height-this.y)/dirY;
+            enter = Math.max(enter,Math.min(a,b));
+            exit = Math.min(exit,Math.max(a,b));
+        }
+        return enter<=exit?enter:-1;
+    }
+
+    /**
+     * Moves the projectile without changing anything else about it
+     */
+    void shift(float dX, float dY){
+        this.x += dX;
+        this.y += dY;
+    }
+
+    public int getRewindTicks() {
+        return rewindTicks;
+    }
+
+    public void setRewindTicks(int rewindTicks) {
+        this.rewindTicks = rewindTicks;
+    }
+
     public int getTimeAlive() {
         return timeAlive;
     }
 
     public void move(){
-            this.x+=vX;
-            this.y+=vY;
+        move(1);
+    }
+    public void move(float scale){
+            this.x+=vX*scale;
+            this.y+=vY*scale;
+    }
+
+    public void setLifetime(int lifetime) {
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * @return true if the projectile has been around for its whole lifetime and should be removed
+     */
+    public boolean isExpired(){
+        return timeAlive >= lifetime;
     }
 
     public void draw(SpriteBatch batch, TextureRegion textureRegion){
@@ -126,15 +252,67 @@ public class Projectile {
                 '}';
     }
 
-    public GridPoint2 getAttackPair(){ // returns the caster and physicsparent (player who is hit by arrow)
-        return new GridPoint2(caster,physicsParent);
+    /**
+     * @return The id of the player that fired the projectile
+     */
+    public int getCaster() {
+        return caster;
+    }
+
+    /**
+     * @return The id of the player the projectile is stuck in, -1 if it hasn't hit anyone
+     */
+    public int getPhysicsParent() {
+        return physicsParent;
     }
     public boolean isParticlesStarted() {
         return particlesStarted;
     }
 
-    public String getServerHash() {
-        return serverHash;
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getvX() {
+        return vX;
+    }
+
+    public float getvY() {
+        return vY;
+    }
+
+    public float getAngle() {
+        return angle;
+    }
+
+    /**
+     * Sets everything the server sends about the projectile, used by clients to copy the server's version
+     */
+    void setState(float x, float y, float vX, float vY, float angle, int projectileType, int attackerTeam, int caster, int physicsParent, boolean isHit, boolean killedPlayer){
+        this.x = x;
+        this.y = y;
+        this.vX = vX;
+        this.vY = vY;
+        this.angle = angle;
+        this.projectileType = projectileType;
+        this.attackerTeam = attackerTeam;
+        this.caster = caster;
+        this.physicsParent = physicsParent;
+        this.isHit = isHit;
+        this.killedPlayer = killedPlayer;
+        this.killLogged = true; // the server keeps the kill log
     }
 
     public boolean isHit() {
@@ -0,0 +1,156 @@
+package me.dumfing.multiplayerTools;
+
+import me.dumfing.gdxtools.MathTools;
+
+import java.util.Arrays;
+
+import static me.dumfing.multiplayerTools.MultiplayerTools.GRAVITY;
+
+/**
+ * The parts of the soldiers that movement uses, kept in one array per field so the physics can run as a few plain loops
+ * over all of them instead of going through every soldier's getters and Rectangle<br>
+ * Each tick the soldiers are added after their input is handled, step moves all of them, and store copies the results
+ * back onto the soldiers. The arrays are reused every tick and only grow when there are more soldiers than ever before
+ */
+public class SoldierBodies {
+    // bits of collisions, the same order as PlayerSoldier.collisions
+    static final int TOP = 1, BOTTOM = 2, RIGHT = 4, LEFT = 8;
+    private PlayerSoldier[] soldiers = new PlayerSoldier[16];
+    private float[] xs = new float[16];
+    private float[] ys = new float[16];
+    private float[] vXs = new float[16];
+    private float[] vYs = new float[16];
+    private int[] doors = new int[16]; // the colour of the door each soldier can't walk through, the other team's
+    private int[] collisions = new int[16];
+    private int count = 0;
+
+    public void clear(){
+        for(int i = 0; i<count; i++){
+            soldiers[i] = null;
+        }
+        count = 0;
+    }
+
+    /**
+     * Adds a soldier to be moved by the next step
+     */
+    public void add(PlayerSoldier p){
+        if(count == soldiers.length){
+            grow();
+        }
+        soldiers[count] = p;
+        xs[count] = p.getX();
+        ys[count] = p.getY();
+        vXs[count] = p.getvX();
+        vYs[count] = p.getvY();
+        doors[count] = p.getTeam()==1?0xFFFF00FF:0x00FFFFFF;
+        count++;
+    }
+
+    /**
+     * Moves every soldier forward one tick: gravity, stopping at walls, floors and ceilings, then their velocity
+     * @param map The map to collide with
+     * @param tickScale How much of a BASE_TICKRATE tick this tick is
+     */
+    public void step(WorldMap map, float tickScale){
+        applyGravity(tickScale);
+        collide(map);
+        respond(tickScale);
+        integrate(tickScale);
+    }
+
+    /**
+     * Copies where everyone ended up back onto the soldiers, and empties the store
+     */
+    public void store(){
+        for(int i = 0; i<count; i++){
+            PlayerSoldier p = soldiers[i];
+            p.setPos(xs[i],ys[i]);
+            p.setvX(vXs[i]);
+            p.setvY(vYs[i]);
+            for(int c = 0; c<p.collisions.length; c++){
+                p.collisions[c] = (collisions[i]&(1<<c)) != 0;
+            }
+        }
+        clear();
+    }
+
+    private void applyGravity(float tickScale){
+        float pull = GRAVITY*tickScale;
+        for(int i = 0; i<count; i++){
+            vYs[i] += pull;
+        }
+    }
+
+    /**
+     * Finds which sides of each soldier are touching something solid and moves them out of it
+     */
+    private void collide(WorldMap map){
+        for(int i = 0; i<count; i++){
+            int hit = 0;
+            int door = doors[i];
+            int id = map.getPosId(Math.round(xs[i]), (int)(ys[i]+2));
+            if(id>>8 == 1 || id == door){ // top
+                ys[i] = Math.round(ys[i]);
+                hit |= TOP;
+            }
+            id = map.getPosId(Math.round(xs[i]), Math.round(ys[i]));
+            if(id>>8 == 1 || id == door){ // bottom
+                ys[i] = Math.round(ys[i]);
+                hit |= BOTTOM;
+            }
+            id = map.getPosId((int)xs[i], (int)(ys[i]+1));
+            if(id>>8 == 1 || id == door){ // left
+                xs[i] = (int)xs[i]+1;
+                hit |= LEFT;
+            }
+            id = map.getPosId((int)(xs[i]+1), (int)(ys[i]+1));
+            if(id>>8 == 1 || id == door){ // right
+                xs[i] = (int)xs[i];
+                hit |= RIGHT;
+            }
+            collisions[i] = hit;
+        }
+    }
+
+    /**
+     * Stops each soldier moving into whatever they're touching, and slows them down on the ground
+     */
+    private void respond(float tickScale){
+        float friction = 0.1f*tickScale;
+        for(int i = 0; i<count; i++){
+            int hit = collisions[i];
+            if((hit&TOP) != 0){
+                vYs[i] = Math.min(0,vYs[i]);
+            }
+            if((hit&BOTTOM) != 0){
+                vYs[i] = Math.max(0,vYs[i]);
+                vXs[i] = MathTools.towardsZero(vXs[i],friction);
+            }
+            if((hit&RIGHT) != 0){
+                vXs[i] = Math.min(0,vXs[i]);
+            }
+            if((hit&LEFT) != 0){
+                vXs[i] = Math.min(0,vXs[i]);
+            }
+        }
+    }
+
+    private void integrate(float tickScale){
+        for(int i = 0; i<count; i++){
+            xs[i] += vXs[i]*tickScale;
+            ys[i] += vYs[i]*tickScale;
+        }
+    }
+
+    private void grow(){
+        int size = soldiers.length*2;
+        soldiers = Arrays.copyOf(soldiers,size);
+        xs = Arrays.copyOf(xs,size);
+        ys = Arrays.copyOf(ys,size);
+        vXs = Arrays.copyOf(vXs,size);
+        vYs = Arrays.copyOf(vYs,size);
+        doors = Arrays.copyOf(doors,size);
+        collisions = Arrays.copyOf(collisions,size);
+    }
+}
@@ -0,0 +1,181 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntSet;
+
+/**
+ * A grid of square cells over a map that remembers which ids are in each cell, so finding what's in a rectangle only
+ * looks at the cells it covers instead of everything in the world<br>
+ * Anything outside the map goes in the nearest cell on the edge. Something bigger than a point can be put in every cell
+ * it touches, queries only give back each id once. The grid is meant to be cleared and filled again each time it's used,
+ * the cells keep their arrays so that doesn't allocate once they're big enough
+ */
+public class SpatialGrid {
+    public static final float DEFAULT_CELLSIZE = 8; // units, a few soldiers wide
+    private final float minX, minY, cellSize;
+    private final int columns, rows;
+    private final IntArray[] cells;
+    private final IntSet seen = new IntSet(); // what the current query has already given back
+    private int reserved = 0; // how many ids every cell and seen can take without growing
+
+    /**
+     * @param minX The left edge of the area covered
+     * @param minY The bottom edge of the area covered
+     * @param width How wide the area is in units
+     * @param height How tall the area is in units
+     * @param cellSize How wide and tall each cell is in units
+     */
+    public SpatialGrid(float minX, float minY, float width, float height, float cellSize){
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        columns = Math.max(1,(int)Math.ceil(width/cellSize));
+        rows = Math.max(1,(int)Math.ceil(height/cellSize));
+        cells = new IntArray[columns*rows];
+        for(int i = 0; i<cells.length; i++){
+            cells[i] = new IntArray(false,4);
+        }
+    }
+
+    /**
+     * Makes a grid that covers a whole map
+     */
+    public static SpatialGrid forMap(WorldMap map){
+        return new SpatialGrid(0,0,map.getCollisionMap().getWidth(),map.getCollisionMap().getHeight(),DEFAULT_CELLSIZE);
+    }
+
+    /**
+     * Empties every cell
+     */
+    public void clear(){
+        for(IntArray cell : cells){
+            cell.clear();
+        }
+    }
+
+    /**
+     * Makes every cell big enough to hold some number of ids, so filling the grid with up to that many never has to
+     * grow a cell because more of them happen to be bunched up in it than ever before
+     */
+    public void reserve(int count){
+        if(count <= reserved){
+            return;
+        }
+        for(IntArray cell : cells){
+            if(count > cell.size){
+                cell.ensureCapacity(count-cell.size);
+            }
+        }
+        seen.ensureCapacity(count);
+        reserved = count;
+    }
+
+    /**
+     * Puts an id in the cell a point is in
+     */
+    public void insert(int id, float x, float y){
+        cells[row(y)*columns+column(x)].add(id);
+    }
+
+    /**
+     * Puts an id in every cell a rectangle touches, edges included
+     */
+    public void insert(int id, Rectangle rect){
+        int c0 = column(rect.x), c1 = column(rect.x+rect.width);
+        int r0 = row(rect.y), r1 = row(rect.y+rect.height);
+        for(int r = r0; r<=r1; r++){
+            for(int c = c0; c<=c1; c++){
+                cells[r*columns+c].add(id);
+            }
+        }
+    }
+
+    /**
+     * Adds the ids in every cell a rectangle touches to out. Some of them can be a little outside the rectangle, since
+     * whole cells are taken
+     * @param out Where to put the ids, it isn't cleared first
+     */
+    public void query(float x0, float y0, float x1, float y1, IntArray out){
+        seen.clear();
+        int c0 = column(x0), c1 = column(x1);
+        int r0 = row(y0), r1 = row(y1);
+        for(int r = r0; r<=r1; r++){
+            for(int c = c0; c<=c1; c++){
+                addCell(r*columns+c,out);
+            }
+        }
+    }
+
+    /**
+     * Adds the ids in every cell a line touches to out, walking the cells from its start in order. Like query some of
+     * them can be a little off the line
+     * @param x Where the line starts
+     * @param y
+     * @param dirX The direction it goes in, a unit vector
+     * @param dirY
+     * @param length How long it is in units
+     * @param out Where to put the ids, it isn't cleared first
+     */
+    public void queryRay(float x, float y, float dirX, float dirY, float length, IntArray out){
+        seen.clear();
+        float gridX = (x-minX)/cellSize; // the start in cells
+        float gridY = (y-minY)/cellSize;
+        int c = (int)Math.floor(gridX);
+        int r = (int)Math.floor(gridY);
+        int stepX = dirX>0?1:-1;
+        int stepY = dirY>0?1:-1;
+        float deltaX = dirX==0?Float.POSITIVE_INFINITY:Math.abs(cellSize/dirX); // distance along the line between columns
+        float deltaY = dirY==0?Float.POSITIVE_INFINITY:Math.abs(cellSize/dirY);
+        float nextX = dirX==0?Float.POSITIVE_INFINITY:(dirX>0?c+1-gridX:gridX-c)*deltaX; // distance to the next one
+        float nextY = dirY==0?Float.POSITIVE_INFINITY:(dirY>0?r+1-gridY:gridY-r)*deltaY;
+        addCell(cell(c,r),out);
+        while(Math.min(nextX,nextY) <= length){
+            if(nextX == nextY){ // straight through a corner, it touches the cells on both sides of it too
+                addCell(cell(c+stepX,r),out);
+                addCell(cell(c,r+stepY),out);
+                c += stepX;
+                r += stepY;
+                nextX += deltaX;
+                nextY += deltaY;
+            }
+            else if(nextX < nextY){
+                c += stepX;
+                nextX += deltaX;
+            }
+            else{
+                r += stepY;
+                nextY += deltaY;
+            }
+            addCell(cell(c,r),out);
+        }
+    }
+
+    /**
+     * Adds the ids in a cell to out that the current query hasn't given back yet
+     */
+    private void addCell(int index, IntArray out){
+        IntArray cell = cells[index];
+        for(int i = 0; i<cell.size; i++){
+            int id = cell.get(i);
+            if(seen.add(id)){
+                out.add(id);
+            }
+        }
+    }
+
+    /**
+     * @return Where the cell at a column and row is in cells, anything off the grid is the nearest cell on the edge
+     */
+    private int cell(int column, int row){
+        return Math.max(0,Math.min(rows-1,row))*columns+Math.max(0,Math.min(columns-1,column));
+    }
+
+    private int column(float x){
+        return Math.max(0,Math.min(columns-1,(int)Math.floor((x-minX)/cellSize)));
+    }
+
+    private int row(float y){
+        return Math.max(0,Math.min(rows-1,(int)Math.floor((y-minY)/cellSize)));
+    }
+}
@@ -0,0 +1,221 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.math.GridPoint2;
+import com.badlogic.gdx.utils.Array;
+
+import java.util.LinkedList;
+
+/**
+ * Everything the server sends the clients about the world each send, packed into one datagram<br>
+ * The snapshot is always written. The other sections are written after it in order of importance and are left out of a
+ * frame when they haven't changed since the baseline or when there's no room left for them. A section that's left out
+ * is copied from the baseline when the frame is read, so a frame always holds a whole world and can be applied at once<br>
+ * What a receiver reads can be missing things that didn't fit, so the server keeps the frames each client will have
+ * rather than the frames it took
+ */
+public class WorldFrame {
+    public static final int MAXFRAMEBYTES = 1024; // sections that would make the frame bigger than this wait for the next frame
+    private WorldSnapshot snapshot;
+    private int tick; // the server's tick when the frame was taken, clients use it to time frames
+    private LinkedList<GridPoint2> respawnTimes = new LinkedList<GridPoint2>(); // x is the player's id, y is ticks until they respawn
+    private LinkedList<ConcurrentGameWorld.KillInfo> killLog = new LinkedList<ConcurrentGameWorld.KillInfo>();
+    private int killCount = -1; // the world's kill count when the kill log was taken, -1 if this frame doesn't have one
+
+    private WorldFrame(WorldSnapshot snapshot, int tick){
+        this.snapshot = snapshot;
+        this.tick = tick;
+    }
+
+    /**
+     * Records the current state of a world
+     * @param world The world to record
+     * @param sequence The number of this frame, each frame sent should have a higher one than the last
+     * @param tick How many ticks the world has run
+     * @return The frame
+     */
+    public static WorldFrame capture(ConcurrentGameWorld world, int sequence, int tick){
+        WorldFrame frame = new WorldFrame(WorldSnapshot.capture(world,sequence),tick);
+        for(GridPoint2 time : world.getRespawnTimers()){
+            frame.respawnTimes.add(new GridPoint2(time)); // the world counts these down in place
+        }
+        frame.killLog.addAll(world.getKillLog());
+        frame.killCount = world.getKillCount();
+        return frame;
+    }
+
+    /**
+     * Writes this frame as the difference from the baseline
+     * @param out Where to write it
+     * @param baseline A frame the receiver already has, or null to write everything
+     * @return The frame the receiver will have after reading it
+     */
+    public WorldFrame write(BitWriter out, WorldFrame baseline){
+        return write(out,baseline,MAXFRAMEBYTES,null,null);
+    }
+
+    /**
+     * Writes this frame as the difference from the baseline in at most maxBytes. Soldiers and projectiles are left out
+     * by priority if the snapshot doesn't fit, then the optional sections that would go over are left out
+     * @param out Where to write it
+     * @param baseline A frame the receiver already has, or null to write everything
+     * @param maxBytes How big the frame can get before things are left for a later frame
+     * @param priorities How much the receiver needs each entity, or null to write the whole snapshot no matter the size
+     * @param interest The soldiers and projectiles the receiver can see, or null to send all of them
+     * @return The frame the receiver will have after reading it, which is what has to be used as the baseline for it
+     * later. This frame if nothing was left out
+     */
+    public WorldFrame write(BitWriter out, WorldFrame baseline, int maxBytes, PriorityAccumulator priorities, AreaOfInterest interest){
+        WorldSnapshot received = snapshot.write(out,baseline==null?null:baseline.snapshot,maxBytes*8-2,priorities,interest); // room for the 2 section flags
+        boolean complete = received == snapshot;
+        // the respawn timers count down every tick so they're sent as long as anyone is waiting, and once more after
+        boolean respawnsChanged = baseline==null || respawnTimes.size() != 0 || baseline.respawnTimes.size() != 0;
+        int mark = out.getBitLength();
+        out.writeBoolean(respawnsChanged);
+        boolean respawnsSent = respawnsChanged;
+        if(respawnsChanged){
+            out.writeVarInt(respawnTimes.size());
+            for(GridPoint2 time : respawnTimes){
+                out.writeVarInt(time.x);
+                out.writeVarInt(Math.max(0,time.y));
+            }
+            respawnsSent = !dropIfTooBig(out,mark,maxBytes);
+            complete &= respawnsSent;
+        }
+        mark = out.getBitLength();
+        int knownKillCount = baseline==null?-1:baseline.killCount;
+        boolean killsChanged = knownKillCount != killCount;
+        out.writeBoolean(killsChanged);
+        boolean killsSent = killsChanged;
+        if(killsChanged){
+            out.writeVarInt(killCount);
+            out.writeVarInt(killLog.size());
+            for(ConcurrentGameWorld.KillInfo kill : killLog){
+                out.writeString(kill.getKiller());
+                out.writeString(kill.getVictim());
+                out.writeVarInt(kill.getWeapon());
+            }
+            killsSent = !dropIfTooBig(out,mark,maxBytes);
+            complete &= killsSent;
+        }
+        if(complete){
+            return this;
+        }
+        // same as read does with whatever isn't in the frame
+        WorldFrame frame = new WorldFrame(received,tick);
+        if(respawnsSent){
+            frame.respawnTimes = respawnTimes;
+        }
+        else if(baseline != null){
+            frame.respawnTimes = baseline.respawnTimes;
+        }
+        if(killsSent){
+            frame.killLog = killLog;
+            frame.killCount = killCount;
+        }
+        else if(baseline != null){
+            frame.killLog = baseline.killLog;
+            frame.killCount = baseline.killCount;
+        }
+        return frame;
+    }
+
+    /**
+     * Takes a section back out of the frame if it made the frame too big, the receiver keeps what it had
+     * @return Whether the section was taken out
+     */
+    private static boolean dropIfTooBig(BitWriter out, int mark, int maxBytes){
+        if(out.getBitLength() > maxBytes*8){
+            out.rewind(mark);
+            out.writeBoolean(false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a frame written by write
+     * @param in Where to read it from
+     * @param sequence The number of the frame being read
+     * @param tick The server tick it was taken at, sent alongside it
+     * @param baseline The same baseline it was written with, or null if it was written without one
+     * @return The full frame
+     */
+    public static WorldFrame read(BitReader in, int sequence, int tick, WorldFrame baseline){
+        WorldFrame frame = new WorldFrame(WorldSnapshot.read(in,sequence,baseline==null?null:baseline.snapshot),tick);
+        if(in.readBoolean()){
+            int count = in.readVarInt();
+            for(int i = 0; i<count; i++){
+                frame.respawnTimes.add(new GridPoint2(in.readVarInt(),in.readVarInt()));
+            }
+        }
+        else if(baseline != null){
+            frame.respawnTimes = baseline.respawnTimes;
+        }
+        if(in.readBoolean()){
+            frame.killCount = in.readVarInt();
+            int count = in.readVarInt();
+            for(int i = 0; i<count; i++){
+                frame.killLog.add(new ConcurrentGameWorld.KillInfo(in.readString(),in.readString(),in.readVarInt()));
+            }
+        }
+        else if(baseline != null){
+            frame.killLog = baseline.killLog;
+            frame.killCount = baseline.killCount;
+        }
+        return frame;
+    }
+
+    /**
+     * Makes a client's world match this frame<br>
+     * The world gets its own copies of the timers and kill log since it changes them as it runs
+     * @param world The world to change
+     */
+    public void apply(ConcurrentGameWorld world){
+        snapshot.apply(world);
+        applyTimers(world);
+    }
+
+    /**
+     * Gives a client's world this frame's respawn timers and kill log, and moves the client's own soldier to where the
+     * server had it. Everyone else is left for the client to show from its interpolated frames
+     * @param world The world to change
+     * @param ownID The client's soldier
+     * @return The client's soldier, or null if it isn't in this frame
+     */
+    public PlayerSoldier applyOwn(ConcurrentGameWorld world, int ownID){
+        applyTimers(world);
+        return snapshot.applySoldier(world,ownID);
+    }
+    private void applyTimers(ConcurrentGameWorld world){
+        Array<GridPoint2> times = new Array<GridPoint2>();
+        for(GridPoint2 time : respawnTimes){
+            times.add(new GridPoint2(time));
+        }
+        world.updateRespawnTimes(times);
+        world.updateKillInfo(new LinkedList<ConcurrentGameWorld.KillInfo>(killLog));
+    }
+
+    public int getSequence() {
+        return snapshot.getSequence();
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public LinkedList<GridPoint2> getRespawnTimes() {
+        return respawnTimes;
+    }
+
+    public LinkedList<ConcurrentGameWorld.KillInfo> getKillLog() {
+        return killLog;
+    }
+
+    public int getKillCount() {
+        return killCount;
+    }
+}
@@ -26,18 +26,29 @@ public class WorldMap {
     private int frameCount = 0;
     private int frameTime;
     public WorldMap(TextureRegion colMap, TextureRegion visComp){
-        if(!colMap.getTexture().getTextureData().isPrepared()){
-            colMap.getTexture().getTextureData().prepare();
-        }
-        collisionMap = colMap.getTexture().getTextureData().consumePixmap();
-        visualComponent = new Array<TextureRegion>();
+        this(consumePixmap(colMap));
         visualComponent.add(visComp);
+    }
+
+    /**
+     * Creates a WorldMap with only the functional component, used by the headless server where there's nothing to draw
+     * @param colMap The collision map
+     */
+    public WorldMap(Pixmap colMap){
+        collisionMap = colMap;
+        visualComponent = new Array<TextureRegion>();
         redSpawn = findColour(0xFF0100FF);
         bluSpawn = findColour(0x0001FFFF);
         redFlag = findColour(0xFF0200FF).add(0,-1);
 
         bluFlag = findColour(0x0002FFFF).add(0,-1);
     }
+    private static Pixmap consumePixmap(TextureRegion colMap){
+        if(!colMap.getTexture().getTextureData().isPrepared()){
+            colMap.getTexture().getTextureData().prepare();
+        }
+        return colMap.getTexture().getTextureData().consumePixmap();
+    }
     public void draw(SpriteBatch batch){
         batch.draw(visualComponent.get(currentFrame),0,0,collisionMap.getWidth(),collisionMap.getHeight());
     }
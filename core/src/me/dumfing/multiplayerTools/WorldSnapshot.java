@@ -0,0 +1,853 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.IntSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * The state of everything in a ConcurrentGameWorld that the clients need to see, at one point in time<br>
+ * Snapshots are written as the difference from an older snapshot the client already has (the baseline). Only entities
+ * and groups of fields that changed are written, along with the ids of anything that was removed. Without a baseline
+ * everything is written. The states in a snapshot are never changed once it's made, so unchanged ones are shared with the
+ * baseline instead of being copied. When there isn't room for every change, the soldiers and projectiles that matter most
+ * to that receiver go in and the rest wait, see PriorityAccumulator<br>
+ * Everything is stored already quantized so the server compares exactly the numbers the client will decode. Positions
+ * are in 1/POSRES of a map pixel, velocities in 1/VELRES of a unit per tick and angles in ANGLEBITS bits, and each value
+ * is written with a BitWriter using only as many bits as it needs
+ */
+public class WorldSnapshot {
+    public static final int HISTORY = 32; // how many old snapshots the server and clients keep to be used as baselines
+    static final int POSRES = 32; // steps per map pixel, soldiers only move about a quarter of a pixel a tick
+    static final int POSMARGIN = 64; // how far outside the map a position can be, players fall to -30 before they die
+    static final int VELRES = 256; // steps per unit per tick
+    static final int VELBITS = 14; // enough for +-32 units per tick, arrows speed up a lot as they fall
+    static final int ANGLEBITS = 9;
+    static final int HITRES = 100; // hit cooldown is sent in hundredths
+    private int sequence;
+    private int xBits, yBits; // how many bits a position takes, depends on the size of the map
+    private IntMap<SoldierState> soldiers = new IntMap<SoldierState>();
+    private IntMap<ProjectileState> projectiles = new IntMap<ProjectileState>();
+    private FlagState[] flags = new FlagState[0];
+
+    public WorldSnapshot(int sequence){
+        this.sequence = sequence;
+    }
+
+    /**
+     * Records the current state of a world
+     * @param world The world to record
+     * @param sequence The number of this snapshot, each snapshot sent should have a higher one than the last
+     * @return The snapshot
+     */
+    public static WorldSnapshot capture(ConcurrentGameWorld world, int sequence){
+        WorldSnapshot snap = new WorldSnapshot(sequence);
+        snap.xBits = bitsFor((world.getWorldMap().getCollisionMap().getWidth()+POSMARGIN*2)*POSRES);
+        snap.yBits = bitsFor((world.getWorldMap().getCollisionMap().getHeight()+POSMARGIN*2)*POSRES);
+        EntityRegistry<PlayerSoldier> players = world.getPlayers();
+        for(int i = 0; i<players.size(); i++){
+            snap.soldiers.put(players.getAt(i).getId(),new SoldierState(players.getAt(i),snap));
+        }
+        Array<Projectile> worldProjectiles = world.getProjectiles();
+        for(int i = 0; i<worldProjectiles.size; i++){
+            Projectile proj = worldProjectiles.get(i);
+            snap.projectiles.put(proj.getId(),new ProjectileState(proj,snap));
+        }
+        snap.flags = new FlagState[world.getFlags().length];
+        for(int i = 0; i<snap.flags.length; i++){
+            snap.flags[i] = world.getFlags()[i]==null?null:new FlagState(world.getFlags()[i],snap);
+        }
+        return snap;
+    }
+
+    /**
+     * Writes this snapshot as the difference from the baseline
+     * @param out Where to write it
+     * @param baseline A snapshot the receiver already has, or null to write everything
+     */
+    public void write(BitWriter out, WorldSnapshot baseline){
+        write(out,baseline,Integer.MAX_VALUE,null,null);
+    }
+
+    /**
+     * Writes this snapshot as the difference from the baseline, but only the soldiers and projectiles with the highest
+     * priority if every change won't fit in maxBits. The flags, and the ids of anything removed, are always written<br>
+     * Something that's left out stays how it was in the baseline when the snapshot is read, so what the receiver ends up
+     * with isn't this snapshot anymore. That's what has to be used as the baseline for anything written to it after
+     * @param out Where to write it
+     * @param baseline A snapshot the receiver already has, or null to write everything
+     * @param maxBits How big the snapshot can get
+     * @param priorities How much the receiver needs each entity, or null to write every change no matter the size
+     * @param interest The soldiers and projectiles the receiver can see, gathered from this snapshot. Anything else is
+     *                 written as removed. Null to write everything
+     * @return The snapshot the receiver will have after reading it, this one if nothing was left out
+     */
+    public WorldSnapshot write(BitWriter out, WorldSnapshot baseline, int maxBits, PriorityAccumulator priorities, AreaOfInterest interest){
+        IntMap<SoldierState> baseSoldiers = baseline==null?null:baseline.soldiers;
+        IntMap<ProjectileState> baseProjectiles = baseline==null?null:baseline.projectiles;
+        // only what's in the area is looked at, so a client far from most of the fighting costs less to write for
+        IntArray soldierIds = interest==null?soldiers.keys().toArray():interest.soldierIds;
+        IntArray projectileIds = interest==null?projectiles.keys().toArray():interest.projectileIds;
+        IntSet skipped = priorities==null?null:choose(baseline,maxBits,priorities,interest,soldierIds,projectileIds); // ids of the ones left out, soldiers as -1-id
+        out.writeBits(xBits,5);
+        out.writeBits(yBits,5);
+        // lists of ids are written as id+1 and end with a 0 so they don't have to be counted first
+        for(int i = 0; i<soldierIds.size; i++){
+            int id = soldierIds.get(i);
+            SoldierState state = soldiers.get(id);
+            int mask = state.changes(baseSoldiers==null?null:baseSoldiers.get(id));
+            if(mask != 0 && (skipped == null || !skipped.contains(-1-id))){
+                out.writeVarInt(id+1);
+                out.writeBits(mask,SoldierState.MASKBITS);
+                state.write(out,mask,this);
+            }
+        }
+        out.writeVarInt(0);
+        writeRemoved(out,soldiers,baseSoldiers,interest==null?null:interest.soldiers);
+        for(int i = 0; i<projectileIds.size; i++){
+            int id = projectileIds.get(i);
+            ProjectileState state = projectiles.get(id);
+            int mask = state.changes(baseProjectiles==null?null:baseProjectiles.get(id));
+            if(mask != 0 && (skipped == null || !skipped.contains(id))){
+                out.writeVarInt(id+1);
+                out.writeBits(mask,ProjectileState.MASKBITS);
+                state.write(out,mask,this);
+            }
+        }
+        out.writeVarInt(0);
+        writeRemoved(out,projectiles,baseProjectiles,interest==null?null:interest.projectiles);
+        writeFlags(out,baseline);
+        if((skipped == null || skipped.size == 0) && (interest == null || interest.coversAll())){
+            return this;
+        }
+        // what the receiver will have: only what's in the area, with the baseline's state for anything left out and
+        // nothing for new ones left out
+        WorldSnapshot received = new WorldSnapshot(sequence);
+        received.xBits = xBits;
+        received.yBits = yBits;
+        received.flags = flags;
+        for(int i = 0; i<soldierIds.size; i++){
+            int id = soldierIds.get(i);
+            SoldierState state = skipped!=null&&skipped.contains(-1-id)?(baseSoldiers==null?null:baseSoldiers.get(id)):soldiers.get(id);
+            if(state != null){
+                received.soldiers.put(id,state);
+            }
+        }
+        for(int i = 0; i<projectileIds.size; i++){
+            int id = projectileIds.get(i);
+            ProjectileState state = skipped!=null&&skipped.contains(id)?(baseProjectiles==null?null:baseProjectiles.get(id)):projectiles.get(id);
+            if(state != null){
+                received.projectiles.put(id,state);
+            }
+        }
+        return received;
+    }
+
+    private void writeFlags(BitWriter out, WorldSnapshot baseline){
+        out.writeBits(flags.length,2);
+        for(int i = 0; i<flags.length; i++){
+            FlagState base = baseline==null||i>=baseline.flags.length?null:baseline.flags[i];
+            int mask = flags[i]==null?0:flags[i].changes(base);
+            out.writeBits(mask,FlagState.MASKBITS);
+            if(mask != 0){
+                flags[i].write(out,mask,this);
+            }
+        }
+    }
+
+    /**
+     * Picks which changed soldiers and projectiles fit, highest priority first. Anything that doesn't fit is skipped
+     * over so something smaller after it can still get in
+     * @return The ids of the ones that don't fit, soldiers as -1-id so they can't clash with projectiles
+     */
+    private IntSet choose(WorldSnapshot baseline, int maxBits, PriorityAccumulator priorities, AreaOfInterest interest, IntArray soldierIds, IntArray projectileIds){
+        IntMap<SoldierState> baseSoldiers = baseline==null?null:baseline.soldiers;
+        IntMap<ProjectileState> baseProjectiles = baseline==null?null:baseline.projectiles;
+        BitWriter scratch = new BitWriter(64); // for measuring
+        // the part that's always written
+        scratch.writeBits(xBits,5);
+        scratch.writeBits(yBits,5);
+        scratch.writeVarInt(0);
+        writeRemoved(scratch,soldiers,baseSoldiers,interest==null?null:interest.soldiers);
+        scratch.writeVarInt(0);
+        writeRemoved(scratch,projectiles,baseProjectiles,interest==null?null:interest.projectiles);
+        writeFlags(scratch,baseline);
+        int used = scratch.getBitLength();
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+        for(int i = 0; i<soldierIds.size; i++){
+            int id = soldierIds.get(i);
+            SoldierState state = soldiers.get(id);
+            SoldierState base = baseSoldiers==null?null:baseSoldiers.get(id);
+            int mask = state.changes(base);
+            if(mask != 0){
+                scratch.clear();
+                scratch.writeVarInt(id+1);
+                scratch.writeBits(mask,SoldierState.MASKBITS);
+                state.write(scratch,mask,this);
+                candidates.add(new Candidate(-1-id,priorities.addSoldier(id,mask,state,base),scratch.getBitLength()));
+            }
+        }
+        for(int i = 0; i<projectileIds.size; i++){
+            int id = projectileIds.get(i);
+            ProjectileState state = projectiles.get(id);
+            ProjectileState base = baseProjectiles==null?null:baseProjectiles.get(id);
+            int mask = state.changes(base);
+            if(mask != 0){
+                scratch.clear();
+                scratch.writeVarInt(id+1);
+                scratch.writeBits(mask,ProjectileState.MASKBITS);
+                state.write(scratch,mask,this);
+                candidates.add(new Candidate(id,priorities.addProjectile(id,mask,state,base),scratch.getBitLength()));
+            }
+        }
+        Collections.sort(candidates);
+        IntSet skipped = new IntSet();
+        for(Candidate c : candidates){
+            if(used+c.bits <= maxBits){
+                used += c.bits;
+                if(c.key < 0){
+                    priorities.sentSoldier(-1-c.key);
+                }
+                else{
+                    priorities.sentProjectile(c.key);
+                }
+            }
+            else{
+                skipped.add(c.key);
+            }
+        }
+        priorities.finish();
+        return skipped;
+    }
+
+    /**
+     * A changed soldier or projectile waiting for a place in the snapshot
+     */
+    private static class Candidate implements Comparable<Candidate>{
+        int key; // projectile id, or -1-id for a soldier
+        float priority;
+        int bits; // how big it is written
+        Candidate(int key, float priority, int bits){
+            this.key = key;
+            this.priority = priority;
+            this.bits = bits;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Float.compare(o.priority,priority); // highest first
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write
+     * @param in Where to read it from
+     * @param sequence The number of the snapshot being read
+     * @param baseline The same baseline it was written with, or null if it was written without one
+     * @return The full snapshot
+     */
+    public static WorldSnapshot read(BitReader in, int sequence, WorldSnapshot baseline){
+        WorldSnapshot snap = new WorldSnapshot(sequence);
+        snap.xBits = in.readBits(5);
+        snap.yBits = in.readBits(5);
+        if(baseline != null){
+            snap.soldiers.putAll(baseline.soldiers);
+            snap.projectiles.putAll(baseline.projectiles);
+        }
+        int id;
+        while((id = in.readVarInt()-1) != -1){
+            int mask = in.readBits(SoldierState.MASKBITS);
+            snap.soldiers.put(id,new SoldierState(in,mask,snap.soldiers.get(id),snap));
+        }
+        while((id = in.readVarInt()-1) != -1){
+            snap.soldiers.remove(id);
+        }
+        while((id = in.readVarInt()-1) != -1){
+            int mask = in.readBits(ProjectileState.MASKBITS);
+            snap.projectiles.put(id,new ProjectileState(in,mask,snap.projectiles.get(id),snap));
+        }
+        while((id = in.readVarInt()-1) != -1){
+            snap.projectiles.remove(id);
+        }
+        snap.flags = new FlagState[in.readBits(2)];
+        for(int i = 0; i<snap.flags.length; i++){
+            FlagState base = baseline==null||i>=baseline.flags.length?null:baseline.flags[i];
+            int mask = in.readBits(FlagState.MASKBITS);
+            snap.flags[i] = mask==0?base:new FlagState(in,mask,base,snap);
+        }
+        return snap;
+    }
+
+    /**
+     * Makes a client's world match this snapshot, adding and removing soldiers and projectiles as needed
+     * @param world The world to change
+     */
+    public void apply(ConcurrentGameWorld world){
+        interpolate(null,0,world,-1);
+    }
+
+    /**
+     * Makes a client's world look like it did part of the way between this snapshot and a newer one. Positions are
+     * blended, everything else is taken from this snapshot. Soldiers and projectiles are added and removed to match this one
+     * @param next The newer snapshot, or null to show exactly this one
+     * @param alpha How far towards next to go, 0 is this snapshot and 1 is next
+     * @param world The world to change
+     * @param skipID A soldier to leave alone, the client moves its own soldier itself. -1 to change all of them
+     */
+    public void interpolate(WorldSnapshot next, float alpha, ConcurrentGameWorld world, int skipID){
+        EntityRegistry<PlayerSoldier> players = world.getPlayers();
+        for(int i = players.size()-1; i>-1; i--){ // in reverse, removing one moves the last one into its place
+            int id = players.getAt(i).getId();
+            if(id != skipID && !soldiers.containsKey(id)){
+                players.remove(id);
+            }
+        }
+        for(IntMap.Entry<SoldierState> e : soldiers.entries()){
+            if(e.key == skipID){
+                continue;
+            }
+            PlayerSoldier p = applySoldierState(world,e.key,e.value);
+            SoldierState to = next==null?null:next.soldiers.get(e.key);
+            if(to != null && e.value.isAlive() && to.isAlive() && e.value.deaths == to.deaths){ // don't slide someone across the map when they respawn
+                p.setPos(lerpPos(e.value.x,to.x,alpha),lerpPos(e.value.y,to.y,alpha));
+            }
+        }
+        Array<Projectile> worldProjectiles = world.getProjectiles();
+        IntMap<Projectile> existing = new IntMap<Projectile>();
+        for(int i = worldProjectiles.size-1; i>-1; i--){
+            Projectile proj = worldProjectiles.get(i);
+            if(projectiles.containsKey(proj.getId())){
+                existing.put(proj.getId(),proj);
+            }
+            else{
+                worldProjectiles.removeIndex(i);
+            }
+        }
+        for(IntMap.Entry<ProjectileState> e : projectiles.entries()){
+            Projectile proj = existing.get(e.key); // the same object is kept so the client remembers which effects it has played
+            if(proj == null){
+                proj = new Projectile();
+                proj.setId(e.key);
+                worldProjectiles.add(proj);
+            }
+            e.value.apply(proj,next==null?null:next.projectiles.get(e.key),alpha);
+        }
+        CaptureFlag[] worldFlags = world.getFlags();
+        for(int i = 0; i<flags.length && i<worldFlags.length; i++){
+            if(flags[i] != null && worldFlags[i] != null){
+                if(flags[i].captures > worldFlags[i].getCaptures()){ // taken to the other base since it was last shown
+                    world.addCaptureParticle(worldFlags[i].getxPos(),worldFlags[i].getyPos(),1-worldFlags[i].getTeamID());
+                }
+                flags[i].apply(worldFlags[i],next==null||i>=next.flags.length?null:next.flags[i],alpha);
+            }
+        }
+    }
+
+    /**
+     * Makes one soldier in a client's world match this snapshot, the client uses it for its own soldier
+     * @param world The world to change
+     * @param id The soldier's id
+     * @return The soldier, or null if it isn't in this snapshot
+     */
+    public PlayerSoldier applySoldier(ConcurrentGameWorld world, int id){
+        SoldierState state = soldiers.get(id);
+        return state==null?null:applySoldierState(world,id,state);
+    }
+
+    /**
+     * Copies a state onto a soldier, adding them if they aren't in the world yet. The client doesn't run anyone's attacks
+     * so a hit is noticed by the soldier's health going down without an arrow in them
+     */
+    private PlayerSoldier applySoldierState(ConcurrentGameWorld world, int id, SoldierState state){
+        PlayerSoldier p = world.getPlayers().get(id);
+        if(p == null){
+            p = new PlayerSoldier(new Rectangle(state.getX(),state.getY(),PlayerSoldier.width,PlayerSoldier.height),state.team,state.name);
+            world.getPlayers().put(id,p);
+        }
+        else if(p.isAlive() && state.isAlive() && state.health < p.getHealth() && !hasArrowIn(id)){
+            world.addHit(-1,id);
+        }
+        state.apply(p);
+        return p;
+    }
+
+    /**
+     * @return Whether an arrow is stuck in the soldier, arrows play their own hit effects
+     */
+    private boolean hasArrowIn(int id){
+        for(ProjectileState proj : projectiles.values()){
+            if(proj.isHit && proj.physicsParent == id){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param visible The ids the receiver can see, anything it has that isn't one of them is removed. Null if it sees everything
+     */
+    private static void writeRemoved(BitWriter out, IntMap<?> current, IntMap<?> base, IntSet visible){
+        if(base != null){ // without a baseline there's nothing to remove from
+            for(IntMap.Keys keys = base.keys(); keys.hasNext;){
+                int id = keys.next();
+                if(visible==null?!current.containsKey(id):!visible.contains(id)){
+                    out.writeVarInt(id+1);
+                }
+            }
+        }
+        out.writeVarInt(0);
+    }
+
+    /**
+     * @return How many bits it takes to write every number from 0 to values-1
+     */
+    static int bitsFor(int values){
+        return Math.max(1,32-Integer.numberOfLeadingZeros(values-1));
+    }
+    int quantizeX(float x){
+        return MathUtils.clamp(Math.round((x+POSMARGIN)*POSRES),0,(1<<xBits)-1);
+    }
+    int quantizeY(float y){
+        return MathUtils.clamp(Math.round((y+POSMARGIN)*POSRES),0,(1<<yBits)-1);
+    }
+    static float unquantizePos(int q){
+        return (float)q/POSRES-POSMARGIN;
+    }
+    static float lerpPos(int from, int to, float alpha){
+        return unquantizePos(from)+(to-from)*alpha/POSRES;
+    }
+    static int quantizeVel(float v){
+        return MathUtils.clamp(Math.round(v*VELRES),-(1<<(VELBITS-1)),(1<<(VELBITS-1))-1);
+    }
+    static float unquantizeVel(int q){
+        return (float)q/VELRES;
+    }
+    static void writeVel(BitWriter out, int q){
+        out.writeBits(q+(1<<(VELBITS-1)),VELBITS); // offset so it's never negative
+    }
+    static int readVel(BitReader in){
+        return in.readBits(VELBITS)-(1<<(VELBITS-1));
+    }
+    static int quantizeAngle(float degrees){
+        return Math.round(((degrees%360+360)%360)*(1<<ANGLEBITS)/360f)&((1<<ANGLEBITS)-1);
+    }
+    static float unquantizeAngle(int q){
+        return q*360f/(1<<ANGLEBITS);
+    }
+
+    /**
+     * Blends two angles the short way around the circle
+     */
+    static float lerpAngle(int from, int to, float alpha){
+        int diff = to-from;
+        diff -= Math.round((float)diff/(1<<ANGLEBITS))*(1<<ANGLEBITS); // between -half and half a turn
+        return (unquantizeAngle(from)+diff*alpha*360f/(1<<ANGLEBITS)+360)%360;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public IntMap<SoldierState> getSoldiers() {
+        return soldiers;
+    }
+
+    public IntMap<ProjectileState> getProjectiles() {
+        return projectiles;
+    }
+
+    public FlagState[] getFlags() {
+        return flags;
+    }
+
+    /**
+     * Something in a snapshot that can be compared with its state in an older snapshot
+     * @param <T> The type of state it is compared with
+     */
+    interface EntityState<T>{
+        /**
+         * @param base The same entity's state in the baseline, null if it wasn't there
+         * @return A mask of the groups of fields that are different, every group if base is null
+         */
+        int changes(T base);
+    }
+
+    /**
+     * What the clients need to know about a PlayerSoldier
+     */
+    public static class SoldierState implements EntityState<SoldierState>{
+        static final int POS = 1, VEL = 2, HEALTH = 4, INFO = 8, ANIM = 16, STATE = 32, SCORE = 64, KEYS = 128, HIT = 256, INPUT = 512;
+        static final int ALL = 1023;
+        static final int MASKBITS = 10;
+        // bits of state
+        static final int CANJUMP = 1, DRAWINGBOW = 2, SWINGING = 4, ALIVE = 8, STABBING = 16, SHIELDING = 32, SHIELDUP = 64, DRAWINGSHIELD = 128;
+        static final int COLLISIONS = 8; // the 4 PlayerSoldier.collisions go above the other state, the next tick's jumping and sliding read them
+        static final int STATEBITS = 12;
+        static final int KEYBITS = MultiplayerTools.Keys.NUMBUTTONS;
+        int x, y, vX, vY, hitCooldown, angle;
+        int health, maxHealth, team, pickedClass, facingDirection, animationID, bowDrawTime, kills, deaths, state, keys;
+        int inputSequence; // the last input the server ran for this soldier, its own client replays everything newer
+        String name;
+
+        SoldierState(PlayerSoldier p, WorldSnapshot snap){
+            x = snap.quantizeX(p.getX());
+            y = snap.quantizeY(p.getY());
+            vX = quantizeVel(p.getvX());
+            vY = quantizeVel(p.getvY());
+            health = p.getHealth();
+            maxHealth = p.getMaxHealth();
+            team = p.getTeam();
+            pickedClass = p.getCurrentClass();
+            name = p.getName();
+            facingDirection = p.getFacingDirection();
+            animationID = p.getAnimationID()&~AnimationManager.DIRECTION;
+            bowDrawTime = p.getBowDrawTime();
+            state = (p.isCanJump()?CANJUMP:0)|(p.isDrawingBow()?DRAWINGBOW:0)|(p.isSwinging()?SWINGING:0)|(p.isAlive()?ALIVE:0)|
+                    (p.isStabbing()?STABBING:0)|(p.isShielding()?SHIELDING:0)|(p.isShieldUp()?SHIELDUP:0)|(p.isDrawingShield()?DRAWINGSHIELD:0);
+            for(int i = 0; i<p.collisions.length; i++){
+                state |= p.collisions[i]?1<<(COLLISIONS+i):0;
+            }
+            kills = p.getKills();
+            deaths = p.getDeaths();
+            keys = p.getButtons()&((1<<KEYBITS)-1);
+            angle = quantizeAngle(p.getMouseAngle());
+            hitCooldown = Math.round(p.getHitCooldown()*HITRES);
+            inputSequence = p.getInputSequence();
+        }
+
+        /**
+         * Reads the groups in mask, the rest are copied from base
+         */
+        SoldierState(BitReader in, int mask, SoldierState base, WorldSnapshot snap){
+            if(base != null){
+                copy(base);
+            }
+            if((mask&POS) != 0){
+                x = in.readBits(snap.xBits);
+                y = in.readBits(snap.yBits);
+            }
+            if((mask&VEL) != 0){
+                vX = readVel(in);
+                vY = readVel(in);
+            }
+            if((mask&HEALTH) != 0){
+                health = in.readVarInt();
+                maxHealth = in.readVarInt();
+            }
+            if((mask&INFO) != 0){
+                team = in.readBits(1);
+                pickedClass = in.readBits(2)-1;
+                name = in.readString();
+            }
+            if((mask&ANIM) != 0){
+                facingDirection = in.readBits(1);
+                animationID = in.readVarInt();
+                bowDrawTime = in.readVarInt();
+            }
+            if((mask&STATE) != 0){
+                state = in.readBits(STATEBITS);
+            }
+            if((mask&SCORE) != 0){
+                kills = in.readVarInt();
+                deaths = in.readVarInt();
+            }
+            if((mask&KEYS) != 0){
+                keys = in.readBits(KEYBITS);
+                angle = in.readBits(ANGLEBITS);
+            }
+            if((mask&HIT) != 0){
+                hitCooldown = in.readVarInt();
+            }
+            if((mask&INPUT) != 0){
+                inputSequence = in.readVarInt()-1;
+            }
+        }
+        private void copy(SoldierState o){
+            x = o.x; y = o.y; vX = o.vX; vY = o.vY; hitCooldown = o.hitCooldown; angle = o.angle;
+            health = o.health; maxHealth = o.maxHealth; team = o.team; pickedClass = o.pickedClass; facingDirection = o.facingDirection;
+            animationID = o.animationID; bowDrawTime = o.bowDrawTime; kills = o.kills; deaths = o.deaths; state = o.state; keys = o.keys;
+            inputSequence = o.inputSequence; name = o.name;
+        }
+
+        @Override
+        public int changes(SoldierState base) {
+            if(base == null){
+                return ALL;
+            }
+            int mask = 0;
+            if(x != base.x || y != base.y) mask |= POS;
+            if(vX != base.vX || vY != base.vY) mask |= VEL;
+            if(health != base.health || maxHealth != base.maxHealth) mask |= HEALTH;
+            if(team != base.team || pickedClass != base.pickedClass || !name.equals(base.name)) mask |= INFO;
+            if(facingDirection != base.facingDirection || animationID != base.animationID || bowDrawTime != base.bowDrawTime) mask |= ANIM;
+            if(state != base.state) mask |= STATE;
+            if(kills != base.kills || deaths != base.deaths) mask |= SCORE;
+            if(keys != base.keys || angle != base.angle) mask |= KEYS;
+            if(hitCooldown != base.hitCooldown) mask |= HIT;
+            if(inputSequence != base.inputSequence) mask |= INPUT;
+            return mask;
+        }
+        void write(BitWriter out, int mask, WorldSnapshot snap){
+            if((mask&POS) != 0){
+                out.writeBits(x,snap.xBits);
+                out.writeBits(y,snap.yBits);
+            }
+            if((mask&VEL) != 0){
+                writeVel(out,vX);
+                writeVel(out,vY);
+            }
+            if((mask&HEALTH) != 0){
+                out.writeVarInt(health);
+                out.writeVarInt(maxHealth);
+            }
+            if((mask&INFO) != 0){
+                out.writeBits(team,1);
+                out.writeBits(pickedClass+1,2); // -1 before a class is picked
+                out.writeString(name);
+            }
+            if((mask&ANIM) != 0){
+                out.writeBits(facingDirection,1);
+                out.writeVarInt(animationID);
+                out.writeVarInt(bowDrawTime);
+            }
+            if((mask&STATE) != 0){
+                out.writeBits(state,STATEBITS);
+            }
+            if((mask&SCORE) != 0){
+                out.writeVarInt(kills);
+                out.writeVarInt(deaths);
+            }
+            if((mask&KEYS) != 0){
+                out.writeBits(keys,KEYBITS);
+                out.writeBits(angle,ANGLEBITS);
+            }
+            if((mask&HIT) != 0){
+                out.writeVarInt(hitCooldown);
+            }
+            if((mask&INPUT) != 0){
+                out.writeVarInt(inputSequence+1); // -1 until the server starts using the client's inputs
+            }
+        }
+        void apply(PlayerSoldier p){
+            p.setPos(unquantizePos(x),unquantizePos(y));
+            p.setvX(unquantizeVel(vX));
+            p.setvY(unquantizeVel(vY));
+            p.setMaxHealth(maxHealth);
+            p.setHealth(health);
+            p.setTeam(team);
+            p.setCurrentClass(pickedClass);
+            p.setName(name);
+            p.setFacingDirection(facingDirection);
+            p.setAnimationID(animationID);
+            p.setBowDrawTime(bowDrawTime);
+            p.setCanJump((state&CANJUMP) != 0);
+            p.setDrawingBow((state&DRAWINGBOW) != 0);
+            p.setSwinging((state&SWINGING) != 0);
+            p.setAlive((state&ALIVE) != 0);
+            p.setStabbing((state&STABBING) != 0);
+            p.setShielding((state&SHIELDING) != 0);
+            p.setShieldUp((state&SHIELDUP) != 0);
+            p.setDrawingShield((state&DRAWINGSHIELD) != 0);
+            for(int i = 0; i<p.collisions.length; i++){
+                p.collisions[i] = (state&(1<<(COLLISIONS+i))) != 0;
+            }
+            p.setKills(kills);
+            p.setDeaths(deaths);
+            p.setInput(keys,unquantizeAngle(angle));
+            p.setHitCooldown((float)hitCooldown/HITRES);
+            p.setInputSequence(inputSequence);
+        }
+
+        public float getX() {
+            return unquantizePos(x);
+        }
+
+        public float getY() {
+            return unquantizePos(y);
+        }
+
+        public int getTeam() {
+            return team;
+        }
+
+        public boolean isAlive() {
+            return (state&ALIVE) != 0;
+        }
+
+        public int getInputSequence() {
+            return inputSequence;
+        }
+    }
+
+    /**
+     * What the clients need to know about a Projectile
+     */
+    public static class ProjectileState implements EntityState<ProjectileState>{
+        static final int POS = 1, VEL = 2, INFO = 4, HIT = 8;
+        static final int ALL = 15;
+        static final int MASKBITS = 4;
+        int x, y, vX, vY, angle;
+        int projectileType, attackerTeam, caster, physicsParent;
+        boolean isHit, killedPlayer;
+
+        ProjectileState(Projectile proj, WorldSnapshot snap){
+            x = snap.quantizeX(proj.getX());
+            y = snap.quantizeY(proj.getY());
+            vX = quantizeVel(proj.getvX());
+            vY = quantizeVel(proj.getvY());
+            angle = quantizeAngle(proj.getAngle());
+            projectileType = proj.getProjectileType();
+            attackerTeam = proj.getAttackerTeam();
+            caster = proj.getCaster();
+            physicsParent = proj.getPhysicsParent();
+            isHit = proj.isHit();
+            killedPlayer = proj.isKilledPlayer();
+        }
+        ProjectileState(BitReader in, int mask, ProjectileState base, WorldSnapshot snap){
+            if(base != null){
+                x = base.x; y = base.y; vX = base.vX; vY = base.vY; angle = base.angle;
+                projectileType = base.projectileType; attackerTeam = base.attackerTeam; caster = base.caster; physicsParent = base.physicsParent;
+                isHit = base.isHit; killedPlayer = base.killedPlayer;
+            }
+            if((mask&POS) != 0){
+                x = in.readBits(snap.xBits);
+                y = in.readBits(snap.yBits);
+            }
+            if((mask&VEL) != 0){
+                vX = readVel(in);
+                vY = readVel(in);
+                angle = in.readBits(ANGLEBITS);
+            }
+            if((mask&INFO) != 0){
+                projectileType = in.readVarInt();
+                attackerTeam = in.readBits(1);
+                caster = in.readSignedVarInt();
+            }
+            if((mask&HIT) != 0){
+                physicsParent = in.readSignedVarInt();
+                isHit = in.readBoolean();
+                killedPlayer = in.readBoolean();
+            }
+        }
+
+        @Override
+        public int changes(ProjectileState base) {
+            if(base == null){
+                return ALL;
+            }
+            int mask = 0;
+            if(x != base.x || y != base.y) mask |= POS;
+            if(vX != base.vX || vY != base.vY || angle != base.angle) mask |= VEL;
+            if(projectileType != base.projectileType || attackerTeam != base.attackerTeam || caster != base.caster) mask |= INFO;
+            if(physicsParent != base.physicsParent || isHit != base.isHit || killedPlayer != base.killedPlayer) mask |= HIT;
+            return mask;
+        }
+        void write(BitWriter out, int mask, WorldSnapshot snap){
+            if((mask&POS) != 0){
+                out.writeBits(x,snap.xBits);
+                out.writeBits(y,snap.yBits);
+            }
+            if((mask&VEL) != 0){
+                writeVel(out,vX);
+                writeVel(out,vY);
+                out.writeBits(angle,ANGLEBITS);
+            }
+            if((mask&INFO) != 0){
+                out.writeVarInt(projectileType);
+                out.writeBits(attackerTeam,1);
+                out.writeSignedVarInt(caster);
+            }
+            if((mask&HIT) != 0){
+                out.writeSignedVarInt(physicsParent); // -1 until it hits someone
+                out.writeBoolean(isHit);
+                out.writeBoolean(killedPlayer);
+            }
+        }
+        /**
+         * @param to The projectile's state in a newer snapshot to blend its position and angle towards, or null
+         * @param alpha How far towards it to go
+         */
+        void apply(Projectile proj, ProjectileState to, float alpha){
+            float drawX = to==null?unquantizePos(x):lerpPos(x,to.x,alpha);
+            float drawY = to==null?unquantizePos(y):lerpPos(y,to.y,alpha);
+            float drawAngle = to==null?unquantizeAngle(angle):lerpAngle(angle,to.angle,alpha);
+            proj.setState(drawX,drawY,unquantizeVel(vX),unquantizeVel(vY),drawAngle,projectileType,attackerTeam,caster,physicsParent,isHit,killedPlayer);
+        }
+
+        public float getX() {
+            return unquantizePos(x);
+        }
+
+        public float getY() {
+            return unquantizePos(y);
+        }
+    }
+
+    /**
+     * What the clients need to know about a CaptureFlag
+     */
+    public static class FlagState implements EntityState<FlagState>{
+        static final int POS = 1, PARENT = 2;
+        static final int ALL = 3;
+        static final int MASKBITS = 2;
+        int x, y;
+        int physicsParent, facingDirection, captures;
+
+        FlagState(CaptureFlag flag, WorldSnapshot snap){
+            x = snap.quantizeX(flag.getxPos());
+            y = snap.quantizeY(flag.getyPos());
+            physicsParent = flag.getPhysicsParent();
+            facingDirection = flag.getFacingDirection();
+            captures = flag.getCaptures();
+        }
+        FlagState(BitReader in, int mask, FlagState base, WorldSnapshot snap){
+            if(base != null){
+                x = base.x; y = base.y; physicsParent = base.physicsParent; facingDirection = base.facingDirection; captures = base.captures;
+            }
+            if((mask&POS) != 0){
+                x = in.readBits(snap.xBits);
+                y = in.readBits(snap.yBits);
+            }
+            if((mask&PARENT) != 0){
+                physicsParent = in.readSignedVarInt();
+                facingDirection = in.readBits(1);
+                captures = in.readVarInt();
+            }
+        }
+
+        @Override
+        public int changes(FlagState base) {
+            if(base == null){
+                return ALL;
+            }
+            int mask = 0;
+            if(x != base.x || y != base.y) mask |= POS;
+            if(physicsParent != base.physicsParent || facingDirection != base.facingDirection || captures != base.captures) mask |= PARENT;
+            return mask;
+        }
+        void write(BitWriter out, int mask, WorldSnapshot snap){
+            if((mask&POS) != 0){
+                out.writeBits(x,snap.xBits);
+                out.writeBits(y,snap.yBits);
+            }
+            if((mask&PARENT) != 0){
+                out.writeSignedVarInt(physicsParent); // -1 when nobody is carrying it
+                out.writeBits(facingDirection,1);
+                out.writeVarInt(captures);
+            }
+        }
+        /**
+         * @param to The flag's state in a newer snapshot to blend its position towards, or null
+         * @param alpha How far towards it to go
+         */
+        void apply(CaptureFlag flag, FlagState to, float alpha){
+            boolean blend = to != null && to.captures == captures; // a captured flag goes straight home
+            flag.setState(blend?lerpPos(x,to.x,alpha):unquantizePos(x),blend?lerpPos(y,to.y,alpha):unquantizePos(y),physicsParent,facingDirection,captures);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package me.dumfing.server;
+
+import com.badlogic.gdx.utils.Array;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kryo serialization that can also send messages that were already serialized<br>
+ * A message sent to every client is encoded once with encode and the same bytes are copied into each connection's buffer,
+ * instead of Kryo serializing the whole object again for every connection. The bytes are exactly what Kryo would have
+ * written so the clients read them normally<br>
+ * Kryonet copies the bytes into the connection's buffer before sendTCP or sendUDP returns, so once every connection has
+ * been sent a message it can be given back with recycle and its bytes are reused by a later encode
+ */
+public class BroadcastSerialization extends KryoSerialization {
+    public static final int OBJECTBUFFERSIZE = 2048; // the same as kryonet's default, nothing bigger can be sent anyway
+    private final Output encodeOut = new Output(); // writes straight into an Encoded's bytes, only touched while holding the lock
+    private final Array<Encoded> spare = new Array<Encoded>(); // ones given back with recycle, only touched while holding the lock
+
+    /**
+     * Serializes a message so it can be sent to any number of connections
+     * @param o The message, its class must be registered
+     * @return Something that can be passed to sendTCP or sendUDP on any connection using this serialization
+     */
+    public synchronized Encoded encode(Object o){
+        Encoded encoded = spare.size==0?new Encoded():spare.pop();
+        encodeOut.setBuffer(encoded.bytes,OBJECTBUFFERSIZE);
+        getKryo().writeClassAndObject(encodeOut,o);
+        encoded.length = encodeOut.position();
+        encoded.message = o;
+        return encoded;
+    }
+
+    /**
+     * Gives back a message from encode so its bytes can be reused, it mustn't be sent again after this
+     * @param encoded The message, anything that isn't from encode is ignored
+     */
+    public synchronized void recycle(Object encoded){
+        if(encoded instanceof Encoded){
+            ((Encoded) encoded).message = null;
+            spare.add((Encoded) encoded);
+        }
+    }
+
+    @Override
+    public synchronized void write(Connection connection, ByteBuffer buffer, Object object) {
+        if(object instanceof Encoded){
+            buffer.put(((Encoded) object).bytes,0,((Encoded) object).length);
+        }
+        else{
+            super.write(connection,buffer,object);
+        }
+    }
+
+    /**
+     * A message that has already been serialized
+     */
+    public static class Encoded{
+        private final byte[] bytes = new byte[OBJECTBUFFERSIZE];
+        private int length;
+        private Object message;
+        private Encoded(){}
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return message.toString(); // kryonet logs what it sends
+        }
+    }
+}
@@ -16,6 +16,7 @@ import me.dumfing.menus.Menu;
 import me.dumfing.menus.ServerInfoMenu;
 import me.dumfing.menus.ServerRunningGameMenu;
 import me.dumfing.multiplayerTools.AnimationManager;
+import me.dumfing.multiplayerTools.ConcurrentGameWorld;
 import me.dumfing.multiplayerTools.WorldMap;
 
 import java.util.HashSet;
@@ -33,9 +34,10 @@ public class CoffeeServer extends ApplicationAdapter implements InputProcessor{
         GAMELOBBY,
         RUNNINGGAME;
     }
+    MatchHost host;
     MainServer sv;
     Scanner kb = new Scanner(System.in);
-    public static ServerState svState = ServerState.LOADING;
+    public static volatile ServerState svState = ServerState.LOADING;
     SpriteBatch batch;
     ShapeRenderer shapeRenderer;
     Menu askConfig;
@@ -45,9 +47,7 @@ public class CoffeeServer extends ApplicationAdapter implements InputProcessor{
     LoadingMenu loadingMenu;
     ServerRunningGameMenu serverRunningMenu;
     ServerInfoMenu serverInfo;
-    ServerGameInstance instance;
-    public static HashSet<Integer> redTeamMembers = new HashSet<Integer>();
-    public static HashSet<Integer> bluTeamMembers = new HashSet<Integer>();
+    TickScheduler ticker; // runs the match at a fixed rate so the game doesn't depend on how fast the window is drawn
     @Override
     public void create() {
         batch = new SpriteBatch();
@@ -107,17 +107,16 @@ public class CoffeeServer extends ApplicationAdapter implements InputProcessor{
                 if(Gdx.input.getInputProcessor()!=serverInfo){
                     serverInfo.setInputProcessor();
                 }
-                serverInfo.update(sv,redTeamMembers.size(),bluTeamMembers.size(),sv.getMaxPlayers());
+                serverInfo.update(sv,sv.getRedTeamMembers().size(),sv.getBluTeamMembers().size(),sv.getMaxPlayers());
                 serverInfo.draw(batch,shapeRenderer);
+                if(sv.getState() == ServerState.RUNNINGGAME){ // the match's countdown finished
+                    svState = ServerState.RUNNINGGAME;
+                }
                 break;
             case RUNNINGGAME:
                 if(Gdx.input.getInputProcessor() != serverRunningMenu){
                     serverRunningMenu.setInputProcessor();
-                    instance = new ServerGameInstance(sv.getPlayers());
-                    instance.setWorldMap(new WorldMap(MenuTools.mGTR("pixmapTest.png",manager),MenuTools.mGTR("pixmapVisual.png",manager)));
-                    //instance.world.setCollisionBoxes(Gdx.files.internal("pixmapTest.png"));
                 }
-                instance.update(sv);
                 serverRunningMenu.updateMenuInfo(sv);
                 serverRunningMenu.update();
                 serverRunningMenu.draw(batch,shapeRenderer);
@@ -125,6 +124,16 @@ public class CoffeeServer extends ApplicationAdapter implements InputProcessor{
         }
     }
 
+    @Override
+    public void dispose() {
+        if(ticker != null){
+            ticker.stop();
+        }
+        if(host != null){
+            host.stop();
+        }
+    }
+
     @Override
     public boolean keyDown(int keycode) {
         return false;
@@ -197,9 +206,14 @@ public class CoffeeServer extends ApplicationAdapter implements InputProcessor{
                         serverFormError("Max players must be greater than 0!",errorText);
                     }
                     else{
-                        sv = new MainServer(serverNameField.getText(),numplayers);
-                        sv.start();
+                        host = new MatchHost();
+                        host.setMapName("pixmapTest.png");
+                        // the map has to be made here since its textures can only be loaded on the render thread
+                        sv = host.addMatch(0,serverNameField.getText(),numplayers,new WorldMap(MenuTools.mGTR("pixmapTest.png",manager),MenuTools.mGTR("pixmapVisual.png",manager)),ConcurrentGameWorld.BASE_TICKRATE);
+                        host.start();
                         svState = ServerState.GAMELOBBY;
+                        ticker = new TickScheduler(host,ConcurrentGameWorld.BASE_TICKRATE);
+                        ticker.start("Server tick");
                         Gdx.input.setInputProcessor(null);
                     }
                 }
@@ -0,0 +1,96 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.MultiplayerTools;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers server browser queries on DISCOVERYPORT with a summary of every room, so a client can fill its list from one UDP
+ * broadcast without connecting to anyone<br>
+ * The reply is serialized when the host hands over summaries that changed, and the same bytes are sent to everyone who
+ * asks, so a lot of clients refreshing at once costs the server almost nothing. It's one datagram no bigger than the
+ * padded query, and each address is answered once per REPLYINTERVAL at most, so someone spoofing queries from another
+ * address can't use the server to flood it
+ */
+public class DiscoveryResponder implements Runnable {
+    private static final long REPLYINTERVAL = 250000000L; // nanoseconds before the same address is answered again
+    private static final int ASKERSLOTS = 1024; // how many addresses are told apart, ones that share a slot share a limit
+    private DatagramSocket socket;
+    private volatile byte[] reply; // null until the first summaries are set
+    private List<MultiplayerTools.ServerSummary> written; // what reply was written from
+    private final long[] lastReply = new long[ASKERSLOTS]; // when each slot was last answered, only touched by the responder thread
+
+    /**
+     * Starts answering queries on a background thread
+     * @throws IOException if the port can't be used, usually because another server on this computer has it
+     */
+    public void start() throws IOException {
+        socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(MultiplayerTools.DISCOVERYPORT));
+        Arrays.fill(lastReply,System.nanoTime()-REPLYINTERVAL);
+        Thread thread = new Thread(this,"Discovery responder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop(){
+        if(socket != null){
+            socket.close();
+        }
+    }
+
+    /**
+     * Sets what's sent to anyone who asks, it's only written again if a summary changed
+     * @param summaries One for each room
+     */
+    public void setSummaries(List<MultiplayerTools.ServerSummary> summaries){
+        if(written != null && sameSummaries(written,summaries)){
+            return;
+        }
+        written = summaries;
+        reply = MultiplayerTools.ServerSummary.writeDiscoveryReply(summaries);
+    }
+
+    private static boolean sameSummaries(List<MultiplayerTools.ServerSummary> a, List<MultiplayerTools.ServerSummary> b){
+        if(a.size() != b.size()){
+            return false;
+        }
+        for(int i = 0; i<a.size(); i++){
+            if(!a.get(i).sameAs(b.get(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[MultiplayerTools.ServerSummary.DISCOVERYSIZE+1]; // one more, so a bigger datagram doesn't look like a query
+        DatagramPacket query = new DatagramPacket(buffer,buffer.length);
+        while(!socket.isClosed()){
+            try {
+                query.setLength(buffer.length);
+                socket.receive(query);
+                byte[] answer = reply;
+                if(answer != null && MultiplayerTools.ServerSummary.isDiscoveryQuery(query.getData(),query.getLength())){
+                    int slot = query.getAddress().hashCode()&(ASKERSLOTS-1);
+                    long now = System.nanoTime();
+                    if(now-lastReply[slot] >= REPLYINTERVAL){ // a client's broadcasts on each of its interfaces all arrive at once, one answer does
+                        lastReply[slot] = now;
+                        socket.send(new DatagramPacket(answer,answer.length,query.getSocketAddress()));
+                    }
+                }
+            } catch (IOException e) {
+                if(!socket.isClosed()){ // closing the socket is how it's stopped
+                    System.err.println("Discovery responder: "+e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package me.dumfing.server;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Pixmap;
+import me.dumfing.multiplayerTools.AnimationManager;
+import me.dumfing.multiplayerTools.WorldMap;
+
+/**
+ * A server that runs without a window or GL context<br>
+ * Does the same thing as CoffeeServer but gets its settings from a ServerConfig instead of a menu and never draws anything.
+ * It can host several matches at once, they're all run by one TickScheduler and render is only used to report when the
+ * server can't keep up
+ */
+public class HeadlessServer extends ApplicationAdapter {
+    private ServerConfig config;
+    private MatchHost host;
+    private TickScheduler ticker;
+    private WorldMap worldMap;
+    private long reportedOverruns = 0;
+    private long reportedSkips = 0;
+
+    public HeadlessServer(ServerConfig config){
+        this.config = config;
+    }
+
+    @Override
+    public void create() {
+        // only the collision map and animation timings are needed, no textures are created
+        AnimationManager.initHeadless(Gdx.files.internal(config.getSpriteSheetDir()));
+        worldMap = new WorldMap(new Pixmap(Gdx.files.internal(config.getMapFile())));
+        host = new MatchHost(config.getWorkers());
+        host.setMapName(config.getMapFile());
+        for(int i = 0; i<config.getMatches(); i++){
+            String name = config.getMatches()==1?config.getServerName():config.getServerName()+" "+(i+1);
+            MainServer sv = host.addMatch(i,name,config.getMaxPlayers(),worldMap,config.getTickRate());
+            sv.setJitterDepth(config.getJitterDepth());
+            sv.setByteBudget(config.getByteBudget());
+        }
+        host.start();
+        ticker = new TickScheduler(host,config.getTickRate(),config.getMaxCatchUp());
+        ticker.start("Server tick");
+        System.out.printf("Started %s with %d matches for %d players at %dhz on %d workers\n",config.getServerName(),config.getMatches(),config.getMaxPlayers(),config.getTickRate(),config.getWorkers());
+    }
+
+    @Override
+    public void render() {
+        if(ticker.getOverruns() != reportedOverruns || ticker.getSkippedTicks() != reportedSkips){
+            reportedOverruns = ticker.getOverruns();
+            reportedSkips = ticker.getSkippedTicks();
+            System.out.println("Server falling behind: "+ticker);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if(ticker != null){
+            ticker.stop();
+        }
+        if(host != null){
+            host.stop();
+        }
+        if(worldMap != null){
+            worldMap.getCollisionMap().dispose();
+        }
+    }
+}
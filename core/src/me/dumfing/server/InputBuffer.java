@@ -0,0 +1,195 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.MultiplayerTools;
+
+/**
+ * Holds one client's inputs in order of their sequence number so the server uses exactly one of them each tick<br>
+ * Inputs are sent over UDP so they can arrive late, twice, out of order or in bursts. They're put in a ring by sequence
+ * number and the server doesn't start reading until jitterDepth of them are waiting, that way a packet that's a little
+ * late is still there by the time it's needed. Each update also repeats the client's last few inputs, so one that was lost
+ * is usually filled in by the next update. If an input still never shows up the last one is used again, but only for
+ * MAXREPEATS ticks in a row before every button is let go so a lost key release can't leave someone running forever.
+ * After that the buffer fills up again before reading more. A client that hitched or had its window dragged sends
+ * inputs the server has already gone past, the reading moves back to them instead of treating them all as late
+ */
+public class InputBuffer {
+    public static final int DEFAULT_JITTERDEPTH = 2;
+    private static final int CAPACITY = 32; // must be a power of 2
+    public static final int MAXREPEATS = 8; // ticks the last input is held for when inputs stop arriving
+    private final int[] slotButtons = new int[CAPACITY];
+    private final short[] slotAims = new short[CAPACITY];
+    private final int[] slotSeqs = new int[CAPACITY];
+    private final int[] slotTicks = new int[CAPACITY];
+    private final int[] slotViewTicks = new int[CAPACITY];
+    private int jitterDepth;
+    private boolean started = false;
+    private int nextSeq = 0; // the next sequence number to be used
+    private int highestSeq = -1; // the highest sequence number received
+    private int lastClientTick = -1; // the client's tick for the input that was used last
+    private int viewTick = -1; // the server tick the client was showing for the input that was used last
+    private int lastSequence = -1; // the sequence number of the tick that was last polled, sent back so the client knows which inputs the server has run
+    private boolean hasInput = false; // whether anything has been used yet
+    private int buttons; // the input for the tick that was last polled
+    private short aim;
+    private int repeats = 0; // ticks in a row that the last input has been reused
+    //stats
+    private int late = 0; // arrived after its tick was already run
+    private int missing = 0; // wasn't there when its tick was run
+    private int resyncs = 0; // times the buffer got so far ahead that it had to jump forward
+    private int recovered = 0; // inputs that only arrived as a repeat in a later update
+
+    public InputBuffer(){
+        this(DEFAULT_JITTERDEPTH);
+    }
+
+    /**
+     * @param jitterDepth How many ticks of input to wait for before starting, more copes with worse connections but adds delay
+     */
+    public InputBuffer(int jitterDepth){
+        this.jitterDepth = Math.max(0,Math.min(CAPACITY/2,jitterDepth));
+        for(int i = 0; i<CAPACITY; i++){
+            slotSeqs[i] = -1;
+        }
+    }
+
+    /**
+     * Adds the inputs in an update received from the client, ones that are already here or already used are ignored
+     * @param update The update, the sequence numbers of its inputs decide where they go
+     */
+    public void add(MultiplayerTools.ClientKeysUpdate update){
+        int newest = update.getSequence();
+        if(highestSeq != -1 && newest < nextSeq){ // even its newest tick was already read
+            if(newest > highestSeq){ // but it's new, the client fell behind the server, start reading from it again
+                nextSeq = Math.max(highestSeq+1,newest-jitterDepth);
+                resyncs++;
+            }
+            else if(!started && newest > lastSequence){ // arrived before the one that was first, it hasn't been read yet
+                nextSeq = newest;
+            }
+            else{
+                late++;
+                return;
+            }
+        }
+        if(!started && highestSeq == -1){
+            nextSeq = newest; // start from whatever the client sent first
+        }
+        if(newest >= nextSeq+CAPACITY){ // way ahead of what we're reading, the client must have stalled or reconnected
+            nextSeq = newest-jitterDepth;
+            resyncs++;
+        }
+        for(int i = update.getCount()-1; i>=0; i--){ // oldest first
+            int seq = newest-i;
+            int slot = seq&(CAPACITY-1);
+            if(seq < nextSeq || slotSeqs[slot] == seq){ // already used or already here
+                continue;
+            }
+            if(i > 0){ // the update it was first sent in never showed up
+                recovered++;
+            }
+            slotButtons[slot] = update.getButtons(i);
+            slotAims[slot] = update.getAim(i);
+            slotSeqs[slot] = seq;
+            slotTicks[slot] = update.getTick()-i; // the client sends one input per tick
+            slotViewTicks[slot] = update.getViewTick()<0?-1:update.getViewTick()-i; // and its view moves forward one tick per tick
+        }
+        if(newest > highestSeq){
+            highestSeq = newest;
+        }
+    }
+
+    /**
+     * Takes the input for this tick, should be called once every tick. The input is then read with getButtons and getMouseAngle
+     * @return Whether there's an input to use, false if nothing has arrived yet
+     */
+    public boolean poll(){
+        if(!started){
+            if(highestSeq-nextSeq+1 <= jitterDepth){
+                return hasInput; // still filling up
+            }
+            started = true;
+        }
+        if(highestSeq-nextSeq > jitterDepth*2+1){ // too far behind the client, skip ahead so the delay doesn't keep growing
+            nextSeq = highestSeq-jitterDepth;
+            resyncs++;
+        }
+        int slot = nextSeq&(CAPACITY-1);
+        if(slotSeqs[slot] == nextSeq){
+            buttons = slotButtons[slot];
+            aim = slotAims[slot];
+            lastClientTick = slotTicks[slot];
+            viewTick = slotViewTicks[slot];
+            hasInput = true;
+            repeats = 0;
+        }
+        else{
+            missing++; // keep holding whatever was held last
+            repeats++;
+            if(repeats > MAXREPEATS){ // the client has gone quiet, don't leave its keys held down
+                buttons = 0;
+                started = false; // and wait for the buffer to fill again once it's back
+            }
+        }
+        lastSequence = nextSeq++;
+        return hasInput;
+    }
+
+    /**
+     * @return The buttons held for the tick that was last polled, bit n is set if MultiplayerTools.Keys n is held
+     */
+    public int getButtons() {
+        return buttons;
+    }
+
+    /**
+     * @return Where the client was aiming for the tick that was last polled, in degrees
+     */
+    public float getMouseAngle() {
+        return MultiplayerTools.unquantizeAim(aim);
+    }
+
+    /**
+     * @return How many inputs are waiting to be used
+     */
+    public int size(){
+        return Math.max(0,highestSeq-nextSeq+1);
+    }
+
+    public int getJitterDepth() {
+        return jitterDepth;
+    }
+
+    /**
+     * @return The sequence number of the tick that was last polled, whether its input arrived or not. -1 before the first
+     */
+    public int getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The server tick the client was showing everyone else at for the input that was last polled, -1 if it isn't known
+     */
+    public int getViewTick() {
+        return viewTick;
+    }
+
+    public int getLastClientTick() {
+        return lastClientTick;
+    }
+
+    public int getLate() {
+        return late;
+    }
+
+    public int getMissing() {
+        return missing;
+    }
+
+    public int getResyncs() {
+        return resyncs;
+    }
+
+    public int getRecovered() {
+        return recovered;
+    }
+}
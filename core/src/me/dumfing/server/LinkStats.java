@@ -0,0 +1,191 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.WorldFrame;
+import me.dumfing.multiplayerTools.WorldSnapshot;
+
+/**
+ * What the server knows about the connection to one client, worked out from the world frames sent to it and the acks
+ * that come back, and how often that client should be sent frames because of it<br>
+ * The round trip time is how long a frame takes to be acked. A frame that's skipped over by a newer ack was lost. When
+ * frames are being lost, the round trip time climbs well above the lowest it's been (packets queueing up somewhere), or
+ * the frames would go over the byte budget, the client is sent fewer frames. Once the link has been fine for a while it
+ * goes back up one step at a time. Frames also get smaller on a tight budget since the optional parts wait
+ */
+public class LinkStats {
+    public static final int DEFAULT_BYTEBUDGET = 8000; // bytes per second of world frames for each client, 64 kbit/s
+    public static final int MAXSKIP = 4; // the slowest a client is sent frames is one of every MAXSKIP
+    static final int MINFRAMEBYTES = 256; // frames are never capped smaller than this
+    private static final float SMOOTHING = 0.1f; // how much each new sample moves the averages
+    private static final float BADLOSS = 0.1f; // this much loss means the link can't keep up
+    private static final float QUEUEDELAY = 0.1f; // seconds of round trip time above the lowest that means packets are piling up
+    private static final float RECOVERTIME = 2; // seconds the link has to be fine before it's sent more frames again
+    private final int[] sentSeqs = new int[WorldSnapshot.HISTORY];
+    private final long[] sentTimes = new long[WorldSnapshot.HISTORY];
+    private int byteBudget;
+    private int lastAcked = -1;
+    private float rtt = -1; // seconds, -1 until the first ack
+    private float minRtt = -1;
+    private float loss = 0; // fraction of frames lost
+    private float frameBytes = 0; // average size of the frames sent
+    private long rateWindowStart = -1; // when the bytes in the current second started being counted
+    private int rateWindowBytes = 0;
+    private float bytesPerSecond = 0; // bytes sent in the last whole second
+    private int skip = 1; // send one of every skip frames
+    private int framesSkipped = 0; // frames not sent since the last one that was
+    private long lastChange = 0; // when skip was last changed
+    private long lastBad = 0; // when the link was last found to be struggling
+    //stats
+    private int framesSent = 0;
+    private int framesLost = 0;
+
+    public LinkStats(){
+        this(DEFAULT_BYTEBUDGET);
+    }
+
+    /**
+     * @param byteBudget Bytes per second of world frames the client can be sent
+     */
+    public LinkStats(int byteBudget){
+        this.byteBudget = Math.max(MINFRAMEBYTES,byteBudget);
+        lastChange = lastBad = System.nanoTime();
+        for(int i = 0; i<sentSeqs.length; i++){
+            sentSeqs[i] = -1;
+        }
+    }
+
+    /**
+     * Should be called for every frame the server makes
+     * @return Whether this client should be sent it
+     */
+    public boolean shouldSend(){
+        if(++framesSkipped >= skip){
+            framesSkipped = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param framesPerSecond How many frames a second the server makes
+     * @return The most bytes a frame sent to this client should take to stay under the budget
+     */
+    public int getMaxFrameBytes(float framesPerSecond){
+        int fit = Math.round(byteBudget*skip/framesPerSecond);
+        return Math.max(MINFRAMEBYTES,Math.min(WorldFrame.MAXFRAMEBYTES,fit));
+    }
+
+    /**
+     * Records a frame sent to this client
+     * @param sequence The frame's sequence number
+     * @param bytes How big it was
+     * @param now System.nanoTime() when it was sent
+     */
+    public void frameSent(int sequence, int bytes, long now){
+        int slot = sequence%sentSeqs.length;
+        sentSeqs[slot] = sequence;
+        sentTimes[slot] = now;
+        frameBytes = framesSent==0?bytes:frameBytes+(bytes-frameBytes)*SMOOTHING;
+        framesSent++;
+        if(rateWindowStart == -1){
+            rateWindowStart = now;
+        }
+        rateWindowBytes += bytes;
+        if(now-rateWindowStart >= 1000000000L){
+            bytesPerSecond = rateWindowBytes*1e9f/(now-rateWindowStart);
+            rateWindowStart = now;
+            rateWindowBytes = 0;
+        }
+    }
+
+    /**
+     * Records that the client said it has a frame
+     * @param sequence The newest frame the client has
+     * @param now System.nanoTime() when the ack arrived
+     */
+    public void frameAcked(int sequence, long now){
+        if(sequence <= lastAcked){
+            return;
+        }
+        int slot = sequence%sentSeqs.length;
+        if(sentSeqs[slot] == sequence){
+            float sample = (now-sentTimes[slot])/1e9f;
+            rtt = rtt<0?sample:rtt+(sample-rtt)*SMOOTHING;
+            minRtt = minRtt<0?sample:Math.min(minRtt,sample);
+        }
+        int lost = 0;
+        for(int s = Math.max(lastAcked+1,sequence-sentSeqs.length+1); s<sequence; s++){
+            if(sentSeqs[s%sentSeqs.length] == s){ // sent to this client but never acked, a newer one got there first
+                lost++;
+            }
+        }
+        framesLost += lost;
+        loss += ((float)lost/(lost+1)-loss)*SMOOTHING;
+        lastAcked = sequence;
+    }
+
+    /**
+     * Decides how often the client is sent frames from how the link has been doing, should be called before every send
+     * @param now System.nanoTime()
+     * @param framesPerSecond How many frames a second the server makes
+     */
+    public void adapt(long now, float framesPerSecond){
+        boolean overBudget = frameBytes*framesPerSecond/skip > byteBudget;
+        boolean queueing = rtt >= 0 && rtt > minRtt+QUEUEDELAY;
+        if(loss > BADLOSS || queueing || overBudget){
+            lastBad = now;
+            float wait = Math.max(rtt,0.25f); // give the last change time to show up in the acks first
+            if(skip < MAXSKIP && now-lastChange > wait*1e9f){
+                skip++;
+                lastChange = now;
+            }
+        }
+        else if(skip > 1 && now-lastBad > RECOVERTIME*1e9f && now-lastChange > RECOVERTIME*1e9f && frameBytes*framesPerSecond/(skip-1) <= byteBudget){
+            skip--;
+            lastChange = now;
+        }
+    }
+
+    /**
+     * @return The smoothed round trip time in seconds, -1 before the first ack
+     */
+    public float getRtt() {
+        return rtt;
+    }
+
+    /**
+     * @return The smoothed fraction of frames lost, 0 to 1
+     */
+    public float getLoss() {
+        return loss;
+    }
+
+    /**
+     * @return Bytes of world frames sent to the client in the last second
+     */
+    public float getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return The client is sent one of every this many frames
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    public int getByteBudget() {
+        return byteBudget;
+    }
+
+    public void setByteBudget(int byteBudget) {
+        this.byteBudget = Math.max(MINFRAMEBYTES,byteBudget);
+    }
+
+    public int getFramesSent() {
+        return framesSent;
+    }
+
+    public int getFramesLost() {
+        return framesLost;
+    }
+}
@@ -1,164 +1,358 @@
 package me.dumfing.server;
 
 import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.IntMap;
 import com.esotericsoftware.kryonet.Connection;
-import com.esotericsoftware.kryonet.Listener;
-import com.esotericsoftware.kryonet.Server;
+import me.dumfing.multiplayerTools.ConcurrentGameWorld;
+import me.dumfing.multiplayerTools.EntityRegistry;
 import me.dumfing.multiplayerTools.MultiplayerTools;
 import me.dumfing.multiplayerTools.PlayerSoldier;
 
-import java.io.IOException;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * Created by dumpl on 4/18/2017.
+ * Created by dumpl on 4/18/2017.<br>
+ * Handles the people connected to one match. The network connection itself belongs to a MatchHost which passes each
+ * match only the connections and messages for its room<br>
+ * Messages arrive on the network threads but are only queued there, processCommands applies them on the tick thread
  */
 public class MainServer {
-    private Server server;
-    private boolean isRunning;
+    private int roomID;
     private int maxPlayers;
     private int numPlayers = 0;
     private String svName;
-    HashMap<Integer, PlayerSoldier> players;
+    private int tickRate = ConcurrentGameWorld.BASE_TICKRATE;
+    private volatile CoffeeServer.ServerState state = CoffeeServer.ServerState.GAMELOBBY;
+    EntityRegistry<PlayerSoldier> players;
+    HashSet<Integer> redTeamMembers = new HashSet<Integer>();
+    HashSet<Integer> bluTeamMembers = new HashSet<Integer>();
     LinkedList<Connection> validConnections = new LinkedList<Connection>();
+    IntMap<InputBuffer> inputs = new IntMap<InputBuffer>(); // connection id -> the inputs it has sent
+    IntIntMap ackedFrames = new IntIntMap(); // connection id -> newest world frame it has received
+    IntMap<LinkStats> links = new IntMap<LinkStats>(); // connection id -> how its connection is doing
+    IntMap<MultiplayerTools.ClientViewSize> viewSizes = new IntMap<MultiplayerTools.ClientViewSize>(); // connection id -> how much of the world it shows
+    private int byteBudget = LinkStats.DEFAULT_BYTEBUDGET;
+    private int jitterDepth = InputBuffer.DEFAULT_JITTERDEPTH;
+    private BroadcastSerialization serialization; // null if the connections don't use one, messages are then serialized for each client
     LinkedList<ServerEvent> events = new LinkedList<ServerEvent>();
+    private final ConcurrentLinkedQueue<ServerCommand> commands = new ConcurrentLinkedQueue<ServerCommand>(); // filled by the network threads, emptied by the tick
     public MainServer(final String svName, final int maxPlayers){
+        this(svName,maxPlayers,0);
+    }
+    public MainServer(final String svName, final int maxPlayers, int roomID){
         this.maxPlayers = maxPlayers;
         this.svName = svName;
-        this.players = new HashMap<Integer, PlayerSoldier>();
-        this.server = new Server();
-        MultiplayerTools.register(this.server);
-        try {
-            this.server.bind(MultiplayerTools.TCPPORT,MultiplayerTools.UDPPORT);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        this.server.addListener(new Listener.ThreadedListener(new Listener(){
-            @Override
-            public void connected(Connection connection) {
-                System.out.printf("Client Connected! %d\n",connection.getID());
-                connection.updateReturnTripTime();
-                super.connected(connection);
+        this.roomID = roomID;
+        this.players = new EntityRegistry<PlayerSoldier>();
+    }
 
-            }
+    /**
+     * Called by the MatchHost when a client that was in this room disconnects, safe to call from any thread
+     */
+    public void disconnected(Connection connection) {
+        commands.add(new ServerCommand(ServerCommand.CommandType.DISCONNECTED,connection,null));
+    }
 
-            @Override
-            public void disconnected(Connection connection) {
-                System.out.printf("Client Disconnected %d\n",connection.getID());
-                if(validConnections.contains(connection)){
-                    validConnections.remove(connection);
-                    players.remove(connection.getID());
-                    secureSendAll(new MultiplayerTools.ServerDetailedSummary(CoffeeServer.redTeamMembers.size(),CoffeeServer.bluTeamMembers.size(),players));
-                }
-                if(CoffeeServer.redTeamMembers.contains(connection.getID())){
-                    CoffeeServer.redTeamMembers.remove(connection.getID());
-                }
-                else if(CoffeeServer.bluTeamMembers.contains(connection.getID())){
-                    CoffeeServer.bluTeamMembers.remove(connection.getID());
+    /**
+     * Called by the MatchHost for every message from a client in this room, safe to call from any thread
+     */
+    public void received(Connection connection, Object o) {
+        commands.add(new ServerCommand(ServerCommand.CommandType.RECEIVED,connection,o));
+    }
+
+    /**
+     * Applies everything the clients have sent since the last call, should only be called from the tick thread<br>
+     * A message that can't be applied is dropped on its own, so one bad client can't cost everyone else their tick
+     */
+    public void processCommands(){
+        ServerCommand command;
+        while((command = commands.poll()) != null){
+            try{
+                switch (command.getCommandType()){
+                    case RECEIVED:
+                        handleMessage(command.getConnection(),command.getMessage(),command.getReceivedTime());
+                        break;
+                    case DISCONNECTED:
+                        handleDisconnect(command.getConnection());
+                        break;
                 }
+            }
+            catch (RuntimeException e){
+                System.err.println("Dropped a message from client "+command.getConnection().getID()+": "+e);
+            }
+        }
+    }
+    private void handleDisconnect(Connection connection) {
+        System.out.printf("Client Disconnected %d\n",connection.getID());
+        if(validConnections.contains(connection)){
+            validConnections.remove(connection);
+            players.remove(connection.getID());
+            inputs.remove(connection.getID());
+            ackedFrames.remove(connection.getID(),-1);
+            links.remove(connection.getID());
+            viewSizes.remove(connection.getID());
+            secureSendAll(new MultiplayerTools.ServerDetailedSummary(redTeamMembers.size(),bluTeamMembers.size(),players));
+        }
+        if(redTeamMembers.contains(connection.getID())){
+            redTeamMembers.remove(connection.getID());
+        }
+        else if(bluTeamMembers.contains(connection.getID())){
+            bluTeamMembers.remove(connection.getID());
+        }
+    }
 
-                super.disconnected(connection);
+    private void handleMessage(Connection connection, Object o, long receivedTime) {
+        //We will be using a request and response system rather than periodically broadcasting to all clients as there's no easy way to have the server periodically update the clients
+        if(o instanceof MultiplayerTools.ClientInfoRequest){
+            System.out.println("received serverInfoRequest");
+            connection.sendTCP(getSummary(connection));
+        }
+        else if(o instanceof  MultiplayerTools.ClientConnectionRequest){
+            System.out.println("received ConnectionRequest");
+            MultiplayerTools.ClientConnectionRequest temp = (MultiplayerTools.ClientConnectionRequest) o;
+            MultiplayerTools.ServerResponse response;
+            if(numPlayers>=maxPlayers){
+                //Too many people
+                response = new MultiplayerTools.ServerResponse(MultiplayerTools.ServerResponse.ResponseCode.SERVERFULL);
             }
+            else if(false){
+                //just in case anything needs to be added
+            }
+            else{
+                //Successful Connection
+                validConnections.add(connection);
+                players.put(connection.getID(),new PlayerSoldier(new Rectangle(58,30,1,2),0,temp.playerName));
+                inputs.put(connection.getID(),new InputBuffer(jitterDepth));
+                links.put(connection.getID(),new LinkStats(byteBudget));
+                events.add(new ServerEvent(ServerEvent.EventType.PLAYERCONNECTED,connection.getID()));
+                response = new MultiplayerTools.ServerResponse(MultiplayerTools.ServerResponse.ResponseCode.CLIENTCONNECTED);
+                quickSendAll(new MultiplayerTools.ServerDetailedSummary(redTeamMembers.size(),bluTeamMembers.size(),players));
 
-            @Override
-            public void received(Connection connection, Object o) {
-                //We will be using a request and response system rather than periodically broadcasting to all clients as there's no easy way to have the server periodically update the clients
-                System.out.println("Received "+o.getClass().getSimpleName());
-                if(o instanceof MultiplayerTools.ClientInfoRequest){
-                    System.out.println("received serverInfoRequest");
-                    connection.sendTCP(new MultiplayerTools.ServerSummary(players.size(),maxPlayers,connection.getReturnTripTime(),svName.substring(0,Math.min(16,svName.length()))));
-                    //connection.sendTCP(new MultiplayerTools.ServerSummary(numPlayers,maxPlayers,connection.getReturnTripTime(),svName.substring(0,Math.min(16,svName.length()))));
-                }
-                else if(o instanceof  MultiplayerTools.ClientConnectionRequest){
-                    System.out.println("received ConnectionRequest");
-                    MultiplayerTools.ClientConnectionRequest temp = (MultiplayerTools.ClientConnectionRequest) o;
-                    MultiplayerTools.ServerResponse response;
-                    if(numPlayers>=maxPlayers){
-                        //Too many people
-                        response = new MultiplayerTools.ServerResponse(MultiplayerTools.ServerResponse.ResponseCode.SERVERFULL);
-                    }
-                    else if(false){
-                        //just in case anything needs to be added
-                    }
-                    else{
-                        //Successful Connection
-                        validConnections.add(connection);
-                        players.put(connection.getID(),new PlayerSoldier(new Rectangle(58,30,1,2),0,temp.playerName));
-                        events.add(new ServerEvent(ServerEvent.EventType.PLAYERCONNECTED,connection.getID()));
-                        response = new MultiplayerTools.ServerResponse(MultiplayerTools.ServerResponse.ResponseCode.CLIENTCONNECTED);
-                        quickSendAll(new MultiplayerTools.ServerDetailedSummary(CoffeeServer.redTeamMembers.size(),CoffeeServer.bluTeamMembers.size(),players));
-
-                    }
-                    connection.sendTCP(response);
-                    if(CoffeeServer.svState == CoffeeServer.ServerState.RUNNINGGAME){
-                        connection.sendTCP(new MultiplayerTools.ServerGameStarted());
-                    }
-                    System.out.println(temp.playerName);
-                }
-                else if(o instanceof MultiplayerTools.ClientPickedTeam){
-                    System.out.println("Received ClientPickedTeam");
-                    MultiplayerTools.ClientPickedTeam temp = (MultiplayerTools.ClientPickedTeam)o;
-                    //(temp.getPicked()==0?CoffeeServer.redTeamMembers:CoffeeServer.bluTeamMembers).add(connection); // add the client to their selected team
-                    players.get(connection.getID()).setTeam(temp.getPicked());
-                    events.add(new ServerEvent(ServerEvent.EventType.PLAYERPICKEDTEAM,connection.getID()));
-                    secureSendAll(new MultiplayerTools.ServerDetailedSummary(CoffeeServer.redTeamMembers.size(),CoffeeServer.bluTeamMembers.size(),players));
-                }
-                else if(o instanceof MultiplayerTools.ClientPickedLoadout){
-                    MultiplayerTools.ClientPickedLoadout temp = (MultiplayerTools.ClientPickedLoadout) o;
-                    players.get(connection.getID()).setCurrentClass(temp.getLoadout());
-                    events.add(new ServerEvent(ServerEvent.EventType.PLAYERPICKEDCLASS,connection.getID()));
-                    (players.get(connection.getID()).getTeam()==0?CoffeeServer.redTeamMembers:CoffeeServer.bluTeamMembers).add(connection.getID()); // the client needs to be in a team to start being simulated
-                    connection.sendTCP(new MultiplayerTools.ServerNotifyGame(0)); // tell the client which world is being used and what their ID is
-                }
-                else if(o instanceof  MultiplayerTools.ClientSentChatMessage){
-                    quickSendAll(new MultiplayerTools.ServerSentChatMessage(o,connection,players));
-                }
-                else if(o instanceof MultiplayerTools.ClientKeysUpdate){
-                    players.get(connection.getID()).setKeysHeld(((MultiplayerTools.ClientKeysUpdate) o).getKeys());
-                    System.out.println(players.get(connection.getID()).getMouseAngle());
+            }
+            connection.sendTCP(response);
+            if(state == CoffeeServer.ServerState.RUNNINGGAME){
+                connection.sendTCP(new MultiplayerTools.ServerGameStarted());
+            }
+            System.out.println(temp.playerName);
+        }
+        else if(o instanceof MultiplayerTools.ClientPickedTeam){
+            System.out.println("Received ClientPickedTeam");
+            MultiplayerTools.ClientPickedTeam temp = (MultiplayerTools.ClientPickedTeam)o;
+            PlayerSoldier player = players.get(connection.getID());
+            if(player != null){ // only clients that have joined this room have a soldier
+                player.setTeam(temp.getPicked());
+                events.add(new ServerEvent(ServerEvent.EventType.PLAYERPICKEDTEAM,connection.getID()));
+                secureSendAll(new MultiplayerTools.ServerDetailedSummary(redTeamMembers.size(),bluTeamMembers.size(),players));
+            }
+        }
+        else if(o instanceof MultiplayerTools.ClientPickedLoadout){
+            MultiplayerTools.ClientPickedLoadout temp = (MultiplayerTools.ClientPickedLoadout) o;
+            PlayerSoldier player = players.get(connection.getID());
+            if(player != null){
+                player.setCurrentClass(temp.getLoadout());
+                events.add(new ServerEvent(ServerEvent.EventType.PLAYERPICKEDCLASS,connection.getID()));
+                (player.getTeam()==0?redTeamMembers:bluTeamMembers).add(connection.getID()); // the client needs to be in a team to start being simulated
+                connection.sendTCP(new MultiplayerTools.ServerNotifyGame(roomID,tickRate)); // tell the client which world is being used and how fast it runs
+            }
+        }
+        else if(o instanceof  MultiplayerTools.ClientSentChatMessage){
+            if(players.containsKey(connection.getID())){
+                quickSendAll(new MultiplayerTools.ServerSentChatMessage(o,connection,players));
+            }
+        }
+        else if(o instanceof MultiplayerTools.ClientViewSize){
+            if(validConnections.contains(connection)){
+                viewSizes.put(connection.getID(),(MultiplayerTools.ClientViewSize) o);
+            }
+        }
+        else if(o instanceof MultiplayerTools.ClientKeysUpdate){
+            MultiplayerTools.ClientKeysUpdate keysUpdate = (MultiplayerTools.ClientKeysUpdate) o;
+            InputBuffer buffer = inputs.get(connection.getID());
+            if(buffer == null){ // hasn't joined this room
+                return;
+            }
+            buffer.add(keysUpdate); // used when its tick comes up in applyInputs
+            if(keysUpdate.getAckedFrame() > getAckedFrame(connection.getID())){
+                ackedFrames.put(connection.getID(),keysUpdate.getAckedFrame());
+                LinkStats link = links.get(connection.getID());
+                if(link != null){
+                    link.frameAcked(keysUpdate.getAckedFrame(),receivedTime);
                 }
-                super.received(connection, o);
             }
+        }
+    }
 
-            @Override
-            public void idle(Connection connection) {
-                super.idle(connection);
+    /**
+     * Gives every player the next input from their buffer, should be called once before every world update
+     */
+    public void applyInputs(){
+        for(int i = 0; i<players.size(); i++){
+            PlayerSoldier p = players.getAt(i);
+            InputBuffer buffer = inputs.get(p.getId());
+            if(buffer != null && buffer.poll()){
+                p.setInput(buffer.getButtons(),buffer.getMouseAngle());
+                p.setInputSequence(buffer.getLastSequence()); // goes back to the client in the world frames so it can replay what's newer
+                p.setViewTick(buffer.getViewTick()); // their hits are checked against what they saw
             }
-        }));
+        }
     }
-    public void start(){
-        this.server.start();
-        this.isRunning = true;
+
+    /**
+     * @param connection The connection asking, used to fill in the ping
+     * @return The summary of this room shown in the server browser
+     */
+    public MultiplayerTools.ServerSummary getSummary(Connection connection){
+        return getSummary(connection.getReturnTripTime());
     }
-    public void stop(){
-        this.server.stop();
-        this.isRunning = false;
+
+    /**
+     * @param ping The ping to put in the summary
+     * @return The summary of this room shown in the server browser
+     */
+    public MultiplayerTools.ServerSummary getSummary(int ping){
+        MultiplayerTools.ServerSummary summary = new MultiplayerTools.ServerSummary(players.size(),maxPlayers,ping,svName.substring(0,Math.min(16,svName.length())));
+        summary.roomID = roomID;
+        return summary;
     }
     public LinkedList<ServerEvent> getEvents(){
         LinkedList<ServerEvent> temp = new LinkedList<ServerEvent>(events);
         events.clear();
         return temp;
     }
-    public boolean running(){
-        return this.isRunning;
-    }
-    public HashMap<Integer, PlayerSoldier> getPlayers(){
+    public EntityRegistry<PlayerSoldier> getPlayers(){
         return this.players;
     }
     public int getMaxPlayers(){
         return this.maxPlayers;
     }
+    public int getRoomID(){
+        return this.roomID;
+    }
+    public String getName(){
+        return this.svName;
+    }
+    public HashSet<Integer> getRedTeamMembers(){
+        return this.redTeamMembers;
+    }
+    public HashSet<Integer> getBluTeamMembers(){
+        return this.bluTeamMembers;
+    }
+
+    /**
+     * @return Whether this match is still in the lobby or has started
+     */
+    public CoffeeServer.ServerState getState(){
+        return this.state;
+    }
+    public void setState(CoffeeServer.ServerState state){
+        this.state = state;
+    }
+
+    /**
+     * Sets the tick rate that clients are told the game runs at
+     * @param tickRate Ticks per second
+     */
+    public void setTickRate(int tickRate){
+        this.tickRate = tickRate;
+    }
+    public int getTickRate(){
+        return this.tickRate;
+    }
+
+    /**
+     * Sets how many ticks of input are buffered for clients that connect after this is called
+     * @param jitterDepth Ticks of input to buffer
+     */
+    public void setJitterDepth(int jitterDepth){
+        this.jitterDepth = jitterDepth;
+    }
+    public int getJitterDepth(){
+        return this.jitterDepth;
+    }
+    public InputBuffer getInputBuffer(int connectionID){
+        return inputs.get(connectionID);
+    }
+
+    /**
+     * @param connectionID The client's connection id
+     * @return How the client's connection is doing, null if it isn't in the match
+     */
+    public LinkStats getLink(int connectionID){
+        return links.get(connectionID);
+    }
+
+    /**
+     * @param connectionID The client's connection id
+     * @return How much of the world the client's screen shows, null if it hasn't said
+     */
+    public MultiplayerTools.ClientViewSize getViewSize(int connectionID){
+        return viewSizes.get(connectionID);
+    }
+
+    /**
+     * Sets how many bytes a second of world frames each client that joins after this can be sent
+     */
+    public void setByteBudget(int byteBudget){
+        this.byteBudget = byteBudget;
+    }
+    public int getByteBudget(){
+        return this.byteBudget;
+    }
+
+    /**
+     * @param connectionID The client's connection id
+     * @return The newest world frame the client has said it received, -1 if it hasn't received any
+     */
+    public int getAckedFrame(int connectionID){
+        return ackedFrames.get(connectionID,-1);
+    }
+    public LinkedList<Connection> getConnections(){
+        return this.validConnections;
+    }
+
+    /**
+     * Serializes a message once so it can be sent to several clients without being serialized again for each one
+     * @param o The message
+     * @return The serialized message, or o itself if there's no BroadcastSerialization
+     */
+    public Object encode(Object o){
+        return serialization==null?o:serialization.encode(o);
+    }
+
+    /**
+     * Lets the bytes of a message from encode be reused, once it's been sent to everyone it's going to
+     */
+    public void recycle(Object encoded){
+        if(serialization != null){
+            serialization.recycle(encoded);
+        }
+    }
+    public void setSerialization(BroadcastSerialization serialization) {
+        this.serialization = serialization;
+    }
     public void secureSendAll(Object o){
         //TODO reverse list of players every time to average out delay from sending object to each client
         //players.keySet is all players that are actually playing the game
+        if(validConnections.isEmpty()){
+            return;
+        }
+        Object encoded = encode(o);
         for(Connection c : validConnections){
-            c.sendTCP(o);
+            c.sendTCP(encoded);
         }
+        recycle(encoded);
     }
     public void quickSendAll(Object o){
+        if(validConnections.isEmpty()){
+            return;
+        }
+        Object encoded = encode(o);
         for(Connection c : validConnections){
-            c.sendUDP(o);
+            c.sendUDP(encoded);
         }
+        recycle(encoded);
     }
 }
@@ -0,0 +1,225 @@
+package me.dumfing.server;
+
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+import me.dumfing.multiplayerTools.MultiplayerTools;
+import me.dumfing.multiplayerTools.WorldMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs any number of independent matches behind one set of ports<br>
+ * Clients say which room they want in their ClientConnectionRequest and every message after that is passed to that room's
+ * MainServer. The server browser is sent a summary of each room, so players can pick which one to join. Every tick, each match is run on a fixed pool of worker threads and the tick ends once all of them are done,
+ * so a few busy matches can't starve the rest
+ */
+public class MatchHost implements TickScheduler.Tickable {
+    public static final int WRITEBUFFERSIZE = 16384; // kryonet's default
+    private Server server;
+    private BroadcastSerialization serialization = new BroadcastSerialization();
+    private int numWorkers;
+    private ExecutorService workers;
+    private final ConcurrentHashMap<Integer, ServerMatch> rooms = new ConcurrentHashMap<Integer, ServerMatch>(); // room id -> match
+    private final ConcurrentHashMap<Integer, MainServer> routes = new ConcurrentHashMap<Integer, MainServer>(); // connection id -> the room it joined
+    private final CopyOnWriteArrayList<Callable<Object>> tickJobs = new CopyOnWriteArrayList<Callable<Object>>();
+    private long tickNum;
+    private static final long SUMMARYINTERVAL = 500000000L; // nanoseconds between updates of the summary given to the server browser
+    private DiscoveryResponder discovery = new DiscoveryResponder();
+    private long lastSummary = 0;
+    private String mapName; // shown in the server browser, null if it isn't set
+
+    public MatchHost(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numWorkers How many threads the matches are ticked on
+     */
+    public MatchHost(int numWorkers){
+        this.numWorkers = Math.max(1,numWorkers);
+        this.server = new Server(WRITEBUFFERSIZE,BroadcastSerialization.OBJECTBUFFERSIZE,serialization);
+        MultiplayerTools.register(this.server);
+        this.server.addListener(new Listener.ThreadedListener(new Listener(){
+            @Override
+            public void connected(Connection connection) {
+                System.out.printf("Client Connected! %d\n",connection.getID());
+                connection.updateReturnTripTime();
+                super.connected(connection);
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+                MainServer room = routes.remove(connection.getID());
+                if(room != null){
+                    room.disconnected(connection);
+                }
+                super.disconnected(connection);
+            }
+
+            @Override
+            public void received(Connection connection, Object o) {
+                MainServer room = routes.get(connection.getID());
+                if(o instanceof MultiplayerTools.ClientConnectionRequest){
+                    ServerMatch match = rooms.get(((MultiplayerTools.ClientConnectionRequest) o).roomID);
+                    if(match == null){
+                        connection.sendTCP(new MultiplayerTools.ServerResponse(MultiplayerTools.ServerResponse.ResponseCode.NOSUCHROOM));
+                        return;
+                    }
+                    if(room != null){ // asking again, maybe for another room, leaves the one it's in first
+                        room.disconnected(connection);
+                    }
+                    room = match.getServer();
+                    routes.put(connection.getID(),room);
+                }
+                if(room != null){
+                    room.received(connection,o);
+                }
+                else if(o instanceof MultiplayerTools.ClientInfoRequest){ // someone in the server browser that hasn't picked a room yet
+                    for(MultiplayerTools.ServerSummary summary : getSummaries(connection)){
+                        connection.sendTCP(summary);
+                    }
+                }
+                super.received(connection, o);
+            }
+        }));
+    }
+
+    /**
+     * Adds a new match that clients can join
+     * @param roomID The id clients use to join the match
+     * @param name The name of the match
+     * @param maxPlayers The most people that can play in the match
+     * @param worldMap The map the match is played on, it's only read from so it can be shared between matches
+     * @param tickRate How many times per second this host is ticked
+     * @return The MainServer for the new match
+     */
+    public MainServer addMatch(int roomID, String name, int maxPlayers, WorldMap worldMap, int tickRate){
+        if(rooms.containsKey(roomID)){
+            throw new IllegalArgumentException("Room "+roomID+" already exists!");
+        }
+        MainServer sv = new MainServer(name,maxPlayers,roomID);
+        sv.setSerialization(serialization);
+        final ServerMatch match = new ServerMatch(sv,worldMap,tickRate);
+        rooms.put(roomID,match);
+        tickJobs.add(new Callable<Object>() {
+            @Override
+            public Object call() {
+                match.tick(tickNum);
+                return match;
+            }
+        });
+        return sv;
+    }
+
+    public void start(){
+        try {
+            this.server.bind(MultiplayerTools.TCPPORT,MultiplayerTools.UDPPORT);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        discovery.setSummaries(getSummaries(0));
+        try {
+            discovery.start();
+        } catch (IOException e) { // clients can still find the server with kryonet's discovery and ask it over TCP
+            System.err.println("Could not answer server browser queries: "+e.getMessage());
+        }
+        workers = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+            private int count = 0;
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"Match worker "+(count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.server.start();
+    }
+    public void stop(){
+        this.server.stop();
+        discovery.stop();
+        if(workers != null){
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public void tick(long tickNum) {
+        this.tickNum = tickNum;
+        tickMatches(tickNum);
+        long now = System.nanoTime();
+        if(now-lastSummary > SUMMARYINTERVAL){
+            lastSummary = now;
+            discovery.setSummaries(getSummaries(0));
+        }
+    }
+    private void tickMatches(long tickNum){
+        if(tickJobs.size() == 1){ // no point handing a single match to another thread
+            rooms.values().iterator().next().tick(tickNum);
+            return;
+        }
+        List<Future<Object>> done;
+        try {
+            done = workers.invokeAll(tickJobs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for(Future<Object> f : done){
+            try {
+                f.get();
+            } catch (ExecutionException e) { // only the match that threw loses its tick
+                e.getCause().printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param connection The connection asking, used to fill in the ping
+     * @return A summary of each room, with its id and how many players are in it
+     */
+    public ArrayList<MultiplayerTools.ServerSummary> getSummaries(Connection connection){
+        return getSummaries(connection.getReturnTripTime());
+    }
+
+    /**
+     * @param ping The ping to put in the summaries
+     * @return A summary of each room, with its id and how many players are in it
+     */
+    public ArrayList<MultiplayerTools.ServerSummary> getSummaries(int ping){
+        ArrayList<MultiplayerTools.ServerSummary> summaries = new ArrayList<MultiplayerTools.ServerSummary>(rooms.size());
+        for(ServerMatch match : rooms.values()){
+            MultiplayerTools.ServerSummary summary = match.getServer().getSummary(ping);
+            summary.mapName = mapName;
+            summary.rooms = rooms.size();
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    /**
+     * Sets the map name shown in the server browser
+     */
+    public void setMapName(String mapName){
+        this.mapName = mapName;
+    }
+    public ServerMatch getMatch(int roomID){
+        return rooms.get(roomID);
+    }
+    public ArrayList<ServerMatch> getMatches(){
+        return new ArrayList<ServerMatch>(rooms.values());
+    }
+}
@@ -0,0 +1,47 @@
+package me.dumfing.server;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * Something a network thread wants done to a match<br>
+ * The network threads only ever queue these, the match applies them at the start of its tick so the game state is only
+ * ever touched by the tick thread
+ */
+public class ServerCommand {
+    public enum CommandType{
+        RECEIVED,
+        DISCONNECTED
+    }
+    private CommandType commandType;
+    private Connection connection;
+    private Object message;
+    private long receivedTime = System.nanoTime(); // when the network thread got it, the tick might not get to it for a while
+
+    public ServerCommand(CommandType commandType, Connection connection, Object message) {
+        this.commandType = commandType;
+        this.connection = connection;
+        this.message = message;
+    }
+
+    public CommandType getCommandType() {
+        return commandType;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return The object the client sent, null for DISCONNECTED
+     */
+    public Object getMessage() {
+        return message;
+    }
+
+    /**
+     * @return System.nanoTime() when the command was made
+     */
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+}
@@ -0,0 +1,233 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.ConcurrentGameWorld;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Settings for a server that's started without the server window<br>
+ * Can be read from the command line, a properties file or both. Command line values override the file's values<br>
+ * <pre>
+ * --config server.properties   file with any of the keys below
+ * --name "My Server"           name=My Server
+ * --max-players 8              maxPlayers=8
+ * --map pixmapTest.png         map=pixmapTest.png
+ * --sprites SpriteSheets       sprites=SpriteSheets
+ * --tick-rate 60               tickRate=60
+ * --max-catch-up 5             maxCatchUp=5
+ * --matches 1                  matches=1         how many separate matches to host, joined by room id 0 to matches-1
+ * --workers 4                  workers=4         threads the matches are ticked on, defaults to the number of cores
+ * --input-buffer 2             inputBuffer=2     ticks of client input held back to smooth out late packets
+ * --byte-budget 8000           byteBudget=8000   bytes per second of world frames each client can be sent
+ * </pre>
+ */
+public class ServerConfig {
+    public static final int MAXPLAYERS = 8;
+    public static final int MINTICKRATE = 10;
+    public static final int MAXTICKRATE = 240;
+    public static final int MAXJITTERDEPTH = 16;
+    private String serverName = "Coffee Server";
+    private int maxPlayers = MAXPLAYERS;
+    private String mapFile = "pixmapTest.png";
+    private String spriteSheetDir = "SpriteSheets";
+    private int tickRate = ConcurrentGameWorld.BASE_TICKRATE;
+    private int maxCatchUp = TickScheduler.DEFAULT_MAXCATCHUP;
+    private int matches = 1;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int jitterDepth = InputBuffer.DEFAULT_JITTERDEPTH;
+    private int byteBudget = LinkStats.DEFAULT_BYTEBUDGET;
+
+    public ServerConfig(){}
+
+    /**
+     * Reads the configuration from the command line
+     * @param args The arguments given to the program
+     * @return The ServerConfig described by the arguments
+     * @throws IllegalArgumentException if an argument is unknown or has a bad value
+     */
+    public static ServerConfig fromArgs(String[] args){
+        ServerConfig config = new ServerConfig();
+        for(int i = 0; i<args.length; i+=2){ // read the config file first so the other arguments can override it
+            if(args[i].equals("--config")){
+                config.load(value(args,i));
+            }
+        }
+        for(int i = 0; i<args.length; i+=2){
+            String arg = args[i];
+            if(arg.equals("--config")){
+                value(args,i); // already loaded
+            }
+            else if(arg.equals("--name")){
+                config.serverName = value(args,i);
+            }
+            else if(arg.equals("--max-players")){
+                config.maxPlayers = parseInt("--max-players",value(args,i));
+            }
+            else if(arg.equals("--map")){
+                config.mapFile = value(args,i);
+            }
+            else if(arg.equals("--sprites")){
+                config.spriteSheetDir = value(args,i);
+            }
+            else if(arg.equals("--tick-rate")){
+                config.tickRate = parseInt("--tick-rate",value(args,i));
+            }
+            else if(arg.equals("--max-catch-up")){
+                config.maxCatchUp = parseInt("--max-catch-up",value(args,i));
+            }
+            else if(arg.equals("--matches")){
+                config.matches = parseInt("--matches",value(args,i));
+            }
+            else if(arg.equals("--workers")){
+                config.workers = parseInt("--workers",value(args,i));
+            }
+            else if(arg.equals("--input-buffer")){
+                config.jitterDepth = parseInt("--input-buffer",value(args,i));
+            }
+            else if(arg.equals("--byte-budget")){
+                config.byteBudget = parseInt("--byte-budget",value(args,i));
+            }
+            else{
+                throw new IllegalArgumentException("Unknown argument "+arg);
+            }
+        }
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Loads settings from a properties file, keys that aren't in the file are left alone
+     * @param fileName The path to the properties file
+     */
+    public void load(String fileName){
+        Properties props = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(fileName);
+            props.load(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read config file "+fileName,e);
+        } finally {
+            if(in != null){
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        serverName = props.getProperty("name",serverName);
+        mapFile = props.getProperty("map",mapFile);
+        spriteSheetDir = props.getProperty("sprites",spriteSheetDir);
+        if(props.getProperty("maxPlayers")!=null){
+            maxPlayers = parseInt("maxPlayers",props.getProperty("maxPlayers"));
+        }
+        if(props.getProperty("tickRate")!=null){
+            tickRate = parseInt("tickRate",props.getProperty("tickRate"));
+        }
+        if(props.getProperty("maxCatchUp")!=null){
+            maxCatchUp = parseInt("maxCatchUp",props.getProperty("maxCatchUp"));
+        }
+        if(props.getProperty("matches")!=null){
+            matches = parseInt("matches",props.getProperty("matches"));
+        }
+        if(props.getProperty("workers")!=null){
+            workers = parseInt("workers",props.getProperty("workers"));
+        }
+        if(props.getProperty("inputBuffer")!=null){
+            jitterDepth = parseInt("inputBuffer",props.getProperty("inputBuffer"));
+        }
+        if(props.getProperty("byteBudget")!=null){
+            byteBudget = parseInt("byteBudget",props.getProperty("byteBudget"));
+        }
+    }
+
+    /**
+     * Makes sure the settings are ones the server can actually run with, these are the same rules as the server window's form
+     */
+    public void validate(){
+        if(serverName.trim().equals("")){
+            throw new IllegalArgumentException("Server name cannot be empty!");
+        }
+        if(maxPlayers>MAXPLAYERS){
+            throw new IllegalArgumentException("Max players per server is "+MAXPLAYERS+"!");
+        }
+        if(maxPlayers<=0){
+            throw new IllegalArgumentException("Max players must be greater than 0!");
+        }
+        if(tickRate<MINTICKRATE || tickRate>MAXTICKRATE){
+            throw new IllegalArgumentException("Tick rate must be between "+MINTICKRATE+" and "+MAXTICKRATE+"!");
+        }
+        if(maxCatchUp<1){
+            throw new IllegalArgumentException("Max catch up must be at least 1!");
+        }
+        if(matches<1){
+            throw new IllegalArgumentException("There must be at least 1 match!");
+        }
+        if(workers<1){
+            throw new IllegalArgumentException("There must be at least 1 worker!");
+        }
+        if(jitterDepth<0 || jitterDepth>MAXJITTERDEPTH){
+            throw new IllegalArgumentException("Input buffer must be between 0 and "+MAXJITTERDEPTH+" ticks!");
+        }
+        if(byteBudget<LinkStats.MINFRAMEBYTES){
+            throw new IllegalArgumentException("Byte budget must be at least "+LinkStats.MINFRAMEBYTES+" bytes a second!");
+        }
+    }
+    private static String value(String[] args, int i){
+        if(i+1>=args.length){
+            throw new IllegalArgumentException("Missing value for "+args[i]);
+        }
+        return args[i+1];
+    }
+    private static int parseInt(String name, String value){
+        try{
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e){
+            throw new IllegalArgumentException(name+" must be an integer!");
+        }
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public String getMapFile() {
+        return mapFile;
+    }
+
+    public String getSpriteSheetDir() {
+        return spriteSheetDir;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public int getMaxCatchUp() {
+        return maxCatchUp;
+    }
+
+    public int getMatches() {
+        return matches;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getJitterDepth() {
+        return jitterDepth;
+    }
+
+    public int getByteBudget() {
+        return byteBudget;
+    }
+}
@@ -1,46 +1,192 @@
 package me.dumfing.server;
 
 import com.badlogic.gdx.math.GridPoint2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.IntMap;
+import com.esotericsoftware.kryonet.Connection;
+import me.dumfing.multiplayerTools.AreaOfInterest;
+import me.dumfing.multiplayerTools.BitWriter;
 import me.dumfing.multiplayerTools.ConcurrentGameWorld;
+import me.dumfing.multiplayerTools.EntityRegistry;
 import me.dumfing.multiplayerTools.MultiplayerTools;
 import me.dumfing.multiplayerTools.PlayerSoldier;
+import me.dumfing.multiplayerTools.PriorityAccumulator;
 import me.dumfing.multiplayerTools.WorldMap;
-
-import java.util.HashMap;
+import me.dumfing.multiplayerTools.WorldFrame;
+import me.dumfing.multiplayerTools.WorldSnapshot;
 
 /**
  * A class that manages the entire gameplay portion of the server
  */
 public class ServerGameInstance {
+    public static final int SENDRATE = 30; // how many times per second the world is sent to the clients
     int frameCount = 0;
+    int sendInterval; // how many ticks between each time the world is sent
     ConcurrentGameWorld world;
-    public ServerGameInstance(HashMap<Integer, PlayerSoldier> players){
+    int frameNum = 0;
+    IntMap<ClientFrames> clientFrames = new IntMap<ClientFrames>(); // connection id -> what's been sent to it
+    private IntMap<ClientFrames> stillConnected = new IntMap<ClientFrames>(); // filled while sending, then swapped with clientFrames
+    // baseline -> max bytes -> the frame written for it, clients with the same ones get the same bytes. Emptied after every send
+    private final IdentityMap<WorldFrame, IntMap<EncodedFrame>> encoded = new IdentityMap<WorldFrame, IntMap<EncodedFrame>>();
+    private final IntMap<EncodedFrame> encodedFull = new IntMap<EncodedFrame>(); // the same for clients without a baseline
+    private final Array<IntMap<EncodedFrame>> spareEncoded = new Array<IntMap<EncodedFrame>>(); // emptied ones for encoded to reuse
+    BitWriter frameOut = new BitWriter(WorldFrame.MAXFRAMEBYTES);
+    AreaOfInterest interest; // made when the map is set
+    public ServerGameInstance(EntityRegistry<PlayerSoldier> players, int tickRate){
         world = new ConcurrentGameWorld(players);
+        world.setTickRate(tickRate);
+        world.setLagCompensation(true);
+        world.setRecordingHits(false);
+        sendInterval = Math.max(1,Math.round((float)tickRate/SENDRATE));
     }
     public void update(MainServer sv){
+        sv.applyInputs(); // exactly one input per player per tick
         world.update();
         for(ServerEvent svEvent : sv.getEvents()){
             switch (svEvent.getEventType()){
                 case PLAYERPICKEDTEAM:
                     PlayerSoldier plr = world.getPlayers().get(svEvent.getConnectionID());
+                    if(plr == null){ // left in the same tick they picked
+                        break;
+                    }
                     GridPoint2 spawnPos = plr.getTeam()==MultiplayerTools.REDTEAM?world.getWorldMap().getRedSpawn():world.getWorldMap().getBluSpawn();
                     world.setPlayerPos(svEvent.getConnectionID(),spawnPos.x,spawnPos.y);
                     break;
             }
         }
-        if(frameCount >= 2){ // 2 gets an interesting 30hz
+        frameCount++;
+        if(frameCount >= sendInterval){
             frameCount = 0;
             world.getParticles(); // call this so that the list of particles in the gameworld doesn't get too long
-            sv.quickSendAll(new MultiplayerTools.ServerPlayerPositions(world.getPlayers()));
-            sv.quickSendAll(new MultiplayerTools.ServerProjectilePositions(world.getProjectiles()));
-            sv.quickSendAll(new MultiplayerTools.ServerFlagPositions(world.getFlags()));
-            sv.quickSendAll(new MultiplayerTools.ServerRespawnTimes(world.getRespawnTimers()));
-            sv.quickSendAll(new MultiplayerTools.ServerKillLog(world.getKillLog()));
+            sendFrames(sv);
         }
+    }
 
-        frameCount++;
+    /**
+     * Sends every client that's due a frame the world written against the newest frame they've received<br>
+     * Clients that haven't received one, or whose one is too old to still be kept, get everything. How often each client
+     * is due and how big its frames can get is decided by its LinkStats. Each client is only sent the soldiers and
+     * projectiles around its own soldier, and when everything that changed won't fit the ones that matter most to it go first
+     */
+    private void sendFrames(MainServer sv){
+        WorldFrame frame = WorldFrame.capture(world,frameNum,world.getTick()); // the tick goes with the frame so the clients can time them
+        if(interest != null){
+            interest.index(frame.getSnapshot());
+        }
+        float framesPerSecond = (float)world.getTickRate()/sendInterval;
+        long now = System.nanoTime();
+        for(Connection c : sv.getConnections()){
+            ClientFrames sent = clientFrames.get(c.getID());
+            if(sent == null){
+                sent = new ClientFrames();
+            }
+            stillConnected.put(c.getID(),sent);
+            LinkStats link = sv.getLink(c.getID());
+            if(link != null){
+                link.adapt(now,framesPerSecond);
+                if(!link.shouldSend()){ // struggling, it only gets some of the frames
+                    continue;
+                }
+            }
+            int maxBytes = link==null?WorldFrame.MAXFRAMEBYTES:link.getMaxFrameBytes(framesPerSecond);
+            int acked = sv.getAckedFrame(c.getID());
+            WorldFrame baseline = acked==-1?null:sent.received[acked%WorldSnapshot.HISTORY];
+            if(baseline == null || baseline.getSequence() != acked || frameNum-acked >= WorldSnapshot.HISTORY){
+                baseline = null;
+                acked = -1;
+            }
+            PlayerSoldier viewer = world.getPlayers().get(c.getID());
+            AreaOfInterest seen = null; // everything until the client has a soldier
+            if(viewer != null && interest != null){
+                MultiplayerTools.ClientViewSize view = sv.getViewSize(c.getID());
+                interest.gather(c.getID(),viewer.getX(),viewer.getY(),view==null?AreaOfInterest.DEFAULT_VIEWWIDTH:view.getWidth(),
+                        view==null?AreaOfInterest.DEFAULT_VIEWHEIGHT:view.getHeight(),baseline==null?null:baseline.getSnapshot());
+                seen = interest.coversAll()?null:interest;
+            }
+            IntMap<EncodedFrame> sameBaseline = baseline==null?encodedFull:encoded.get(baseline);
+            if(sameBaseline == null){
+                sameBaseline = spareEncoded.size==0?new IntMap<EncodedFrame>():spareEncoded.pop();
+                encoded.put(baseline,sameBaseline);
+            }
+            EncodedFrame data = seen==null?sameBaseline.get(maxBytes):null;
+            boolean shared = data != null; // whether other clients can be sent the same message, it's recycled after the send if not
+            if(data != null){
+                sent.priorities.clear(); // everything that changed fit, so this client is caught up too
+            }
+            else{
+                if(viewer == null){
+                    sent.priorities.setViewer(-1,0,0);
+                }
+                else{
+                    sent.priorities.setViewer(c.getID(),viewer.getX(),viewer.getY());
+                }
+                frameOut.clear();
+                WorldFrame received = frame.write(frameOut,baseline,maxBytes,sent.priorities,seen);
+                byte[] bytes = frameOut.toBytes();
+                data = new EncodedFrame(sv.encode(new MultiplayerTools.ServerWorldFrame(frameNum,acked,frame.getTick(),bytes)),received,bytes.length);
+                if(received.getSnapshot() == frame.getSnapshot()){ // nothing was picked for this client alone
+                    sameBaseline.put(maxBytes,data);
+                    shared = true;
+                }
+            }
+            sent.received[frameNum%WorldSnapshot.HISTORY] = data.received;
+            c.sendUDP(data.message);
+            if(!shared){
+                sv.recycle(data.message);
+            }
+            if(link != null){
+                link.frameSent(frameNum,data.length,now);
+            }
+        }
+        IntMap<ClientFrames> disconnected = clientFrames;
+        clientFrames = stillConnected;
+        stillConnected = disconnected;
+        stillConnected.clear();
+        for(IntMap<EncodedFrame> sameBaseline : encoded.values()){
+            recycleAll(sv,sameBaseline);
+            spareEncoded.add(sameBaseline);
+        }
+        encoded.clear();
+        recycleAll(sv,encodedFull);
+        frameNum++;
+    }
+
+    /**
+     * Gives back the messages of frames that every client has been sent and empties the map they were kept in
+     */
+    private static void recycleAll(MainServer sv, IntMap<EncodedFrame> frames){
+        for(EncodedFrame data : frames.values()){
+            sv.recycle(data.message);
+        }
+        frames.clear();
+    }
+
+    /**
+     * A frame written against one baseline, serialized once for every client using that baseline, and the frame the
+     * client will have once it reads it
+     */
+    private static class EncodedFrame{
+        Object message;
+        WorldFrame received;
+        int length; // bytes of frame data, not counting the message around it
+        EncodedFrame(Object message, WorldFrame received, int length){
+            this.message = message;
+            this.received = received;
+            this.length = length;
+        }
+    }
+
+    /**
+     * What's been sent to one client: the frames as it will have read them, which can be missing changes that didn't fit,
+     * and how badly it needs each soldier and projectile
+     */
+    private static class ClientFrames{
+        WorldFrame[] received = new WorldFrame[WorldSnapshot.HISTORY];
+        PriorityAccumulator priorities = new PriorityAccumulator();
     }
     public void setWorldMap(WorldMap map){
         world.setWorld(map);
+        interest = new AreaOfInterest(map);
     }
 }
@@ -0,0 +1,54 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.MultiplayerTools;
+
+/**
+ * Counts down to the start of the game once enough people are connected<br>
+ * Doesn't draw anything so it can be used by both the windowed and headless servers
+ */
+public class ServerLobby {
+    private static final int COUNTDOWN = 6; // seconds before the game starts
+    private int tickRate;
+    private int numFrames = 0;
+
+    /**
+     * @param tickRate How many times per second update is called
+     */
+    public ServerLobby(int tickRate){
+        this.tickRate = tickRate;
+    }
+
+    /**
+     * Updates the countdown, should be called once every tick
+     * @param svIn The server the lobby is for
+     * @return true on the frame the game should start
+     */
+    public boolean update(MainServer svIn){
+        boolean timerStarted;
+        if (svIn.getMaxPlayers() == 1) {
+            timerStarted = svIn.getPlayers().size() == 1;
+        }
+        else{
+            timerStarted = svIn.getPlayers().size()/svIn.getMaxPlayers() > 0.6;
+        }
+        if(timerStarted){
+            numFrames++;
+            if(numFrames % tickRate == 0){
+                System.out.println("Sent "+(COUNTDOWN-(numFrames/tickRate)));
+                svIn.secureSendAll(new MultiplayerTools.ServerGameCountdown(COUNTDOWN-(numFrames/tickRate)));
+            }
+            if(numFrames/tickRate == COUNTDOWN){
+                svIn.secureSendAll(new MultiplayerTools.ServerGameStarted()); // Make sure everyone gets the message
+                return true;
+            }
+        }
+        else{
+            if(numFrames!=0){
+                // reset the countdown if a client disconnects and there are not enough players to play
+                svIn.secureSendAll(new MultiplayerTools.ServerGameCountdown(-1));
+            }
+            numFrames = 0;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,50 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.WorldMap;
+
+/**
+ * Runs one match from the lobby to the end of the game, one tick at a time<br>
+ * Used by both the windowed and headless servers, it doesn't draw anything
+ */
+public class ServerMatch implements TickScheduler.Tickable {
+    private MainServer sv;
+    private WorldMap worldMap;
+    private int tickRate;
+    private ServerLobby lobby;
+    private volatile ServerGameInstance instance;
+
+    public ServerMatch(MainServer sv, WorldMap worldMap, int tickRate){
+        this.sv = sv;
+        this.worldMap = worldMap;
+        this.tickRate = tickRate;
+        this.lobby = new ServerLobby(tickRate);
+        sv.setTickRate(tickRate);
+    }
+
+    @Override
+    public void tick(long tickNum) {
+        sv.processCommands(); // everything the clients sent is applied here so nothing changes partway through the tick
+        switch (sv.getState()){
+            case GAMELOBBY:
+                if(lobby.update(sv)){
+                    sv.setState(CoffeeServer.ServerState.RUNNINGGAME);
+                }
+                break;
+            case RUNNINGGAME:
+                if(instance == null){
+                    instance = new ServerGameInstance(sv.getPlayers(),tickRate);
+                    instance.setWorldMap(worldMap);
+                }
+                instance.update(sv);
+                break;
+        }
+    }
+
+    public MainServer getServer() {
+        return sv;
+    }
+
+    public ServerGameInstance getInstance() {
+        return instance;
+    }
+}
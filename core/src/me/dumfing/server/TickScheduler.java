@@ -0,0 +1,139 @@
+package me.dumfing.server;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Calls a Tickable at a fixed rate on its own thread, independent of how fast anything is being drawn<br>
+ * Tick deadlines are measured from when the scheduler started rather than from the end of the last tick so small delays
+ * don't add up over time. If the ticks fall behind, up to maxCatchUp ticks are run back to back to catch up and anything
+ * past that is skipped so one long pause doesn't cause a burst of ticks afterwards.
+ */
+public class TickScheduler implements Runnable {
+    public interface Tickable{
+        /**
+         * Runs a single tick
+         * @param tickNum How many ticks have been run before this one
+         */
+        void tick(long tickNum);
+    }
+    public static final int DEFAULT_MAXCATCHUP = 5;
+    private final Tickable tickable;
+    private final int tickRate;
+    private final long tickNanos;
+    private final int maxCatchUp;
+    private volatile boolean running = false;
+    private Thread thread;
+    //stats, only written by the tick thread
+    private volatile long tickCount = 0;
+    private volatile long overruns = 0; // ticks that took longer than a tick to run
+    private volatile long skippedTicks = 0; // ticks that were dropped because the catch up limit was hit
+    private volatile long lastTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+
+    public TickScheduler(Tickable tickable, int tickRate){
+        this(tickable,tickRate,DEFAULT_MAXCATCHUP);
+    }
+
+    /**
+     * @param tickable What to tick
+     * @param tickRate Ticks per second
+     * @param maxCatchUp The most ticks that will be run back to back when the scheduler falls behind
+     */
+    public TickScheduler(Tickable tickable, int tickRate, int maxCatchUp){
+        this.tickable = tickable;
+        this.tickRate = tickRate;
+        this.tickNanos = 1000000000L/tickRate;
+        this.maxCatchUp = Math.max(1,maxCatchUp);
+    }
+
+    /**
+     * Starts ticking on a new thread
+     * @param name The name of the thread
+     */
+    public void start(String name){
+        running = true;
+        thread = new Thread(this,name);
+        thread.start();
+    }
+    public void stop(){
+        running = false;
+        if(thread != null && thread != Thread.currentThread()){
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        while(running){
+            long now = System.nanoTime();
+            if(now < nextTick){
+                LockSupport.parkNanos(nextTick-now);
+                continue;
+            }
+            int ticksRun = 0;
+            while(now >= nextTick && ticksRun < maxCatchUp && running){
+                long start = System.nanoTime();
+                try{
+                    tickable.tick(tickCount);
+                }
+                catch (RuntimeException e){ // one bad tick shouldn't bring the whole server down
+                    e.printStackTrace();
+                }
+                long cost = System.nanoTime()-start;
+                lastTickNanos = cost;
+                maxTickNanos = Math.max(maxTickNanos,cost);
+                if(cost > tickNanos){
+                    overruns++;
+                }
+                tickCount++;
+                ticksRun++;
+                nextTick += tickNanos;
+                now = System.nanoTime();
+            }
+            if(now >= nextTick){ // still behind after catching up as much as we're allowed to, drop the rest
+                long behind = (now-nextTick)/tickNanos+1;
+                skippedTicks += behind;
+                nextTick += behind*tickNanos;
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ticks at %dhz, %d overran, %d skipped, last %.2fms, max %.2fms",tickCount,tickRate,overruns,skippedTicks,lastTickNanos/1e6,maxTickNanos/1e6);
+    }
+}
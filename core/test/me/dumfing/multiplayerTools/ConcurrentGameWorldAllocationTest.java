@@ -0,0 +1,96 @@
+package me.dumfing.multiplayerTools;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a world update where nothing happens doesn't allocate anything, so a server running a lot of ticks doesn't
+ * make garbage just from players moving around<br>
+ * Ticks where someone is hit, killed, respawns, fires an arrow or scores are allowed to allocate, the log lines and
+ * arrows they make are real objects. The world is driven the way the server drives it, nothing clears its hits<br>
+ * It's run with -XX:TieredStopAtLevel=1 (see core/build.gradle), HotSpot's C2 compiler now and then allocates a few
+ * strings on the running thread by itself, which would show up on whatever tick it happened in
+ */
+public class ConcurrentGameWorldAllocationTest {
+    private static final int WARMUP = 5000; // ticks before measuring, enough for every path to have run and the arrays to have grown
+    private static final int MEASURED = 5000;
+
+    @Test
+    public void quietTicksDontAllocate(){
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        EntityRegistry<PlayerSoldier> players = TestWorlds.soldiers(16);
+        ConcurrentGameWorld world = new ConcurrentGameWorld(players);
+        world.setWorld(TestWorlds.testMap());
+        world.setLagCompensation(true); // set up the way ServerGameInstance does it
+        world.setRecordingHits(false);
+        int quiet = 0;
+        int allocating = 0;
+        long firstBytes = 0;
+        int firstTick = -1;
+        for(int t = 0; t<WARMUP+MEASURED; t++){
+            TestWorlds.script(players,t);
+            for(int k = 0; k<players.size(); k++){
+                players.getAt(k).setViewTick(Math.max(0,world.getTick()-5)); // a few ticks behind, like a real client
+            }
+            int alive = living(players);
+            int score = world.getRedScore()+world.getBluScore();
+            int kills = world.getKillCount();
+            int projectiles = world.getProjectiles().size;
+            int timers = world.getRespawnTimers().size;
+            int health = health(players);
+            long before = mx.getThreadAllocatedBytes(thread);
+            world.update();
+            long bytes = mx.getThreadAllocatedBytes(thread)-before;
+            boolean event = alive != living(players) || score != world.getRedScore()+world.getBluScore() ||
+                    kills != world.getKillCount() || projectiles < world.getProjectiles().size ||
+                    timers != world.getRespawnTimers().size || health != health(players);
+            if(t >= WARMUP && !event){
+                quiet++;
+                if(bytes > 0 && allocating++ == 0){
+                    firstBytes = bytes;
+                    firstTick = t;
+                }
+            }
+            world.getParticles(); // the only thing the server takes out of the world every send
+        }
+        assertEquals("the server never clears the hits, so nothing should be put there",0,world.getHits().size());
+        assertTrue("too few quiet ticks to tell anything: "+quiet, quiet > MEASURED/2);
+        assertEquals("quiet ticks that allocated, the first was tick "+firstTick+" with "+firstBytes+" bytes", 0, allocating);
+    }
+
+    /**
+     * @return Everyone's health added up, which changes whenever someone is hit
+     */
+    private static int health(EntityRegistry<PlayerSoldier> players){
+        int sum = 0;
+        for(int k = 0; k<players.size(); k++){
+            sum += players.getAt(k).getHealth();
+        }
+        return sum;
+    }
+
+    /**
+     * @return A number that changes whenever anyone dies or respawns
+     */
+    private static int living(EntityRegistry<PlayerSoldier> players){
+        int sum = 0;
+        for(int k = 0; k<players.size(); k++){
+            if(players.getAt(k).isAlive()){
+                sum += players.getAt(k).getId()*players.getAt(k).getId();
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,29 @@
+package me.dumfing.multiplayerTools;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs a world through things players can do to it that the scripted worlds in the other tests don't
+ */
+public class ConcurrentGameWorldTest {
+    @Test
+    public void anArrowFromSomeoneWhoLeftStillKills(){
+        EntityRegistry<PlayerSoldier> players = TestWorlds.soldiers(2);
+        ConcurrentGameWorld world = new ConcurrentGameWorld(players);
+        world.setWorld(TestWorlds.testMap());
+        PlayerSoldier target = players.get(1);
+        target.setHealth(1);
+        Projectile arrow = new Projectile(target.getX()-1,target.getY()+1,2,0,0,1-target.getTeam(),99); // fired by someone who isn't in the world anymore
+        world.getProjectiles().add(arrow);
+        for(int t = 0; t<Projectile.MAXLIFETIME+10; t++){
+            world.update();
+        }
+        assertEquals("the world should keep ticking",Projectile.MAXLIFETIME+10,world.getTick());
+        assertEquals(1,world.getKillCount());
+        assertEquals("(left)",world.getKillLog().getLast().getKiller());
+        assertEquals(1,target.getDeaths());
+        assertEquals("the arrow should go once its target died",0,world.getProjectiles().size);
+    }
+}
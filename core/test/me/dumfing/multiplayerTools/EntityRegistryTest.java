@@ -0,0 +1,89 @@
+package me.dumfing.multiplayerTools;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs an EntityRegistry and the HashMap it replaced through the same random puts and removes, and checks they always
+ * agree on what's kept under each id
+ */
+public class EntityRegistryTest {
+    private static class Thing implements EntityRegistry.Entity {
+        private int id = -1;
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public void setId(int id) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void agreesWithAHashMap(){
+        Random random = new Random(22);
+        EntityRegistry<Thing> registry = new EntityRegistry<Thing>();
+        HashMap<Integer, Thing> reference = new HashMap<Integer, Thing>();
+        for(int op = 0; op<100000; op++){
+            int id = random.nextInt(200); // few enough ids that puts land on ones already there and removes find something
+            if(random.nextInt(3) == 0){
+                assertSame(reference.remove(id),registry.remove(id));
+            }
+            else{
+                Thing thing = new Thing();
+                reference.put(id,thing);
+                registry.put(id,thing);
+                assertEquals(id,thing.getId());
+            }
+            if(op%1000 == 0){
+                registry.clear();
+                reference.clear();
+            }
+            id = random.nextInt(200);
+            assertSame(reference.get(id),registry.get(id));
+            assertEquals(reference.containsKey(id),registry.containsKey(id));
+            assertEquals(reference.size(),registry.size());
+        }
+        assertSameContents(reference,registry);
+    }
+
+    @Test
+    public void walkingFindsEveryEntityOnceAfterRemoves(){
+        EntityRegistry<Thing> registry = new EntityRegistry<Thing>();
+        HashMap<Integer, Thing> reference = new HashMap<Integer, Thing>();
+        for(int id = 1; id<=50; id++){
+            Thing thing = new Thing();
+            registry.put(id,thing);
+            reference.put(id,thing);
+        }
+        for(int id = 1; id<=50; id += 3){ // from the front, the middle and the end, each one moves the last into its place
+            registry.remove(id);
+            reference.remove(id);
+        }
+        assertNull(registry.get(1));
+        assertNull(registry.remove(1));
+        assertSameContents(reference,registry);
+    }
+
+    private static void assertSameContents(HashMap<Integer, Thing> reference, EntityRegistry<Thing> registry){
+        assertEquals(reference.size(),registry.size());
+        HashSet<Integer> walked = new HashSet<Integer>();
+        for(int i = 0; i<registry.size(); i++){
+            Thing thing = registry.getAt(i);
+            assertTrue("walked id "+thing.getId()+" twice",walked.add(thing.getId()));
+            assertSame(reference.get(thing.getId()),thing);
+            assertSame(thing,registry.get(thing.getId()));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static me.dumfing.multiplayerTools.MultiplayerTools.GRAVITY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fires random arrows through random soldiers on the test map, once with Projectile's sweep and once by marching along
+ * the path in tiny steps the way arrows used to move, and checks they stop at the same thing in nearly the same place<br>
+ * Marching can step over the last sliver of a tick's path, so an arrow that sweeps into something at the very end of a
+ * tick is only stopped by marching on the next one. Where each arrow ends up is compared, not every tick
+ */
+public class ProjectileSweepTest {
+    private static final int ARROWS = 20000;
+    private static final int TICKS = 30; // the most each arrow is followed for
+    private static final float CHECKRES = 0.001f; // the step the old arrows marched in
+
+    /**
+     * An arrow moved the way Projectile.checkCollisions did before the sweep, for comparing against
+     */
+    private static class MarchedArrow {
+        float x, y, vX, vY;
+        int attackerTeam;
+        boolean isHit = false;
+        int victim = -1;
+
+        MarchedArrow(float x, float y, float speed, float angle, int attackerTeam){
+            this.x = x;
+            this.y = y;
+            this.vX = speed*(float) Math.cos(Math.toRadians(angle));
+            this.vY = speed*(float) Math.sin(Math.toRadians(angle));
+            this.attackerTeam = attackerTeam;
+        }
+
+        void tick(EntityRegistry<PlayerSoldier> players, WorldMap world, float tickScale){
+            float speed = (float) Math.hypot(vX, vY);
+            float hyp = speed*tickScale;
+            float xAmt = vX/speed;
+            float yAmt = vY/speed;
+            for(float i = 0; i<hyp; i += CHECKRES){
+                float checkX = xAmt*i;
+                float checkY = yAmt*i;
+                for(int k = 0; k<players.size(); k++){
+                    PlayerSoldier player = players.getAt(k);
+                    if(player.isAlive() && player.getTeam() != attackerTeam && player.getRect().contains(x+checkX, y+checkY)){
+                        stop(checkX,checkY);
+                        victim = player.getId();
+                        return;
+                    }
+                }
+                int id = world.getPosId(Math.round(x+checkX), (int)(y+checkY+1));
+                if(id == 0x000001FF || id == (attackerTeam==0?0x00FFFFFF:0xFFFF00FF)){
+                    stop(checkX,checkY);
+                    return;
+                }
+            }
+            x += vX*tickScale;
+            y += vY*tickScale;
+            vY += GRAVITY*tickScale;
+        }
+
+        private void stop(float checkX, float checkY){
+            x += checkX;
+            y += checkY;
+            vX = 0;
+            vY = 0;
+            isHit = true;
+        }
+    }
+
+    @Test
+    public void stopsAtTheSameThingAsMarching(){
+        WorldMap map = TestWorlds.testMap();
+        int width = map.getCollisionMap().getWidth(), height = map.getCollisionMap().getHeight();
+        SpatialGrid grid = SpatialGrid.forMap(map);
+        IntArray nearby = new IntArray();
+        Random random = new Random(24);
+        int hits = 0, walls = 0;
+        for(int n = 0; n<ARROWS; n++){
+            EntityRegistry<PlayerSoldier> players = new EntityRegistry<PlayerSoldier>();
+            for(int k = 0; k<6; k++){
+                players.put(k+1,new PlayerSoldier(new Rectangle(random.nextFloat()*width,random.nextFloat()*height,1,2),k%2,"soldier"+k));
+            }
+            grid.clear();
+            for(int k = 0; k<players.size(); k++){
+                grid.insert(k,players.getAt(k).getRect());
+            }
+            float x = random.nextFloat()*width, y = random.nextFloat()*height;
+            float speed = 0.3f+random.nextFloat()*1.7f, angle = random.nextFloat()*360;
+            float tickScale = random.nextBoolean()?1:2;
+            Projectile swept = new Projectile(x,y,speed,angle,0,0,0);
+            swept.setLifetime(1000);
+            MarchedArrow marched = new MarchedArrow(x,y,speed,angle,0);
+            for(int t = 0; t<TICKS && !swept.isHit(); t++){
+                swept.checkCollisions(players,grid,nearby,map,tickScale);
+            }
+            for(int t = 0; t<TICKS && !marched.isHit; t++){
+                marched.tick(players,map,tickScale);
+            }
+            if(swept.isHit() && !marched.isHit){ // the path went into something in the last step of a tick, marching only finds it at the start of the next one
+                marched.tick(players,map,tickScale);
+            }
+            String which = "arrow "+n;
+            assertEquals(which,marched.isHit,swept.isHit());
+            assertEquals(which,marched.victim,swept.getPhysicsParent());
+            assertEquals(which,marched.x,swept.getX(),CHECKRES*1.1f); // marching stops on the first step inside, up to a step past where the path enters
+            assertEquals(which,marched.y,swept.getY(),CHECKRES*1.1f);
+            if(marched.victim != -1){
+                hits++;
+            }
+            else if(marched.isHit){
+                walls++;
+            }
+        }
+        assertTrue("too few arrows hit a soldier to mean anything: "+hits, hits > ARROWS/100);
+        assertTrue("too few arrows hit a wall to mean anything: "+walls, walls > ARROWS/100);
+    }
+}
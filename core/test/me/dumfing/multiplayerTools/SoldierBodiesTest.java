@@ -0,0 +1,111 @@
+package me.dumfing.multiplayerTools;
+
+import me.dumfing.gdxtools.MathTools;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static me.dumfing.multiplayerTools.MultiplayerTools.GRAVITY;
+import static me.dumfing.multiplayerTools.MultiplayerTools.JUMPPOWER;
+import static me.dumfing.multiplayerTools.MultiplayerTools.WALKSPEED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Moves two copies of the same soldiers around the test map, one with SoldierBodies and one with the per-soldier
+ * movement the world used before it, and checks they end up in exactly the same place every tick
+ */
+public class SoldierBodiesTest {
+    private static final int SOLDIERS = 64;
+    private static final int TICKS = 3000;
+
+    @Test
+    public void movesSoldiersTheSameAsMovingThemOneAtATime(){
+        moveBoth(1);
+    }
+
+    @Test
+    public void movesSoldiersTheSameAtAFasterTickRate(){
+        moveBoth(0.5f); // twice BASE_TICKRATE
+    }
+
+    private void moveBoth(float tickScale){
+        WorldMap map = TestWorlds.testMap();
+        EntityRegistry<PlayerSoldier> stepped = TestWorlds.soldiers(SOLDIERS);
+        EntityRegistry<PlayerSoldier> reference = TestWorlds.soldiers(SOLDIERS);
+        SoldierBodies bodies = new SoldierBodies();
+        Random random = new Random(23);
+        for(int t = 0; t<TICKS; t++){
+            for(int i = 0; i<SOLDIERS; i++){ // walk back and forth and jump now and then, what the keys would do
+                float vX = (t/(40+i)+i)%3==0?0:(t/(40+i)+i)%3==1?-WALKSPEED:WALKSPEED;
+                boolean jump = random.nextInt(30) == 0;
+                drive(stepped.getAt(i),vX,jump);
+                drive(reference.getAt(i),vX,jump);
+            }
+            for(int i = 0; i<SOLDIERS; i++){
+                bodies.add(stepped.getAt(i));
+            }
+            bodies.step(map,tickScale);
+            bodies.store();
+            for(int i = 0; i<SOLDIERS; i++){
+                moveOne(reference.getAt(i),map,tickScale);
+            }
+            for(int i = 0; i<SOLDIERS; i++){
+                PlayerSoldier a = stepped.getAt(i), b = reference.getAt(i);
+                String who = "soldier "+a.getId()+" on tick "+t;
+                assertEquals(who,Float.floatToIntBits(b.getX()),Float.floatToIntBits(a.getX()));
+                assertEquals(who,Float.floatToIntBits(b.getY()),Float.floatToIntBits(a.getY()));
+                assertEquals(who,Float.floatToIntBits(b.getvX()),Float.floatToIntBits(a.getvX()));
+                assertEquals(who,Float.floatToIntBits(b.getvY()),Float.floatToIntBits(a.getvY()));
+                assertArrayEquals(who,b.collisions,a.collisions);
+            }
+        }
+    }
+
+    private static void drive(PlayerSoldier p, float vX, boolean jump){
+        p.setvX(vX);
+        if(jump && p.collisions[1]){ // only off the ground, like the W key
+            p.setvY(JUMPPOWER);
+        }
+    }
+
+    /**
+     * How ConcurrentGameWorld moved a soldier before SoldierBodies, detectCollisions then handleCollisions then move
+     */
+    private static void moveOne(PlayerSoldier p, WorldMap map, float tickScale){
+        int door = p.getTeam()==1?0xFFFF00FF:0x00FFFFFF;
+        Arrays.fill(p.collisions,false);
+        p.setvY(p.getvY()+GRAVITY*tickScale);
+        if(map.getPosId(Math.round(p.getX()),(int)(p.getY()+2))>>8 == 1 || map.getPosId(Math.round(p.getX()),(int)(p.getY()+2)) == door){
+            p.setY(Math.round(p.getY()));
+            p.collisions[0] = true;
+        }
+        if(map.getPosId(Math.round(p.getX()),Math.round(p.getY()))>>8 == 1 || map.getPosId(Math.round(p.getX()),Math.round(p.getY())) == door){
+            p.setY(Math.round(p.getY()));
+            p.collisions[1] = true;
+        }
+        if(map.getPosId((int)p.getX(),(int)(p.getY()+1))>>8 == 1 || map.getPosId((int)p.getX(),(int)(p.getY()+1)) == door){
+            p.setX((int)p.getX()+1);
+            p.collisions[3] = true;
+        }
+        if(map.getPosId((int)(p.getX()+1),(int)(p.getY()+1))>>8 == 1 || map.getPosId((int)(p.getX()+1),(int)(p.getY()+1)) == door){
+            p.setX((int)p.getX());
+            p.collisions[2] = true;
+        }
+        if(p.collisions[0]){
+            p.setvY(Math.min(0,p.getvY()));
+        }
+        if(p.collisions[1]){
+            p.setvY(Math.max(0,p.getvY()));
+            p.setvX(MathTools.towardsZero(p.getvX(),0.1f*tickScale));
+        }
+        if(p.collisions[2]){
+            p.setvX(Math.min(0,p.getvX()));
+        }
+        if(p.collisions[3]){
+            p.setvX(Math.min(0,p.getvX()));
+        }
+        p.move(tickScale);
+    }
+}
@@ -0,0 +1,106 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntSet;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks grid queries against testing every rectangle by hand, over a lot of random layouts. Some rectangles, rays and
+ * ray directions are snapped to cell edges and corners, where a query is most likely to skip a cell
+ */
+public class SpatialGridTest {
+    private static final int LAYOUTS = 2000;
+    private static final int QUERIES = 20; // per layout, half rectangles and half rays
+    private static final float CELLSIZE = 8;
+
+    @Test
+    public void queriesFindEverythingTheyTouchOnce(){
+        Random random = new Random(25);
+        IntArray out = new IntArray();
+        IntSet seen = new IntSet();
+        for(int n = 0; n<LAYOUTS; n++){
+            SpatialGrid grid = new SpatialGrid(0,0,120,60,CELLSIZE);
+            Rectangle[] rects = new Rectangle[40];
+            for(int i = 0; i<rects.length; i++){ // some of them off the grid, those go in the cells on its edge
+                rects[i] = new Rectangle(random.nextFloat()*140-10,random.nextFloat()*80-10,1,2);
+                if(random.nextInt(10) == 0){
+                    rects[i].setPosition(snap(rects[i].x),snap(rects[i].y));
+                }
+                grid.insert(i,rects[i]);
+            }
+            for(int k = 0; k<QUERIES; k++){
+                out.clear();
+                float x = random.nextFloat()*140-10, y = random.nextFloat()*80-10;
+                String which = "layout "+n+" query "+k;
+                if(k%2 == 0){
+                    Rectangle area = new Rectangle(x,y,random.nextFloat()*3,random.nextFloat()*3);
+                    grid.query(area.x,area.y,area.x+area.width,area.y+area.height,out);
+                    for(int i = 0; i<rects.length; i++){
+                        assertTrue(which+" missed "+rects[i],!area.overlaps(rects[i]) || out.contains(i));
+                    }
+                }
+                else{
+                    float angle = random.nextFloat()*(float)Math.PI*2;
+                    if(random.nextInt(8) == 0){ // diagonals go straight through cell corners
+                        angle = (float)Math.PI/4*random.nextInt(8);
+                    }
+                    float dirX = (float)Math.cos(angle), dirY = (float)Math.sin(angle);
+                    if(random.nextInt(8) == 0){
+                        dirX = 0;
+                        dirY = 1;
+                    }
+                    if(random.nextInt(6) == 0){
+                        x = snap(x);
+                        y = snap(y);
+                    }
+                    float length = random.nextFloat()*20;
+                    grid.queryRay(x,y,dirX,dirY,length,out);
+                    for(int i = 0; i<rects.length; i++){
+                        assertTrue(which+" missed "+rects[i],!rayHits(rects[i],x,y,dirX,dirY,length) || out.contains(i));
+                    }
+                }
+                seen.clear();
+                for(int i = 0; i<out.size; i++){
+                    assertTrue(which+" gave back "+out.get(i)+" twice",seen.add(out.get(i)));
+                }
+            }
+        }
+    }
+
+    private static float snap(float f){
+        return Math.round(f/CELLSIZE)*CELLSIZE;
+    }
+
+    /**
+     * @return Whether a line touches a rectangle, edges included
+     */
+    private static boolean rayHits(Rectangle rect, float x, float y, float dirX, float dirY, float length){
+        float enter = 0, exit = length;
+        if(dirX == 0){
+            if(x < rect.x || x > rect.x+rect.width){
+                return false;
+            }
+        }
+        else{
+            float a = (rect.x-x)/dirX, b = (rect.x+rect.width-x)/dirX;
+            enter = Math.max(enter,Math.min(a,b));
+            exit = Math.min(exit,Math.max(a,b));
+        }
+        if(dirY == 0){
+            if(y < rect.y || y > rect.y+rect.height){
+                return false;
+            }
+        }
+        else{
+            float a = (rect.y-y)/dirY, b = (rect.y+rect.height-y)/dirY;
+            enter = Math.max(enter,Math.min(a,b));
+            exit = Math.min(exit,Math.max(a,b));
+        }
+        return enter <= exit;
+    }
+}
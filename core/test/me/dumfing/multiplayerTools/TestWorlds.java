@@ -0,0 +1,74 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/**
+ * Sets up what the world needs to run in a test without a window, the tests are run from core/assets
+ */
+final class TestWorlds {
+    private static boolean loaded = false;
+
+    private TestWorlds(){}
+
+    /**
+     * Loads the natives Pixmap needs and the animations soldiers look up their frames in, only the first call does anything
+     */
+    static synchronized void load(){
+        if(!loaded){
+            GdxNativesLoader.load();
+            AnimationManager.initHeadless(new FileHandle("SpriteSheets"));
+            loaded = true;
+        }
+    }
+
+    /**
+     * @return The map the debug world is played on
+     */
+    static WorldMap testMap(){
+        load();
+        return new WorldMap(new Pixmap(new FileHandle("pixmapTest.png")));
+    }
+
+    /**
+     * Makes soldiers standing in a row with ids from 1 to count, alternating teams. Each team has as many knights as archers
+     */
+    static EntityRegistry<PlayerSoldier> soldiers(int count){
+        load();
+        EntityRegistry<PlayerSoldier> players = new EntityRegistry<PlayerSoldier>();
+        for(int i = 1; i<=count; i++){
+            PlayerSoldier p = new PlayerSoldier(new Rectangle(10+i*3,30,1,2),i%2,"player"+i);
+            p.setCurrentClass(i%4<2?PlayerSoldier.KNIGHT:PlayerSoldier.ARCHER);
+            players.put(i,p);
+        }
+        return players;
+    }
+
+    /**
+     * Gives every soldier buttons that walk them back and forth, jump now and then and attack now and then, the same
+     * ones for the same tick every time
+     */
+    static void script(EntityRegistry<PlayerSoldier> players, int tick){
+        for(int k = 0; k<players.size(); k++){
+            PlayerSoldier p = players.getAt(k);
+            int i = p.getId();
+            int buttons = 0;
+            int phase = (tick/30+i)%6;
+            if(phase<2){
+                buttons |= 1<<MultiplayerTools.Keys.D;
+            }
+            else if(phase<4){
+                buttons |= 1<<MultiplayerTools.Keys.A;
+            }
+            if((tick/45+i)%3 == 0){
+                buttons |= 1<<MultiplayerTools.Keys.LMB;
+            }
+            if((tick/20+i)%7 == 0){
+                buttons |= 1<<MultiplayerTools.Keys.W;
+            }
+            p.setInput(buttons,(tick*7+i*40)%360);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package me.dumfing.multiplayerTools;
+
+import com.badlogic.gdx.math.GridPoint2;
+import com.badlogic.gdx.utils.IntMap;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends a scripted world to a few pretend clients the way ServerGameInstance does: against the newest frame each one has
+ * acknowledged, in a byte budget and with only what's around its own soldier. Every frame has to read back as exactly
+ * what the writer said the client would end up with, since that's what later frames are written against
+ */
+public class WorldFrameTest {
+    private static final int TICKS = 3000;
+    private static final int SENDINTERVAL = 2; // ticks between frames
+    private static final int CLIENTS = 4;
+
+    @Test
+    public void framesReadBackAsWhatTheWriterExpects(){
+        EntityRegistry<PlayerSoldier> players = TestWorlds.soldiers(16);
+        WorldMap map = TestWorlds.testMap();
+        ConcurrentGameWorld world = new ConcurrentGameWorld(players);
+        world.setWorld(map);
+        AreaOfInterest interest = new AreaOfInterest(map);
+        BitWriter out = new BitWriter(WorldFrame.MAXFRAMEBYTES);
+        Random random = new Random(7);
+        WorldFrame[][] expected = new WorldFrame[CLIENTS][WorldSnapshot.HISTORY]; // what the writer says each client has
+        WorldFrame[][] read = new WorldFrame[CLIENTS][WorldSnapshot.HISTORY]; // what each client really read, null if it was lost
+        PriorityAccumulator[] priorities = new PriorityAccumulator[CLIENTS];
+        for(int c = 0; c<CLIENTS; c++){
+            priorities[c] = new PriorityAccumulator();
+        }
+        int frameNum = 0, withBaseline = 0, filtered = 0, cut = 0;
+        for(int t = 0; t<TICKS; t++){
+            TestWorlds.script(players,t);
+            world.update();
+            if(t%SENDINTERVAL != 0){
+                continue;
+            }
+            WorldFrame frame = WorldFrame.capture(world,frameNum,world.getTick());
+            interest.index(frame.getSnapshot());
+            for(int c = 0; c<CLIENTS; c++){
+                int baseSequence = newestAcked(read[c],frameNum,1+random.nextInt(3)); // acks take a few frames to come back
+                WorldFrame baseline = baseSequence==-1?null:expected[c][baseSequence%WorldSnapshot.HISTORY];
+                PlayerSoldier viewer = players.get(c*4+1);
+                float viewWidth = AreaOfInterest.DEFAULT_VIEWWIDTH/(c+1), viewHeight = AreaOfInterest.DEFAULT_VIEWHEIGHT/(c+1); // some see most of the map, some hardly anything
+                interest.gather(viewer.getId(),viewer.getX(),viewer.getY(),viewWidth,viewHeight,baseline==null?null:baseline.getSnapshot());
+                AreaOfInterest seen = interest.coversAll()?null:interest;
+                int maxBytes = 128+random.nextInt(384);
+                priorities[c].setViewer(viewer.getId(),viewer.getX(),viewer.getY());
+                out.clear();
+                WorldFrame written = frame.write(out,baseline,maxBytes,priorities[c],seen);
+                byte[] bytes = out.toBytes();
+                String which = "frame "+frameNum+" to client "+c;
+                assertTrue(which+" is "+bytes.length+" bytes, over its "+maxBytes,bytes.length <= maxBytes);
+                WorldFrame got = WorldFrame.read(new BitReader(bytes),frameNum,frame.getTick(),baseSequence==-1?null:read[c][baseSequence%WorldSnapshot.HISTORY]);
+                assertSameFrame(which,written,got);
+                expected[c][frameNum%WorldSnapshot.HISTORY] = written;
+                read[c][frameNum%WorldSnapshot.HISTORY] = random.nextInt(5)==0?null:got; // some frames are lost on the way
+                withBaseline += baseline==null?0:1;
+                filtered += seen==null?0:1;
+                cut += leftOut(frame,written,seen)?1:0;
+            }
+            frameNum++;
+        }
+        int sends = frameNum*CLIENTS;
+        assertTrue("too few frames had a baseline: "+withBaseline, withBaseline > sends/2);
+        assertTrue("too few frames left out what the client can't see: "+filtered, filtered > sends/4);
+        assertTrue("too few frames ran out of room: "+cut, cut > sends/20);
+    }
+
+    /**
+     * @param arrived The frames a client has read, by sequence in HISTORY slots, null for ones it never got
+     * @param lag How many frames it takes for an ack to reach the server
+     * @return The newest frame the server knows the client has that's still in the history, -1 if there isn't one
+     */
+    private static int newestAcked(WorldFrame[] arrived, int frameNum, int lag){
+        for(int sequence = frameNum-lag; sequence>=0 && sequence>frameNum-WorldSnapshot.HISTORY; sequence--){
+            WorldFrame f = arrived[sequence%WorldSnapshot.HISTORY];
+            if(f != null && f.getSequence() == sequence){
+                return sequence;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether something the client can see, or a section, was left out of a frame because it didn't fit. What
+     * the client ends up with then has an older state for it, or none at all
+     */
+    private static boolean leftOut(WorldFrame frame, WorldFrame written, AreaOfInterest seen){
+        if(written == frame){
+            return false;
+        }
+        if(written.getKillCount() != frame.getKillCount() || written.getRespawnTimes() != frame.getRespawnTimes()){
+            return true;
+        }
+        WorldSnapshot all = frame.getSnapshot(), got = written.getSnapshot();
+        for(IntMap.Entry<WorldSnapshot.SoldierState> e : all.getSoldiers().entries()){
+            if((seen == null || seen.soldiers.contains(e.key)) && got.getSoldiers().get(e.key) != e.value){
+                return true;
+            }
+        }
+        for(IntMap.Entry<WorldSnapshot.ProjectileState> e : all.getProjectiles().entries()){
+            if((seen == null || seen.projectiles.contains(e.key)) && got.getProjectiles().get(e.key) != e.value){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertSameFrame(String which, WorldFrame expected, WorldFrame got){
+        assertEquals(which,expected.getSequence(),got.getSequence());
+        assertEquals(which,expected.getTick(),got.getTick());
+        assertSameStates(which+" soldier",expected.getSnapshot().getSoldiers(),got.getSnapshot().getSoldiers());
+        assertSameStates(which+" projectile",expected.getSnapshot().getProjectiles(),got.getSnapshot().getProjectiles());
+        WorldSnapshot.FlagState[] expectedFlags = expected.getSnapshot().getFlags(), gotFlags = got.getSnapshot().getFlags();
+        assertEquals(which,expectedFlags.length,gotFlags.length);
+        for(int i = 0; i<expectedFlags.length; i++){
+            if(expectedFlags[i] == null){
+                assertEquals(which+" flag "+i,null,gotFlags[i]);
+            }
+            else{
+                assertNotNull(which+" flag "+i,gotFlags[i]);
+                assertEquals(which+" flag "+i,0,expectedFlags[i].changes(gotFlags[i]));
+            }
+        }
+        assertEquals(which+" respawn times",expected.getRespawnTimes().size(),got.getRespawnTimes().size());
+        Iterator<GridPoint2> gotTimes = got.getRespawnTimes().iterator();
+        for(GridPoint2 time : expected.getRespawnTimes()){
+            assertEquals(which+" respawn times",time,gotTimes.next());
+        }
+        assertEquals(which,expected.getKillCount(),got.getKillCount());
+        assertEquals(which+" kill log",expected.getKillLog().size(),got.getKillLog().size());
+        Iterator<ConcurrentGameWorld.KillInfo> gotKills = got.getKillLog().iterator();
+        for(ConcurrentGameWorld.KillInfo kill : expected.getKillLog()){
+            ConcurrentGameWorld.KillInfo other = gotKills.next();
+            assertEquals(which+" kill log",kill.getKiller(),other.getKiller());
+            assertEquals(which+" kill log",kill.getVictim(),other.getVictim());
+            assertEquals(which+" kill log",kill.getWeapon(),other.getWeapon());
+        }
+    }
+
+    private static <T extends WorldSnapshot.EntityState<T>> void assertSameStates(String which, IntMap<T> expected, IntMap<T> got){
+        assertEquals(which+" count",expected.size,got.size);
+        for(IntMap.Entry<T> e : expected.entries()){
+            T other = got.get(e.key);
+            assertNotNull(which+" "+e.key+" is missing",other);
+            assertEquals(which+" "+e.key+" differs",0,e.value.changes(other));
+        }
+    }
+}
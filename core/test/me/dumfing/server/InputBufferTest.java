@@ -0,0 +1,99 @@
+package me.dumfing.server;
+
+import me.dumfing.multiplayerTools.MultiplayerTools;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds an InputBuffer updates the way a client sends them, each input's buttons are its sequence number so the test can
+ * tell which one the server used
+ */
+public class InputBufferTest {
+    private final MultiplayerTools.ClientKeysUpdate update = new MultiplayerTools.ClientKeysUpdate(); // reused like the client does
+
+    private void send(InputBuffer buffer, int seq){
+        update.addInput(seq,0,seq,seq,0);
+        buffer.add(update);
+    }
+
+    @Test
+    public void usesEveryInputInOrder(){
+        InputBuffer buffer = new InputBuffer(2);
+        send(buffer,100);
+        send(buffer,101);
+        assertFalse("it should wait for jitterDepth inputs first", buffer.poll());
+        for(int seq = 102; seq<200; seq++){
+            send(buffer,seq);
+            assertTrue(buffer.poll());
+            assertEquals(seq-2,buffer.getButtons());
+        }
+        assertEquals(0,buffer.getMissing());
+        assertEquals(0,buffer.getLate());
+    }
+
+    @Test
+    public void readsAFirstInputThatArrivedSecond(){
+        InputBuffer buffer = new InputBuffer(1);
+        buffer.add(new MultiplayerTools.ClientKeysUpdate(11,0,11,11,0));
+        buffer.add(new MultiplayerTools.ClientKeysUpdate(10,0,10,10,0));
+        assertTrue(buffer.poll());
+        assertEquals(10,buffer.getButtons());
+        assertTrue(buffer.poll());
+        assertEquals(11,buffer.getButtons());
+    }
+
+    @Test
+    public void catchesUpWithAClientThatFellBehind(){
+        InputBuffer buffer = new InputBuffer(2);
+        int seq = 0;
+        for(; seq<40; seq++){
+            send(buffer,seq);
+            buffer.poll();
+        }
+        for(int i = 0; i<6; i++){ // the client's window was dragged, the server keeps ticking without it
+            buffer.poll();
+        }
+        for(int i = 0; i<10; i++, seq++){
+            send(buffer,seq);
+            buffer.poll();
+        }
+        assertEquals("its inputs should be used again, not thrown away as late", seq-1, buffer.getButtons());
+        assertEquals(seq-1, buffer.getLastSequence());
+    }
+
+    @Test
+    public void letsGoAfterSilenceThenPicksBackUp(){
+        InputBuffer buffer = new InputBuffer(2);
+        int seq = 0;
+        for(; seq<20; seq++){
+            send(buffer,seq);
+            buffer.poll();
+        }
+        for(int i = 0; i<InputBuffer.MAXREPEATS*3; i++){
+            buffer.poll();
+        }
+        assertEquals("keys shouldn't stay held while the client is quiet", 0, buffer.getButtons());
+        for(int i = 0; i<10; i++, seq++){
+            send(buffer,seq);
+            buffer.poll();
+        }
+        assertEquals(seq-3,buffer.getButtons()); // jitterDepth behind again once it's filled back up
+    }
+
+    @Test
+    public void ignoresStaleUpdates(){
+        InputBuffer buffer = new InputBuffer(0);
+        for(int seq = 0; seq<10; seq++){
+            send(buffer,seq);
+            buffer.poll();
+        }
+        buffer.add(new MultiplayerTools.ClientKeysUpdate(3,0,3,3,0)); // a duplicate that took the long way
+        send(buffer,10);
+        assertTrue(buffer.poll());
+        assertEquals(10,buffer.getButtons());
+        assertEquals(1,buffer.getLate());
+    }
+}
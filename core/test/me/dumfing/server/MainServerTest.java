@@ -0,0 +1,107 @@
+package me.dumfing.server;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.esotericsoftware.kryonet.Connection;
+import me.dumfing.multiplayerTools.ConcurrentGameWorld;
+import me.dumfing.multiplayerTools.MultiplayerTools;
+import me.dumfing.multiplayerTools.WorldMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MainServerTest {
+    /**
+     * A connection that isn't connected to anything, it only remembers what it was sent
+     */
+    private static class FakeConnection extends Connection {
+        private final int id;
+        final List<Object> sent = new ArrayList<Object>();
+        FakeConnection(int id){
+            this.id = id;
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+
+        @Override
+        public int sendTCP(Object object) {
+            sent.add(object);
+            return 0;
+        }
+
+        @Override
+        public int sendUDP(Object object) {
+            sent.add(object);
+            return 0;
+        }
+
+        @Override
+        public int getReturnTripTime() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void messagesFromClientsThatHaventJoinedDontStopTheQueue(){
+        MainServer server = new MainServer("test",4);
+        FakeConnection stranger = new FakeConnection(5);
+        FakeConnection joining = new FakeConnection(6);
+        server.received(stranger,new MultiplayerTools.ClientPickedTeam(1));
+        server.received(stranger,new MultiplayerTools.ClientPickedLoadout(1));
+        server.received(stranger,new MultiplayerTools.ClientSentChatMessage("hi"));
+        server.received(stranger,new MultiplayerTools.ClientKeysUpdate(0,0,0,0,3));
+        server.received(joining,new MultiplayerTools.ClientConnectionRequest("joining"));
+        server.processCommands();
+        assertTrue("the message after the stranger's should still have been applied", server.players.containsKey(6));
+        assertFalse(server.players.containsKey(5));
+        assertTrue(stranger.sent.isEmpty());
+        assertEquals(-1,server.getAckedFrame(5));
+    }
+
+    @Test
+    public void joinedClientsCanPickTheirTeamAndClass(){
+        MainServer server = new MainServer("test",4);
+        FakeConnection client = new FakeConnection(7);
+        server.received(client,new MultiplayerTools.ClientConnectionRequest("client"));
+        server.received(client,new MultiplayerTools.ClientPickedTeam(1));
+        server.received(client,new MultiplayerTools.ClientPickedLoadout(1));
+        server.processCommands();
+        assertEquals(1,server.players.get(7).getTeam());
+        assertEquals(1,server.players.get(7).getCurrentClass());
+        assertTrue(server.bluTeamMembers.contains(7));
+    }
+
+    @Test
+    public void pickingATeamAndLeavingInOneTickDoesntStopTheFrames(){
+        GdxNativesLoader.load(); // for the map's Pixmap, the tests are run from core/assets
+        MainServer server = new MainServer("test",4);
+        FakeConnection leaving = new FakeConnection(8);
+        FakeConnection staying = new FakeConnection(9);
+        server.received(leaving,new MultiplayerTools.ClientConnectionRequest("leaving"));
+        server.received(staying,new MultiplayerTools.ClientConnectionRequest("staying"));
+        server.processCommands();
+        ServerGameInstance game = new ServerGameInstance(server.getPlayers(),ConcurrentGameWorld.BASE_TICKRATE);
+        game.setWorldMap(new WorldMap(new Pixmap(new FileHandle("pixmapTest.png"))));
+        server.received(leaving,new MultiplayerTools.ClientPickedTeam(1));
+        server.disconnected(leaving);
+        server.processCommands();
+        staying.sent.clear();
+        for(int t = 0; t<game.sendInterval; t++){
+            game.update(server);
+        }
+        boolean gotFrame = false;
+        for(Object o : staying.sent){
+            gotFrame |= o instanceof MultiplayerTools.ServerWorldFrame;
+        }
+        assertTrue("the client that stayed should still be sent the world",gotFrame);
+    }
+}
@@ -0,0 +1,28 @@
+package me.dumfing.server.desktop;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import me.dumfing.server.HeadlessServer;
+import me.dumfing.server.ServerConfig;
+
+/**
+ * Starts a server with no window, for running on machines without a display<br>
+ * Must be run from the assets folder so the map and sprite sheets can be found
+ */
+public class ServerHeadless {
+    public static void main(String[]args){
+        ServerConfig serverConfig;
+        try{
+            serverConfig = ServerConfig.fromArgs(args);
+        }
+        catch (IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ServerHeadless [--config file] [--name name] [--max-players n] [--map file] [--sprites dir] [--tick-rate hz] [--max-catch-up ticks] [--matches n] [--workers n] [--input-buffer ticks] [--byte-budget bytes]");
+            System.exit(1);
+            return;
+        }
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = 1; // the game is ticked by the server's TickScheduler, render only reports on it
+        new HeadlessApplication(new HeadlessServer(serverConfig),config);
+    }
+}